@@ -0,0 +1,340 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.classifier.CleartkSequenceAnnotator;
+import org.cleartk.classifier.jar.GenericJarClassifierFactory;
+import org.cleartk.ne.type.NamedEntityMention;
+import org.cleartk.syntax.opennlp.PosTaggerAnnotator;
+import org.cleartk.token.stem.snowball.DefaultSnowballStemmer;
+import org.cleartk.token.tokenizer.TokenAnnotator;
+import org.cleartk.token.type.Sentence;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.util.JCasUtil;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Tags many short texts (e.g. product titles) with named entities by packing up to a batch of them
+ * into a single CAS, one {@link Sentence} per text, so that the per-CAS cost of the pipeline is
+ * paid once per batch instead of once per text. The mentions found are split back out per text,
+ * with offsets relative to the start of that text.
+ * 
+ * Texts are submitted from any number of threads and are collected by a single worker thread,
+ * which runs a batch as soon as it is full, or when the oldest text in it has waited the maximum
+ * wait time. Once the tagger is closed, or its worker has stopped, no more texts are accepted,
+ * and any texts still waiting when the worker stops are failed rather than left pending.
+ * 
+ * The aggregate must not split the texts into sentences itself, and its {@link NamedEntityChunker}
+ * must bound its context features by sentence, so that neighbouring texts do not see each other;
+ * {@link #getAggregateDescription(File, int)} and
+ * {@link #getAggregateDescription(AnalysisEngineDescription)} create such an aggregate.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BatchingNamedEntityTagger {
+
+  /**
+   * A named entity mention found in one of the submitted texts.
+   */
+  public static class Mention {
+    public final int begin;
+
+    public final int end;
+
+    public final String text;
+
+    public final String mentionType;
+
+    public Mention(int begin, int end, String text, String mentionType) {
+      this.begin = begin;
+      this.end = end;
+      this.text = text;
+      this.mentionType = mentionType;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (!(object instanceof Mention)) {
+        return false;
+      }
+      Mention that = (Mention) object;
+      return this.begin == that.begin && this.end == that.end && this.text.equals(that.text)
+          && String.valueOf(this.mentionType).equals(String.valueOf(that.mentionType));
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * this.begin + this.end) + this.text.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s (%s)", this.text, this.mentionType);
+    }
+  }
+
+  /**
+   * Creates the tagging aggregate for batches: tokenization, part-of-speech tags, stems and the
+   * {@link NamedEntityChunker}, without sentence segmentation.
+   */
+  public static AnalysisEngineDescription getAggregateDescription(
+      File modelDirectory,
+      int featureHashBits) throws ResourceInitializationException {
+    return getAggregateDescription(AnalysisEngineFactory.createPrimitiveDescription(
+        NamedEntityChunker.class,
+        CleartkSequenceAnnotator.PARAM_IS_TRAINING,
+        false,
+        GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH,
+        new File(modelDirectory, "model.jar"),
+        NamedEntityChunker.PARAM_FEATURE_HASH_BITS,
+        featureHashBits,
+        NamedEntityChunker.PARAM_BOUND_CONTEXT_BY_SENTENCE,
+        true));
+  }
+
+  /**
+   * Creates the tagging aggregate for batches around an already configured chunker, which must
+   * have {@link NamedEntityChunker#PARAM_BOUND_CONTEXT_BY_SENTENCE} set.
+   */
+  public static AnalysisEngineDescription getAggregateDescription(AnalysisEngineDescription chunker)
+      throws ResourceInitializationException {
+    AggregateBuilder aggregate = new AggregateBuilder();
+    aggregate.add(TokenAnnotator.getDescription());
+    aggregate.add(PosTaggerAnnotator.getDescription());
+    aggregate.add(DefaultSnowballStemmer.getDescription("English"));
+    aggregate.add(chunker);
+    return aggregate.createAggregateDescription();
+  }
+
+  private static final String SEPARATOR = "\n";
+
+  private static final Request POISON = new Request(null);
+
+  private AnalysisEngine engine;
+
+  private int batchSize;
+
+  private long maxWaitNanos;
+
+  private BlockingQueue<Request> queue;
+
+  private Thread worker;
+
+  // set by close(), after which no more texts are accepted
+  private volatile boolean closing;
+
+  // set by the worker when it stops, after which queued texts are never processed
+  private volatile boolean stopped;
+
+  public BatchingNamedEntityTagger(AnalysisEngine engine, int batchSize, long maxWaitMillis)
+      throws ResourceInitializationException {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("expected a batch size of at least 1, found " + batchSize);
+    }
+    this.engine = engine;
+    this.batchSize = batchSize;
+    this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    this.queue = new LinkedBlockingQueue<Request>();
+    final JCas jCas = engine.newJCas();
+    this.worker = new Thread(new Runnable() {
+      public void run() {
+        try {
+          BatchingNamedEntityTagger.this.runBatches(jCas);
+        } finally {
+          BatchingNamedEntityTagger.this.stopped = true;
+          BatchingNamedEntityTagger.this.failQueued();
+        }
+      }
+    }, "BatchingNamedEntityTagger");
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+  /**
+   * Queue a text for tagging.
+   * 
+   * @return the mentions in the text, once its batch has been processed
+   * @throws IllegalStateException
+   *           if the tagger has been closed or its worker has stopped
+   */
+  public Future<List<Mention>> submit(String text) {
+    if (text.contains(SEPARATOR)) {
+      throw new IllegalArgumentException("texts must not contain line breaks: " + text);
+    }
+    if (this.closing || this.stopped) {
+      throw new IllegalStateException("the tagger has been closed or its worker has stopped");
+    }
+    Request request = new Request(text);
+    this.queue.add(request);
+    // the worker may have stopped (and drained the queue) since the check above
+    if (this.stopped) {
+      this.failQueued();
+    }
+    return request.future;
+  }
+
+  /**
+   * Tag a single text, waiting for its batch to be processed.
+   */
+  public List<Mention> tag(String text) throws InterruptedException, ExecutionException {
+    return this.submit(text).get();
+  }
+
+  /**
+   * Process the texts already submitted, then stop the worker thread.
+   */
+  public void close() throws InterruptedException {
+    this.closing = true;
+    this.queue.add(POISON);
+    this.worker.join();
+  }
+
+  /**
+   * Fail the texts left in the queue, which the stopped worker will never process.
+   */
+  private void failQueued() {
+    Request request;
+    while ((request = this.queue.poll()) != null) {
+      if (request != POISON) {
+        request.fail(new IllegalStateException("the tagger stopped before tagging the text"));
+      }
+    }
+  }
+
+  private void runBatches(JCas jCas) {
+    List<Request> batch = new ArrayList<Request>(this.batchSize);
+    boolean closed = false;
+    while (!closed) {
+      batch.clear();
+      try {
+        Request request = this.queue.take();
+        if (request == POISON) {
+          break;
+        }
+        batch.add(request);
+        long deadline = System.nanoTime() + this.maxWaitNanos;
+        while (batch.size() < this.batchSize) {
+          request = this.queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (request == null) {
+            break;
+          } else if (request == POISON) {
+            closed = true;
+            break;
+          }
+          batch.add(request);
+        }
+      } catch (InterruptedException e) {
+        for (Request request : batch) {
+          request.fail(e);
+        }
+        return;
+      }
+      this.process(jCas, batch);
+    }
+  }
+
+  private void process(JCas jCas, List<Request> batch) {
+    try {
+      // one sentence per text, separated by line breaks
+      jCas.reset();
+      StringBuilder builder = new StringBuilder();
+      List<Sentence> sentences = new ArrayList<Sentence>(batch.size());
+      for (Request request : batch) {
+        if (builder.length() > 0) {
+          builder.append(SEPARATOR);
+        }
+        int begin = builder.length();
+        builder.append(request.text);
+        sentences.add(new Sentence(jCas, begin, builder.length()));
+      }
+      jCas.setDocumentText(builder.toString());
+      for (Sentence sentence : sentences) {
+        sentence.addToIndexes();
+      }
+
+      this.engine.process(jCas);
+
+      // split the mentions back out per text
+      for (int i = 0; i < batch.size(); ++i) {
+        Sentence sentence = sentences.get(i);
+        List<Mention> mentions = new ArrayList<Mention>();
+        for (NamedEntityMention mention : JCasUtil.selectCovered(
+            jCas,
+            NamedEntityMention.class,
+            sentence)) {
+          mentions.add(new Mention(
+              mention.getBegin() - sentence.getBegin(),
+              mention.getEnd() - sentence.getBegin(),
+              mention.getCoveredText(),
+              mention.getMentionType()));
+        }
+        batch.get(i).complete(mentions);
+      }
+    } catch (Exception e) {
+      for (Request request : batch) {
+        request.fail(e);
+      }
+    }
+  }
+
+  /**
+   * A submitted text, and the future for its mentions.
+   */
+  private static class Request {
+
+    public final String text;
+
+    public final SettableFuture<List<Mention>> future;
+
+    public Request(String text) {
+      this.text = text;
+      this.future = SettableFuture.create();
+    }
+
+    public void complete(List<Mention> mentions) {
+      this.future.set(mentions);
+    }
+
+    public void fail(Throwable throwable) {
+      this.future.setException(throwable);
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.SequenceClassifier;
+import org.cleartk.classifier.feature.extractor.CleartkExtractor;
+import org.cleartk.classifier.feature.extractor.simple.SimpleFeatureExtractor;
+import org.cleartk.classifier.mallet.MalletCRFStringOutcomeClassifierBuilder;
+import org.cleartk.syntax.opennlp.PosTaggerAnnotator;
+import org.cleartk.token.stem.snowball.DefaultSnowballStemmer;
+import org.cleartk.token.type.Sentence;
+import org.cleartk.token.type.Token;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.pipeline.JCasIterable;
+import org.uimafit.util.JCasUtil;
+
+import com.cbsi.ner.classifier.CompiledCRFClassifier;
+import com.cbsi.ner.classifier.CompiledCRFClassifierBuilder;
+import com.cbsi.ner.feature.FeatureHasher;
+import com.cbsi.ner.feature.HashedFeatureExtractor;
+import com.cbsi.ner.feature.HashedFeatureSequence;
+import com.cbsi.ner.feature.TokenFeatureTable;
+import com.cbsi.ner.reader.Conll2003GoldReader;
+
+/**
+ * This class provides a main method that compares the Mallet CRF classifier in a model.jar with the
+ * {@link CompiledCRFClassifier} compiled from it by {@link CompileCRFModel}. It checks that both
+ * produce identical labels for every sentence of a Conll-annotated file, and reports decoding time
+ * and allocated bytes per token for each. Features are extracted once up front, so only decoding is
+ * measured.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BenchmarkCRFDecoding {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--data-file", usage = "The Conll-annotated file to decode")
+    public File dataFile = new File(
+        "src/main/resources/data/cbsi-ner-data/test/cmp_prod_conll2003.test");
+
+    @Option(name = "--model-dir", usage = "The directory where the Mallet CRF model was trained")
+    public File modelDirectory = new File("target/chunking/ne-model-feature-test");
+
+    @Option(name = "--compiled-model-dir", usage = "The directory where the compiled model was written")
+    public File compiledModelDirectory = new File("target/chunking/ne-model-feature-test-compiled");
+
+    @Option(
+        name = "--feature-hash-bits",
+        usage = "The number of hash bits the models were trained with (0 if they were not trained on hashed features)")
+    public int featureHashBits = 0;
+
+    @Option(name = "--iterations", usage = "The number of passes over the data to time")
+    public int iterations = 5;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+
+    SequenceClassifier<String> malletClassifier = new MalletCRFStringOutcomeClassifierBuilder().loadClassifier(
+        open(new File(options.modelDirectory, "model.jar")));
+    CompiledCRFClassifier compiledClassifier = new CompiledCRFClassifierBuilder().loadClassifier(
+        open(new File(options.compiledModelDirectory, "model.jar")));
+
+    // extract the features of every sentence up front
+    AggregateBuilder builder = new AggregateBuilder();
+    builder.add(PosTaggerAnnotator.getDescription());
+    builder.add(DefaultSnowballStemmer.getDescription("English"));
+    AnalysisEngine preprocessor = builder.createAggregate();
+    TokenFeatureTable table = new TokenFeatureTable(NamedEntityChunker.createTokenFeatureExtractor());
+    SimpleFeatureExtractor extractor = table;
+    CleartkExtractor contextExtractor = NamedEntityChunker.createContextExtractor(table);
+    HashedFeatureExtractor hashedExtractor = null;
+    if (options.featureHashBits > 0) {
+      hashedExtractor = new HashedFeatureExtractor(
+          NamedEntityChunker.createTokenFeatureExtractor(),
+          new FeatureHasher(options.featureHashBits),
+          3);
+    }
+    List<List<List<Feature>>> sentenceFeatures = new ArrayList<List<List<Feature>>>();
+    List<HashedFeatureSequence> sentenceHashedFeatures = new ArrayList<HashedFeatureSequence>();
+    int tokenCount = 0;
+    for (JCas jCas : new JCasIterable(
+        Conll2003GoldReader.getCollectionReader(options.dataFile.getAbsolutePath()),
+        preprocessor)) {
+      table.clear();
+      if (hashedExtractor != null) {
+        hashedExtractor.reset(jCas);
+      }
+      for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+        List<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sentence);
+        if (hashedExtractor != null) {
+          HashedFeatureSequence hashedFeatures = new HashedFeatureSequence();
+          hashedExtractor.extract(jCas, tokens, hashedFeatures);
+          sentenceHashedFeatures.add(hashedFeatures);
+          sentenceFeatures.add(hashedFeatures.toFeatureLists(hashedExtractor.getHasher()));
+        } else {
+          List<List<Feature>> featureLists = new ArrayList<List<Feature>>();
+          for (Token token : tokens) {
+            List<Feature> features = new ArrayList<Feature>();
+            features.addAll(extractor.extract(jCas, token));
+            features.addAll(contextExtractor.extract(jCas, token));
+            featureLists.add(features);
+          }
+          sentenceFeatures.add(featureLists);
+        }
+        tokenCount += tokens.size();
+      }
+    }
+
+    // check that the labels are identical (this also warms up both classifiers)
+    int mismatches = 0;
+    for (int i = 0; i < sentenceFeatures.size(); ++i) {
+      List<String> expected = malletClassifier.classify(sentenceFeatures.get(i));
+      List<String> actual = hashedExtractor != null
+          ? compiledClassifier.classify(sentenceHashedFeatures.get(i))
+          : compiledClassifier.classify(sentenceFeatures.get(i));
+      if (!expected.equals(actual)) {
+        ++mismatches;
+      }
+    }
+    System.out.printf(
+        "%d sentences, %d tokens, %d sentences with differing labels\n",
+        sentenceFeatures.size(),
+        tokenCount,
+        mismatches);
+
+    // time both classifiers
+    long malletTime = 0;
+    long malletBytes = 0;
+    long compiledTime = 0;
+    long compiledBytes = 0;
+    for (int iteration = 0; iteration < options.iterations; ++iteration) {
+      long bytes = allocatedBytes();
+      long start = System.nanoTime();
+      for (List<List<Feature>> features : sentenceFeatures) {
+        malletClassifier.classify(features);
+      }
+      malletTime += System.nanoTime() - start;
+      malletBytes += allocatedBytes() - bytes;
+
+      bytes = allocatedBytes();
+      start = System.nanoTime();
+      if (hashedExtractor != null) {
+        for (HashedFeatureSequence features : sentenceHashedFeatures) {
+          compiledClassifier.classify(features);
+        }
+      } else {
+        for (List<List<Feature>> features : sentenceFeatures) {
+          compiledClassifier.classify(features);
+        }
+      }
+      compiledTime += System.nanoTime() - start;
+      compiledBytes += allocatedBytes() - bytes;
+    }
+    long total = (long) tokenCount * options.iterations;
+    System.out.printf(
+        "mallet CRF:   %8.2f us/token %10.1f bytes/token\n",
+        malletTime / 1000.0 / total,
+        (double) malletBytes / total);
+    System.out.printf(
+        "compiled CRF: %8.2f us/token %10.1f bytes/token\n",
+        compiledTime / 1000.0 / total,
+        (double) compiledBytes / total);
+    System.out.printf("speedup:      %8.2fx\n", (double) malletTime / compiledTime);
+  }
+
+  private static InputStream open(File file) throws Exception {
+    return new BufferedInputStream(new FileInputStream(file));
+  }
+
+  /**
+   * @return the bytes allocated so far by the current thread, or 0 if the JVM cannot tell
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return 0;
+  }
+}
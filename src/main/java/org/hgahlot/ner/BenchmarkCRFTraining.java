@@ -0,0 +1,129 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.cleartk.classifier.jar.Train;
+import org.cleartk.eval.AnnotationStatistics;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+
+import com.cbsi.ner.classifier.ThreadedCRFTrainer;
+import com.cbsi.ner.reader.Conll2003GoldReader;
+
+/**
+ * This class provides a main method that compares Mallet's single-threaded CRF training with the
+ * {@link ThreadedCRFTrainer} at several thread counts. The training data is extracted once, then
+ * each trainer trains on its own copy of it, and the resulting model is evaluated on the test file.
+ * The wall-clock training time and the F1 of each model are printed.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BenchmarkCRFTraining {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--train-file", usage = "The Conll-annotated file to train on")
+    public File trainFile = new File(
+        "src/main/resources/data/cbsi-ner-data/cmp_prod_conll2003.train");
+
+    @Option(name = "--test-file", usage = "The Conll-annotated file to evaluate on")
+    public File testFile = new File(
+        "src/main/resources/data/cbsi-ner-data/test/cmp_prod_conll2003.test");
+
+    @Option(name = "--work-dir", usage = "The directory in which to write the training data and models")
+    public File workDirectory = new File("target/chunking/benchmark-crf-training");
+
+    @Option(name = "--threads", usage = "Comma-separated numbers of threads to train with")
+    public String threads = "1,2,4,8";
+
+    @Option(name = "--iterations", usage = "The maximum number of training iterations")
+    public int iterations = ThreadedCRFTrainer.DEFAULT_ITERATIONS;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+
+    // extract the training data once
+    File dataDirectory = new File(options.workDirectory, "data");
+    EvaluateNamedEntityChunker evaluator = new EvaluateNamedEntityChunker(options.workDirectory);
+    evaluator.writeTrainingData(
+        Conll2003GoldReader.getCollectionReader(options.trainFile.getAbsolutePath()),
+        dataDirectory);
+
+    System.out.println("trainer\tthreads\ttrain s\tspeedup\tF1");
+
+    // Mallet's own trainer, as run by Train
+    File directory = copy(dataDirectory, new File(options.workDirectory, "mallet"));
+    long start = System.nanoTime();
+    Train.main(directory, "--iterations", String.valueOf(options.iterations));
+    long baseline = System.nanoTime() - start;
+    print("mallet", 1, baseline, baseline, test(evaluator, options.testFile, directory));
+
+    for (String threadsString : Arrays.asList(options.threads.split(","))) {
+      int threads = Integer.parseInt(threadsString.trim());
+      directory = copy(dataDirectory, new File(options.workDirectory, "threaded-" + threads));
+      evaluator.setCRFTrainer(new ThreadedCRFTrainer(
+          threads,
+          options.iterations,
+          ThreadedCRFTrainer.DEFAULT_TOLERANCE,
+          ThreadedCRFTrainer.DEFAULT_GAUSSIAN_VARIANCE));
+      start = System.nanoTime();
+      evaluator.trainModel(directory);
+      long time = System.nanoTime() - start;
+      print("threaded", threads, time, baseline, test(evaluator, options.testFile, directory));
+    }
+  }
+
+  private static File copy(File dataDirectory, File directory) throws Exception {
+    if (directory.exists()) {
+      FileUtils.deleteDirectory(directory);
+    }
+    FileUtils.copyDirectory(dataDirectory, directory);
+    return directory;
+  }
+
+  private static double test(EvaluateNamedEntityChunker evaluator, File testFile, File directory)
+      throws Exception {
+    AnnotationStatistics<String> stats = evaluator.test(
+        Conll2003GoldReader.getCollectionReader(testFile.getAbsolutePath()),
+        directory);
+    return stats.f1();
+  }
+
+  private static void print(String trainer, int threads, long time, long baseline, double f1) {
+    System.out.printf(
+        "%s\t%d\t%.1f\t%.2fx\t%.4f\n",
+        trainer,
+        threads,
+        time / 1e9,
+        (double) baseline / time,
+        f1);
+  }
+}
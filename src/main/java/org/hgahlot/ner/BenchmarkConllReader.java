@@ -0,0 +1,140 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.cleartk.ne.type.Chunk;
+import org.cleartk.ne.type.NamedEntityMention;
+import org.cleartk.token.type.Sentence;
+import org.cleartk.token.type.Token;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.pipeline.JCasIterable;
+import org.uimafit.util.JCasUtil;
+
+import com.cbsi.ner.reader.Conll2003GoldReader;
+
+/**
+ * This class provides a main method that reads a Conll-annotated file with the line-by-line and the
+ * memory-mapped modes of {@link Conll2003GoldReader}, checks that both produce the same document
+ * text and the same Token, Sentence, Chunk and NamedEntityMention annotations (with the same
+ * offsets and types) for every document, and reports how long each mode took.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BenchmarkConllReader {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--data-file", usage = "The Conll-annotated file to read")
+    public File dataFile = new File(
+        "src/main/resources/data/cbsi-ner-data/cmp_prod_conll2003.train");
+
+    @Option(name = "--iterations", usage = "The number of passes over the data to time")
+    public int iterations = 3;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+    String path = options.dataFile.getAbsolutePath();
+
+    // compare the annotations of the two modes, document by document
+    Iterator<JCas> lineDocuments = read(path, false).iterator();
+    Iterator<JCas> mappedDocuments = read(path, true).iterator();
+    int documents = 0;
+    int mismatches = 0;
+    while (lineDocuments.hasNext() && mappedDocuments.hasNext()) {
+      List<String> expected = describe(lineDocuments.next());
+      List<String> actual = describe(mappedDocuments.next());
+      if (!expected.equals(actual)) {
+        ++mismatches;
+      }
+      ++documents;
+    }
+    if (lineDocuments.hasNext() || mappedDocuments.hasNext()) {
+      System.out.println("the two modes read different numbers of documents");
+      ++mismatches;
+    }
+    System.out.printf("%d documents, %d differing\n", documents, mismatches);
+
+    // time reading alone in both modes
+    for (boolean memoryMapped : new boolean[] { false, true }) {
+      long start = System.nanoTime();
+      long tokens = 0;
+      for (int i = 0; i < options.iterations; ++i) {
+        for (JCas jCas : read(path, memoryMapped)) {
+          tokens += JCasUtil.select(jCas, Token.class).size();
+        }
+      }
+      long time = System.nanoTime() - start;
+      System.out.printf(
+          "%s: %.0f ms per pass, %.0f tokens/sec\n",
+          memoryMapped ? "memory-mapped" : "line by line",
+          time / 1000000.0 / options.iterations,
+          tokens / (time / 1000000000.0));
+    }
+  }
+
+  private static JCasIterable read(String path, boolean memoryMapped) throws Exception {
+    CollectionReader reader = CollectionReaderFactory.createCollectionReader(Conll2003GoldReader.getDescription(
+        path,
+        memoryMapped));
+    return new JCasIterable(reader);
+  }
+
+  /**
+   * @return the document text and one line per annotation, giving its type, offsets and labels
+   */
+  private static List<String> describe(JCas jCas) {
+    List<String> lines = new ArrayList<String>();
+    lines.add(jCas.getDocumentText());
+    for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+      lines.add(describe("Sentence", sentence, ""));
+    }
+    for (Token token : JCasUtil.select(jCas, Token.class)) {
+      lines.add(describe("Token", token, token.getPos()));
+    }
+    for (Chunk chunk : JCasUtil.select(jCas, Chunk.class)) {
+      lines.add(describe("Chunk", chunk, chunk.getChunkType()));
+    }
+    for (NamedEntityMention mention : JCasUtil.select(jCas, NamedEntityMention.class)) {
+      lines.add(describe("NamedEntityMention", mention, mention.getMentionType()));
+    }
+    return lines;
+  }
+
+  private static String describe(String type, Annotation annotation, String label) {
+    return String.format("%s %d %d %s", type, annotation.getBegin(), annotation.getEnd(), label);
+  }
+}
@@ -0,0 +1,156 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.util.CasCopier;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.feature.extractor.CleartkExtractor;
+import org.cleartk.classifier.feature.extractor.CleartkExtractorException;
+import org.cleartk.classifier.feature.extractor.simple.SimpleFeatureExtractor;
+import org.cleartk.syntax.opennlp.PosTaggerAnnotator;
+import org.cleartk.token.stem.snowball.DefaultSnowballStemmer;
+import org.cleartk.token.type.Sentence;
+import org.cleartk.token.type.Token;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.pipeline.JCasIterable;
+import org.uimafit.util.JCasUtil;
+
+import com.cbsi.ner.feature.TokenFeatureTable;
+import com.cbsi.ner.reader.Conll2003GoldReader;
+
+/**
+ * This class provides a main method that measures how long the {@link NamedEntityChunker} features
+ * take to extract per sentence, once with the token and context extractors running independently
+ * (every token's features are computed again for each of its neighbours) and once through a
+ * {@link TokenFeatureTable} (every token's features are computed once). It also checks that both
+ * ways produce exactly the same feature lists.
+ *
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BenchmarkFeatureExtraction {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--data-file", usage = "The Conll-annotated file to extract features from")
+    public File dataFile = new File(
+        "src/main/resources/data/cbsi-ner-data/cmp_prod_conll2003.train");
+
+    @Option(name = "--iterations", usage = "The number of passes over the data to time")
+    public int iterations = 5;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+
+    // load the corpus once, with the part-of-speech tags and stems the features need
+    AggregateBuilder builder = new AggregateBuilder();
+    builder.add(PosTaggerAnnotator.getDescription());
+    builder.add(DefaultSnowballStemmer.getDescription("English"));
+    AnalysisEngine preprocessor = builder.createAggregate();
+    CollectionReader reader = Conll2003GoldReader.getCollectionReader(options.dataFile.getAbsolutePath());
+    List<JCas> jCases = new ArrayList<JCas>();
+    for (JCas jCas : new JCasIterable(reader, preprocessor)) {
+      // JCasIterable reuses the same CAS, so keep a copy of each document
+      JCas copy = preprocessor.newJCas();
+      CasCopier.copyCas(jCas.getCas(), copy.getCas(), true);
+      jCases.add(copy);
+    }
+
+    // the extractors as they were used before the token feature table
+    SimpleFeatureExtractor extractor = NamedEntityChunker.createTokenFeatureExtractor();
+    CleartkExtractor contextExtractor = NamedEntityChunker.createContextExtractor(extractor);
+
+    // the extractors as they are used now
+    TokenFeatureTable table = new TokenFeatureTable(NamedEntityChunker.createTokenFeatureExtractor());
+    CleartkExtractor tableContextExtractor = NamedEntityChunker.createContextExtractor(table);
+
+    // check that both produce identical features
+    int sentences = 0;
+    int mismatches = 0;
+    for (JCas jCas : jCases) {
+      table.clear();
+      for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+        List<List<Feature>> expected = extract(jCas, sentence, extractor, contextExtractor);
+        List<List<Feature>> actual = extract(jCas, sentence, table, tableContextExtractor);
+        if (!expected.equals(actual)) {
+          ++mismatches;
+        }
+        ++sentences;
+      }
+    }
+    System.out.printf("%d sentences, %d with differing features\n", sentences, mismatches);
+
+    // time both ways, after the warm up pass above
+    long independentTime = 0;
+    long tableTime = 0;
+    for (int i = 0; i < options.iterations; ++i) {
+      long start = System.nanoTime();
+      for (JCas jCas : jCases) {
+        for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+          extract(jCas, sentence, extractor, contextExtractor);
+        }
+      }
+      independentTime += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (JCas jCas : jCases) {
+        table.clear();
+        for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+          extract(jCas, sentence, table, tableContextExtractor);
+        }
+      }
+      tableTime += System.nanoTime() - start;
+    }
+    long total = (long) sentences * options.iterations;
+    System.out.printf("independent extractors: %.1f us/sentence\n", independentTime / 1000.0 / total);
+    System.out.printf("token feature table:    %.1f us/sentence\n", tableTime / 1000.0 / total);
+    System.out.printf("speedup:                %.2fx\n", (double) independentTime / tableTime);
+  }
+
+  private static List<List<Feature>> extract(
+      JCas jCas,
+      Sentence sentence,
+      SimpleFeatureExtractor extractor,
+      CleartkExtractor contextExtractor) throws CleartkExtractorException {
+    List<List<Feature>> featureLists = new ArrayList<List<Feature>>();
+    for (Token token : JCasUtil.selectCovered(jCas, Token.class, sentence)) {
+      List<Feature> features = new ArrayList<Feature>();
+      features.addAll(extractor.extract(jCas, token));
+      features.addAll(contextExtractor.extract(jCas, token));
+      featureLists.add(features);
+    }
+    return featureLists;
+  }
+}
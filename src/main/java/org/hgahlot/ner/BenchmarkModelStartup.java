@@ -0,0 +1,176 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.SequenceClassifier;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+
+import com.cbsi.ner.classifier.ClassifierRegistry;
+import com.cbsi.ner.classifier.MappedCRFModel;
+
+/**
+ * This class provides a main method that compares how long a model takes to load, and how much
+ * memory it takes, when loaded from the Mallet model.jar and when mapped from the
+ * {@link MappedCRFModel} file compiled from it. Each format is loaded in a fresh JVM, started with
+ * the same class path, so that neither benefits from classes or heap left behind by the other. The
+ * model file itself is read once before timing, so both formats start from a warm page cache.
+ * 
+ * For each format, the report gives the time to load the model, the time until the first sentence
+ * was decoded, the heap in use after loading and the growth of the process resident set size (read
+ * from /proc/self/status, so only available on Linux).
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BenchmarkModelStartup {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--model-dir", usage = "The directory holding model.jar and " + MappedCRFModel.FILE_NAME)
+    public File modelDirectory = new File("target/chunking/ne-model-feature-test");
+
+    @Option(name = "--format", usage = "Load only this format (jar or mapped) in this JVM")
+    public String format = null;
+
+    @Option(name = "--runs", usage = "The number of fresh JVMs to start per format")
+    public int runs = 3;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+
+    if (options.format != null) {
+      load(options.modelDirectory, options.format);
+      return;
+    }
+
+    // load each format in its own JVM
+    String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+    System.out.println("format\tload ms\tfirst decode ms\theap MB\tRSS MB");
+    for (String format : new String[] { "jar", "mapped" }) {
+      for (int run = 0; run < options.runs; ++run) {
+        List<String> command = new ArrayList<String>();
+        command.add(java);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BenchmarkModelStartup.class.getName());
+        command.add("--model-dir");
+        command.add(options.modelDirectory.getPath());
+        command.add("--format");
+        command.add(format);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = reader.readLine()) != null) {
+          System.out.println(line);
+        }
+        reader.close();
+        if (process.waitFor() != 0) {
+          throw new IllegalStateException("loading the " + format + " model failed");
+        }
+      }
+    }
+  }
+
+  private static void load(File modelDirectory, String format) throws Exception {
+    File modelFile;
+    if (format.equals("jar")) {
+      modelFile = new File(modelDirectory, "model.jar");
+    } else if (format.equals("mapped")) {
+      modelFile = new File(modelDirectory, MappedCRFModel.FILE_NAME);
+    } else {
+      throw new IllegalArgumentException("unknown model format: " + format);
+    }
+    FileUtils.readFileToByteArray(modelFile);
+    System.gc();
+    long heapBefore = usedHeap();
+    long rssBefore = residentSetSize();
+
+    long start = System.nanoTime();
+    SequenceClassifier<String> classifier;
+    if (format.equals("jar")) {
+      classifier = ClassifierRegistry.loadClassifier(modelFile);
+    } else {
+      classifier = MappedCRFModel.open(modelFile).createClassifier();
+    }
+    long loaded = System.nanoTime();
+    List<Feature> features = Arrays.asList(new Feature("CoveredText", "Samsung"));
+    List<List<Feature>> sentence = new ArrayList<List<Feature>>();
+    for (int i = 0; i < 10; ++i) {
+      sentence.add(features);
+    }
+    classifier.classify(sentence);
+    long decoded = System.nanoTime();
+
+    System.gc();
+    long heap = usedHeap() - heapBefore;
+    long rss = residentSetSize() - rssBefore;
+    System.out.printf(
+        "%s\t%d\t%d\t%.1f\t%s\n",
+        format,
+        (loaded - start) / 1000000,
+        (decoded - start) / 1000000,
+        heap / 1048576.0,
+        rssBefore < 0 ? "n/a" : String.format("%.1f", rss / 1048576.0));
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * @return the resident set size of this process in bytes, or -1 if it is not known
+   */
+  private static long residentSetSize() throws Exception {
+    File status = new File("/proc/self/status");
+    if (!status.exists()) {
+      return -1;
+    }
+    BufferedReader reader = new BufferedReader(new FileReader(status));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("VmRSS:")) {
+          return Long.parseLong(line.substring(6).trim().split("\\s+")[0]) * 1024;
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return -1;
+  }
+}
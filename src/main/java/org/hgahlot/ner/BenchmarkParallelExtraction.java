@@ -0,0 +1,119 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.cleartk.classifier.mallet.MalletCRFStringOutcomeDataWriter;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+
+import com.cbsi.ner.reader.Conll2003GoldReader;
+
+/**
+ * This class provides a main method that writes the {@link NamedEntityChunker} training data of a
+ * file with different numbers of extraction threads (see
+ * {@link TrainNamedEntityChunker.Options#extractionThreads}), and for each prints the time taken,
+ * the speedup over one thread, and whether every file of the training directory is byte-identical
+ * to the one written by a single thread.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BenchmarkParallelExtraction {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--train-file", usage = "The Conll-annotated file to extract training data from")
+    public File trainFile = new File(
+        "src/main/resources/data/cbsi-ner-data/cmp_prod_conll2003.train");
+
+    @Option(name = "--work-dir", usage = "The directory in which to write the training data")
+    public File workDirectory = new File("target/chunking/benchmark-parallel-extraction");
+
+    @Option(
+        name = "--data-writer",
+        usage = "The class name of the sequence data writer whose training data is compared")
+    public String dataWriterClassName = MalletCRFStringOutcomeDataWriter.class.getName();
+
+    @Option(name = "--threads", usage = "Comma-separated numbers of threads to compare with one thread")
+    public String threads = "2,4,8";
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+
+    System.out.println("threads\textract s\tspeedup\tidentical");
+    File serialDirectory = new File(options.workDirectory, "threads-1");
+    long serialTime = extract(options, 1, serialDirectory);
+    System.out.printf("1\t%.1f\t1.00\t-\n", serialTime / 1e9);
+    for (String threadsString : Arrays.asList(options.threads.split(","))) {
+      int threads = Integer.parseInt(threadsString.trim());
+      File directory = new File(options.workDirectory, "threads-" + threads);
+      long time = extract(options, threads, directory);
+      System.out.printf(
+          "%d\t%.1f\t%.2f\t%s\n",
+          threads,
+          time / 1e9,
+          (double) serialTime / time,
+          sameFiles(serialDirectory, directory));
+    }
+  }
+
+  private static long extract(Options options, int threads, File directory) throws Exception {
+    if (directory.exists()) {
+      FileUtils.deleteDirectory(directory);
+    }
+    TrainNamedEntityChunker.Options trainOptions = new TrainNamedEntityChunker.Options();
+    trainOptions.trainFile = options.trainFile;
+    trainOptions.dataWriterClassName = options.dataWriterClassName;
+    trainOptions.extractionThreads = threads;
+    CollectionReaderDescription reader = Conll2003GoldReader.getDescription(
+        options.trainFile.getAbsolutePath(),
+        trainOptions.memoryMappedReader);
+    AnalysisEngineDescription preprocessing = NamedEntityChunker.getPreprocessingDescription();
+
+    long start = System.nanoTime();
+    TrainNamedEntityChunker.extractTrainingData(trainOptions, reader, preprocessing, directory);
+    return System.nanoTime() - start;
+  }
+
+  private static boolean sameFiles(File expectedDirectory, File directory) throws Exception {
+    File[] expectedFiles = expectedDirectory.listFiles();
+    if (expectedFiles.length != directory.listFiles().length) {
+      return false;
+    }
+    for (File expected : expectedFiles) {
+      if (!FileUtils.contentEquals(expected, new File(directory, expected.getName()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,139 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.cleartk.classifier.jar.Train;
+import org.cleartk.classifier.mallet.MalletCRFStringOutcomeDataWriter;
+import org.cleartk.eval.AnnotationStatistics;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+
+import com.cbsi.ner.classifier.PerceptronDataWriter;
+import com.cbsi.ner.reader.Conll2003GoldReader;
+
+/**
+ * This class provides a main method that compares the Mallet CRF with the averaged perceptron,
+ * decoded with the Viterbi algorithm and greedily, all with the same {@link NamedEntityChunker}
+ * features. For each it prints the time to extract the training data, the time to train, the time
+ * to tag the test file and the resulting F1.
+ * 
+ * The preprocessed documents are cached (see {@link com.cbsi.ner.cache.PreprocessedCasCache}) and
+ * the test file is tagged once before timing, so the tagging time is mostly the chunker's.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BenchmarkSequenceTaggers {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--train-file", usage = "The Conll-annotated file to train on")
+    public File trainFile = new File(
+        "src/main/resources/data/cbsi-ner-data/cmp_prod_conll2003.train");
+
+    @Option(name = "--test-file", usage = "The Conll-annotated file to evaluate on")
+    public File testFile = new File(
+        "src/main/resources/data/cbsi-ner-data/test/cmp_prod_conll2003.test");
+
+    @Option(name = "--work-dir", usage = "The directory in which to write the training data and models")
+    public File workDirectory = new File("target/chunking/benchmark-sequence-taggers");
+
+    @Option(name = "--perceptron-iterations", usage = "The number of averaged perceptron epochs")
+    public int perceptronIterations = 10;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+
+    EvaluateNamedEntityChunker evaluator = new EvaluateNamedEntityChunker(
+        options.workDirectory,
+        Arrays.<String> asList(),
+        0,
+        new File(options.workDirectory, "cas-cache"));
+
+    System.out.println("learner\textract s\ttrain s\ttag s\tF1");
+    String iterations = String.valueOf(options.perceptronIterations);
+    run(evaluator, options, "mallet-crf", MalletCRFStringOutcomeDataWriter.class.getName());
+    run(evaluator, options, "perceptron", PerceptronDataWriter.class.getName(), "--iterations", iterations);
+    run(
+        evaluator,
+        options,
+        "perceptron-greedy",
+        PerceptronDataWriter.class.getName(),
+        "--iterations",
+        iterations,
+        "--greedy");
+  }
+
+  private static void run(
+      EvaluateNamedEntityChunker evaluator,
+      Options options,
+      String name,
+      String dataWriterClassName,
+      String... trainingArguments) throws Exception {
+    File directory = new File(options.workDirectory, name);
+    if (directory.exists()) {
+      FileUtils.deleteDirectory(directory);
+    }
+    evaluator.setDataWriterClassName(dataWriterClassName);
+
+    long start = System.nanoTime();
+    evaluator.writeTrainingData(
+        Conll2003GoldReader.getCollectionReader(options.trainFile.getAbsolutePath()),
+        directory);
+    long extractTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    Train.main(directory, trainingArguments);
+    long trainTime = System.nanoTime() - start;
+
+    // once to warm up (and fill the cache of preprocessed test documents), once to time
+    test(evaluator, options.testFile, directory);
+    start = System.nanoTime();
+    AnnotationStatistics<String> stats = test(evaluator, options.testFile, directory);
+    long tagTime = System.nanoTime() - start;
+
+    System.out.printf(
+        "%s\t%.1f\t%.1f\t%.1f\t%.4f\n",
+        name,
+        extractTime / 1e9,
+        trainTime / 1e9,
+        tagTime / 1e9,
+        stats.f1());
+  }
+
+  private static AnnotationStatistics<String> test(
+      EvaluateNamedEntityChunker evaluator,
+      File testFile,
+      File directory) throws Exception {
+    return evaluator.test(
+        Conll2003GoldReader.getCollectionReader(testFile.getAbsolutePath()),
+        directory);
+  }
+}
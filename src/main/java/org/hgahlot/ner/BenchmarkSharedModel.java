@@ -0,0 +1,118 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+import com.cbsi.ner.classifier.ClassifierRegistry;
+
+/**
+ * This class provides a main method that measures the heap used by 1, 8 and 32 (or any other
+ * numbers of) {@link NamedEntityChunker} replicas, once with each replica loading its own copy of
+ * the model and once with all replicas sharing the classifier of the {@link ClassifierRegistry}. It
+ * also reports how long creating the replicas took.
+ * 
+ * Heap figures are taken after requesting garbage collection, so they are only approximate; run
+ * with a fixed heap (e.g. -Xms2g -Xmx2g) for steadier numbers.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BenchmarkSharedModel {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--model-dir", usage = "The directory where the model was trained")
+    public File modelDirectory = new File("target/chunking/ne-model-feature-test");
+
+    @Option(name = "--replicas", usage = "Comma-separated numbers of chunker replicas to create")
+    public String replicas = "1,8,32";
+
+    @Option(name = "--feature-hash-bits", usage = "The number of feature hash bits the model was trained with")
+    public int featureHashBits = 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+    File modelJar = new File(options.modelDirectory, "model.jar");
+
+    // the registry only shares classifiers that are safe to call concurrently
+    boolean shareable = ClassifierRegistry.isShareable(ClassifierRegistry.loadClassifier(modelJar));
+
+    System.out.println("replicas\tmodels\tshared\theap MB\tMB/replica\tcreate ms");
+    for (String count : options.replicas.split(",")) {
+      int replicas = Integer.parseInt(count.trim());
+      for (boolean shared : new boolean[] { false, true }) {
+        AnalysisEngineDescription description = NamedEntityChunker.getClassifierDescription(
+            modelJar,
+            shared,
+            NamedEntityChunker.PARAM_FEATURE_HASH_BITS,
+            options.featureHashBits);
+
+        ClassifierRegistry.clear();
+        long before = usedHeap();
+        long start = System.nanoTime();
+        List<AnalysisEngine> engines = new ArrayList<AnalysisEngine>();
+        for (int i = 0; i < replicas; ++i) {
+          engines.add(AnalysisEngineFactory.createPrimitive(description));
+        }
+        long time = System.nanoTime() - start;
+        long used = usedHeap() - before;
+
+        System.out.printf(
+            "%d\t%d\t%s\t%.1f\t%.1f\t%d\n",
+            replicas,
+            shared && shareable ? ClassifierRegistry.size() : replicas,
+            shared,
+            used / 1048576.0,
+            used / 1048576.0 / replicas,
+            time / 1000000);
+
+        for (AnalysisEngine engine : engines) {
+          engine.destroy();
+        }
+        engines.clear();
+      }
+    }
+    ClassifierRegistry.clear();
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; ++i) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
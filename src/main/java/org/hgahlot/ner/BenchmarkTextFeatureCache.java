@@ -0,0 +1,149 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.util.CasCopier;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.feature.extractor.simple.SimpleFeatureExtractor;
+import org.cleartk.syntax.opennlp.PosTaggerAnnotator;
+import org.cleartk.token.stem.snowball.DefaultSnowballStemmer;
+import org.cleartk.token.type.Token;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.pipeline.JCasIterable;
+import org.uimafit.util.JCasUtil;
+
+import com.cbsi.ner.feature.TokenTextFeatureCache;
+import com.cbsi.ner.reader.Conll2003GoldReader;
+
+/**
+ * This class provides a main method that measures how long the {@link NamedEntityChunker} token
+ * features take to extract per token without a {@link TokenTextFeatureCache} and with caches of
+ * several capacities, along with the hit rate of each cache. It also checks that the cached
+ * extractors produce exactly the same features as the uncached one.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BenchmarkTextFeatureCache {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--data-file", usage = "The Conll-annotated file to extract features from")
+    public File dataFile = new File(
+        "src/main/resources/data/cbsi-ner-data/cmp_prod_conll2003.train");
+
+    @Option(name = "--capacities", usage = "Comma-separated cache capacities to measure")
+    public String capacities = "1000,10000,100000";
+
+    @Option(name = "--iterations", usage = "The number of passes over the data to time")
+    public int iterations = 5;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+
+    // load the corpus once, with the part-of-speech tags and stems the features need
+    AggregateBuilder builder = new AggregateBuilder();
+    builder.add(PosTaggerAnnotator.getDescription());
+    builder.add(DefaultSnowballStemmer.getDescription("English"));
+    AnalysisEngine preprocessor = builder.createAggregate();
+    CollectionReader reader = Conll2003GoldReader.getCollectionReader(options.dataFile.getAbsolutePath());
+    List<JCas> jCases = new ArrayList<JCas>();
+    for (JCas jCas : new JCasIterable(reader, preprocessor)) {
+      // JCasIterable reuses the same CAS, so keep a copy of each document
+      JCas copy = preprocessor.newJCas();
+      CasCopier.copyCas(jCas.getCas(), copy.getCas(), true);
+      jCases.add(copy);
+    }
+
+    // the features without a cache, to compare against
+    SimpleFeatureExtractor extractor = NamedEntityChunker.createTokenFeatureExtractor();
+    List<List<Feature>> expected = extract(jCases, extractor);
+    long tokens = expected.size();
+    long uncachedTime = time(jCases, extractor, options.iterations);
+    System.out.printf("%d tokens\n", tokens);
+    System.out.println("capacity\tus/token\tspeedup\thit rate\tdiffering tokens");
+    System.out.printf(
+        "none\t%.2f\t1.00\t-\t-\n",
+        uncachedTime / 1000.0 / (tokens * options.iterations));
+
+    for (String capacity : options.capacities.split(",")) {
+      TokenTextFeatureCache cache = new TokenTextFeatureCache(Integer.parseInt(capacity.trim()));
+      SimpleFeatureExtractor cachedExtractor = NamedEntityChunker.createTokenFeatureExtractor(cache);
+
+      // check the features, which also warms up the cache
+      List<List<Feature>> actual = extract(jCases, cachedExtractor);
+      int mismatches = 0;
+      for (int i = 0; i < expected.size(); ++i) {
+        if (!expected.get(i).equals(actual.get(i))) {
+          ++mismatches;
+        }
+      }
+
+      cache.clear();
+      long cachedTime = time(jCases, cachedExtractor, options.iterations);
+      System.out.printf(
+          "%s\t%.2f\t%.2f\t%.1f%%\t%d\n",
+          capacity.trim(),
+          cachedTime / 1000.0 / (tokens * options.iterations),
+          (double) uncachedTime / cachedTime,
+          100.0 * cache.getHitRate(),
+          mismatches);
+    }
+  }
+
+  private static List<List<Feature>> extract(List<JCas> jCases, SimpleFeatureExtractor extractor)
+      throws Exception {
+    List<List<Feature>> featureLists = new ArrayList<List<Feature>>();
+    for (JCas jCas : jCases) {
+      for (Token token : JCasUtil.select(jCas, Token.class)) {
+        featureLists.add(extractor.extract(jCas, token));
+      }
+    }
+    return featureLists;
+  }
+
+  private static long time(List<JCas> jCases, SimpleFeatureExtractor extractor, int iterations)
+      throws Exception {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; ++i) {
+      for (JCas jCas : jCases) {
+        for (Token token : JCasUtil.select(jCas, Token.class)) {
+          extractor.extract(jCas, token);
+        }
+      }
+    }
+    return System.nanoTime() - start;
+  }
+}
@@ -0,0 +1,158 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.cleartk.classifier.CleartkSequenceAnnotator;
+import org.cleartk.classifier.jar.GenericJarClassifierFactory;
+import org.cleartk.ne.type.NamedEntityMention;
+import org.cleartk.syntax.opennlp.PosTaggerAnnotator;
+import org.cleartk.syntax.opennlp.SentenceAnnotator;
+import org.cleartk.token.stem.snowball.DefaultSnowballStemmer;
+import org.cleartk.token.tokenizer.TokenAnnotator;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.util.JCasUtil;
+
+import com.cbsi.ner.BatchingNamedEntityTagger.Mention;
+
+/**
+ * This class provides a main method that compares the throughput of tagging short texts (one per
+ * line of a file) with one CAS per text, as {@link RunNamedEntityChunker} does, against packing them
+ * into batches with a {@link BatchingNamedEntityTagger}. It also reports how many texts got
+ * different mentions in the two modes.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BenchmarkTitleBatching {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--model-dir", usage = "The directory where the model was trained")
+    public File modelDirectory = new File("target/chunking/ne-model-comp-prod-noBI_noNull");
+
+    @Option(name = "--text-file", usage = "The file of texts to tag, one per line")
+    public File textFile = new File("src/main/resources/data/cbsi-ner-data/cmp_prod_test.txt");
+
+    @Option(
+        name = "--feature-hash-bits",
+        usage = "Hash features into 2^bits ids as the model was trained with (0 disables hashing)")
+    public int featureHashBits = 0;
+
+    @Option(name = "--batch-size", usage = "The number of texts per CAS in batch mode")
+    public int batchSize = 64;
+
+    @Option(name = "--batch-max-wait-ms", usage = "The longest a text waits for its batch to fill")
+    public long batchMaxWaitMillis = 10;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+
+    List<String> texts = new ArrayList<String>();
+    for (String line : FileUtils.readLines(options.textFile)) {
+      if (line.trim().length() > 0) {
+        texts.add(line.trim());
+      }
+    }
+
+    // one CAS per text, with the same annotators as RunNamedEntityChunker
+    AggregateBuilder aggregate = new AggregateBuilder();
+    aggregate.add(SentenceAnnotator.getDescription());
+    aggregate.add(TokenAnnotator.getDescription());
+    aggregate.add(PosTaggerAnnotator.getDescription());
+    aggregate.add(DefaultSnowballStemmer.getDescription("English"));
+    aggregate.add(AnalysisEngineFactory.createPrimitiveDescription(
+        NamedEntityChunker.class,
+        CleartkSequenceAnnotator.PARAM_IS_TRAINING,
+        false,
+        GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH,
+        new File(options.modelDirectory, "model.jar"),
+        NamedEntityChunker.PARAM_FEATURE_HASH_BITS,
+        options.featureHashBits));
+    AnalysisEngine engine = aggregate.createAggregate();
+    JCas jCas = engine.newJCas();
+    List<List<Mention>> singleResults = new ArrayList<List<Mention>>();
+    long start = System.nanoTime();
+    for (String text : texts) {
+      jCas.reset();
+      jCas.setDocumentText(text);
+      engine.process(jCas);
+      List<Mention> mentions = new ArrayList<Mention>();
+      for (NamedEntityMention mention : JCasUtil.select(jCas, NamedEntityMention.class)) {
+        mentions.add(new Mention(
+            mention.getBegin(),
+            mention.getEnd(),
+            mention.getCoveredText(),
+            mention.getMentionType()));
+      }
+      singleResults.add(mentions);
+    }
+    long singleTime = System.nanoTime() - start;
+    engine.destroy();
+
+    // batches of texts per CAS
+    BatchingNamedEntityTagger tagger = new BatchingNamedEntityTagger(
+        AnalysisEngineFactory.createAggregate(BatchingNamedEntityTagger.getAggregateDescription(
+            options.modelDirectory,
+            options.featureHashBits)),
+        options.batchSize,
+        options.batchMaxWaitMillis);
+    start = System.nanoTime();
+    List<Future<List<Mention>>> futures = new ArrayList<Future<List<Mention>>>();
+    for (String text : texts) {
+      futures.add(tagger.submit(text));
+    }
+    List<List<Mention>> batchResults = new ArrayList<List<Mention>>();
+    for (Future<List<Mention>> future : futures) {
+      batchResults.add(future.get());
+    }
+    long batchTime = System.nanoTime() - start;
+    tagger.close();
+
+    int differences = 0;
+    for (int i = 0; i < texts.size(); ++i) {
+      if (!singleResults.get(i).equals(batchResults.get(i))) {
+        ++differences;
+      }
+    }
+    System.out.printf("%d texts, %d with different mentions\n", texts.size(), differences);
+    System.out.printf("one CAS per text:     %8.1f texts/sec\n", texts.size() / (singleTime / 1e9));
+    System.out.printf(
+        "%4d texts per CAS:   %8.1f texts/sec\n",
+        options.batchSize,
+        texts.size() / (batchTime / 1e9));
+  }
+}
@@ -0,0 +1,113 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.cleartk.classifier.jar.JarClassifierBuilder;
+import org.cleartk.classifier.mallet.MalletCRFStringOutcomeDataWriter;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+
+import cc.mallet.types.InstanceList;
+
+import com.cbsi.ner.classifier.BinaryMalletCRFDataWriter;
+import com.cbsi.ner.classifier.CompressedBinaryMalletCRFDataWriter;
+import com.cbsi.ner.classifier.ThreadedCRFTrainer;
+import com.cbsi.ner.reader.Conll2003GoldReader;
+
+/**
+ * This class provides a main method that writes the {@link NamedEntityChunker} training data as
+ * Mallet text, as a {@link com.cbsi.ner.classifier.BinarySequenceFile} and as a compressed one, and
+ * for each prints the time to write it, its size on disk, and the time to read it back into the
+ * instances a Mallet CRF is trained on, with the number of instances and features read, which
+ * should be the same for every format.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BenchmarkTrainingDataFormats {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--train-file", usage = "The Conll-annotated file to extract training data from")
+    public File trainFile = new File(
+        "src/main/resources/data/cbsi-ner-data/cmp_prod_conll2003.train");
+
+    @Option(name = "--work-dir", usage = "The directory in which to write the training data")
+    public File workDirectory = new File("target/chunking/benchmark-training-data-formats");
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+
+    EvaluateNamedEntityChunker evaluator = new EvaluateNamedEntityChunker(
+        options.workDirectory,
+        Arrays.<String> asList(),
+        0,
+        new File(options.workDirectory, "cas-cache"));
+
+    System.out.println("format\twrite s\tMB\tread s\tinstances\tfeatures");
+    run(evaluator, options, "mallet-text", MalletCRFStringOutcomeDataWriter.class.getName());
+    run(evaluator, options, "binary", BinaryMalletCRFDataWriter.class.getName());
+    run(evaluator, options, "binary-gzip", CompressedBinaryMalletCRFDataWriter.class.getName());
+  }
+
+  private static void run(
+      EvaluateNamedEntityChunker evaluator,
+      Options options,
+      String name,
+      String dataWriterClassName) throws Exception {
+    File directory = new File(options.workDirectory, name);
+    if (directory.exists()) {
+      FileUtils.deleteDirectory(directory);
+    }
+    evaluator.setDataWriterClassName(dataWriterClassName);
+
+    long start = System.nanoTime();
+    evaluator.writeTrainingData(
+        Conll2003GoldReader.getCollectionReader(options.trainFile.getAbsolutePath()),
+        directory);
+    long writeTime = System.nanoTime() - start;
+    long size = FileUtils.sizeOfDirectory(directory);
+
+    start = System.nanoTime();
+    InstanceList instances = ThreadedCRFTrainer.readTrainingData(
+        directory,
+        JarClassifierBuilder.fromTrainingDirectory(directory));
+    long readTime = System.nanoTime() - start;
+
+    System.out.printf(
+        "%s\t%.1f\t%.1f\t%.1f\t%d\t%d\n",
+        name,
+        writeTime / 1e9,
+        size / 1048576.0,
+        readTime / 1e9,
+        instances.size(),
+        instances.getDataAlphabet().size());
+  }
+}
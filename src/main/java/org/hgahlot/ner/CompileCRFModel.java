@@ -0,0 +1,223 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.apache.commons.io.IOUtils;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.encoder.features.FeaturesEncoder;
+import org.cleartk.classifier.encoder.features.NameNumber;
+import org.cleartk.classifier.mallet.MalletCRFStringOutcomeClassifierBuilder;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+
+import cc.mallet.fst.CRF;
+
+import com.cbsi.ner.classifier.CRFTables;
+import com.cbsi.ner.classifier.CompiledCRFClassifierBuilder;
+import com.cbsi.ner.classifier.MappedCRFModel;
+import com.cbsi.ner.feature.FeatureHasher;
+
+/**
+ * This class provides a main method that compiles the Mallet CRF in a model.jar written by
+ * {@link TrainNamedEntityChunker} into a model.jar for a
+ * {@link com.cbsi.ner.classifier.CompiledCRFClassifier}. The compiled model.jar can be used by
+ * {@link NamedEntityChunker} in place of the original one, with no other change to the pipeline.
+ * With <code>--mapped</code>, it writes a {@link MappedCRFModel} file instead, which starts faster
+ * but must be passed to the chunker through a
+ * {@link com.cbsi.ner.classifier.MappedSequenceClassifierFactory}.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class CompileCRFModel {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--model-dir", usage = "The directory where the Mallet CRF model was trained")
+    public File modelDirectory = new File("target/chunking/ne-model-feature-test");
+
+    @Option(name = "--output-dir", usage = "The directory where the compiled model should be written")
+    public File outputDirectory = new File("target/chunking/ne-model-feature-test-compiled");
+
+    @Option(
+        name = "--feature-hash-bits",
+        usage = "The number of hash bits the model was trained with (0 if it was not trained on hashed features)")
+    public int featureHashBits = 0;
+
+    @Option(
+        name = "--mapped",
+        usage = "Write a memory-mapped model file (" + MappedCRFModel.FILE_NAME + ") instead of a model.jar")
+    public boolean mapped = false;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+    File malletJar = new File(options.modelDirectory, "model.jar");
+    File output;
+    if (options.mapped) {
+      output = new File(options.outputDirectory, MappedCRFModel.FILE_NAME);
+      compileMapped(malletJar, output, options.featureHashBits);
+    } else {
+      output = new File(options.outputDirectory, "model.jar");
+      compile(malletJar, output, options.featureHashBits);
+    }
+    System.out.println("Compiled model written to " + output);
+  }
+
+  /**
+   * Compile the Mallet CRF model in one model.jar into a compiled CRF model.jar.
+   */
+  public static void compile(File malletJar, File compiledJar, int featureHashBits)
+      throws Exception {
+    MalletModel model = MalletModel.read(malletJar);
+
+    // point the manifest at the compiled classifier builder
+    Manifest manifest = model.manifest;
+    boolean replaced = false;
+    String malletBuilderName = MalletCRFStringOutcomeClassifierBuilder.class.getName();
+    for (Map.Entry<Object, Object> attribute : manifest.getMainAttributes().entrySet()) {
+      if (malletBuilderName.equals(attribute.getValue())) {
+        attribute.setValue(CompiledCRFClassifierBuilder.class.getName());
+        replaced = true;
+      }
+    }
+    if (!replaced) {
+      throw new IOException("expected a manifest naming " + malletBuilderName + " in " + malletJar);
+    }
+
+    // write the encoders unchanged, followed by the tables
+    CRFTables tables = model.createTables(featureHashBits);
+    compiledJar.getParentFile().mkdirs();
+    JarOutputStream output = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(
+        compiledJar)), manifest);
+    try {
+      output.putNextEntry(new JarEntry(model.encodersEntryName));
+      output.write(model.encodersBytes);
+      output.closeEntry();
+      output.putNextEntry(new JarEntry(CompiledCRFClassifierBuilder.TABLES_FILE_NAME));
+      DataOutputStream dataOutput = new DataOutputStream(output);
+      tables.write(dataOutput);
+      dataOutput.flush();
+      output.closeEntry();
+    } finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Compile the Mallet CRF model in one model.jar into a {@link MappedCRFModel} file.
+   */
+  public static void compileMapped(File malletJar, File mappedFile, int featureHashBits)
+      throws Exception {
+    MalletModel model = MalletModel.read(malletJar);
+    mappedFile.getAbsoluteFile().getParentFile().mkdirs();
+    MappedCRFModel.write(mappedFile, model.encodersBytes, model.createTables(featureHashBits));
+  }
+
+  /**
+   * The parts of a Mallet CRF model.jar that compiling needs.
+   */
+  private static class MalletModel {
+
+    public Manifest manifest;
+
+    public String encodersEntryName;
+
+    public byte[] encodersBytes;
+
+    public FeaturesEncoder<List<NameNumber>> featuresEncoder;
+
+    public CRF crf;
+
+    @SuppressWarnings("unchecked")
+    public static MalletModel read(File malletJar) throws Exception {
+      // find the encoders and the CRF among the serialized objects of the jar
+      MalletModel model = new MalletModel();
+      JarInputStream input = new JarInputStream(new BufferedInputStream(new FileInputStream(
+          malletJar)));
+      try {
+        model.manifest = input.getManifest();
+        JarEntry entry;
+        while ((entry = input.getNextJarEntry()) != null) {
+          byte[] bytes = IOUtils.toByteArray(input);
+          Object object;
+          try {
+            object = new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+          } catch (IOException e) {
+            // not a serialized object, so not something we need
+            continue;
+          }
+          if (object instanceof FeaturesEncoder) {
+            model.encodersEntryName = entry.getName();
+            model.encodersBytes = bytes;
+            model.featuresEncoder = (FeaturesEncoder<List<NameNumber>>) object;
+          } else if (object instanceof CRF) {
+            model.crf = (CRF) object;
+          }
+        }
+      } finally {
+        input.close();
+      }
+      if (model.featuresEncoder == null || model.crf == null) {
+        throw new IOException("expected a Mallet CRF model, found " + malletJar);
+      }
+      return model;
+    }
+
+    /**
+     * Flatten the CRF, including the hash id to feature mapping for hashed models.
+     */
+    public CRFTables createTables(int featureHashBits) {
+      CRFTables tables = CRFTables.fromCRF(this.crf);
+      if (featureHashBits > 0) {
+        FeatureHasher hasher = new FeatureHasher(featureHashBits);
+        String[] hashedFeatureNames = new String[hasher.getSize()];
+        for (int id = 0; id < hashedFeatureNames.length; ++id) {
+          List<Feature> features = Arrays.asList(hasher.feature(id));
+          hashedFeatureNames[id] = this.featuresEncoder.encodeAll(features).get(0).name;
+        }
+        tables.setHashedFeatures(featureHashBits, hashedFeatureNames);
+      }
+      return tables;
+    }
+  }
+}
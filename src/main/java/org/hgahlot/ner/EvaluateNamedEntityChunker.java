@@ -30,22 +30,31 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.HiddenFileFilter;
 import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.collection.CollectionReaderDescription;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.NameValuePair;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.cleartk.classifier.CleartkSequenceAnnotator;
 import org.cleartk.classifier.jar.DefaultSequenceDataWriterFactory;
 import org.cleartk.classifier.jar.DirectoryDataWriterFactory;
 import org.cleartk.classifier.jar.GenericJarClassifierFactory;
+import org.cleartk.classifier.jar.JarClassifierBuilder;
 import org.cleartk.classifier.jar.Train;
+import org.cleartk.classifier.mallet.MalletCRFStringOutcomeClassifierBuilder;
 import org.cleartk.classifier.mallet.MalletCRFStringOutcomeDataWriter;
 import org.cleartk.eval.AnnotationStatistics;
 import org.cleartk.eval.Evaluation_ImplBase;
@@ -59,13 +68,20 @@ import org.kohsuke.args4j.Option;
 import org.uimafit.component.ViewTextCopierAnnotator;
 import org.uimafit.factory.AggregateBuilder;
 import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.CollectionReaderFactory;
 import org.uimafit.factory.TypeSystemDescriptionFactory;
 import org.uimafit.pipeline.JCasIterable;
 import org.uimafit.pipeline.SimplePipeline;
 import org.uimafit.util.JCasUtil;
 
 import com.cbsi.ner.RunNamedEntityChunker.PrintNamedEntityMentions;
+import com.cbsi.ner.cache.CachedCasReader;
+import com.cbsi.ner.cache.PreprocessedCasCache;
+import com.cbsi.ner.classifier.ThreadedCRFTrainer;
+import com.cbsi.ner.eval.InferenceStatistics;
+import com.cbsi.ner.eval.TimedPipeline;
 import com.cbsi.ner.reader.Conll2003GoldReader;
+import com.cbsi.ner.reader.ConllDocumentIndex;
 import com.google.common.base.Function;
 
 /**
@@ -110,8 +126,68 @@ Evaluation_ImplBase<File, AnnotationStatistics<String>> {
 
 		@Option(
 				name = "--training-args",
-				usage = "specify training arguments to be passed to the learner.  For multiple values specify -ta for each - e.g. '-ta -t -ta 0'")
-		public List<String> trainingArguments = Arrays.asList("-t", "0");
+				usage = "specify training arguments to be passed to the learner.  For multiple values specify -ta for each - e.g. '-ta --iterations -ta 200'. Without --threads, the CRFs of the cross-validation folds accept only --iterations and --gaussian-variance")
+		public List<String> trainingArguments = new ArrayList<String>();
+
+		@Option(
+				name = "--feature-hash-bits",
+				usage = "Hash features into 2^bits ids instead of passing them by name (0 disables hashing)")
+		public int featureHashBits = 0;
+
+		@Option(
+				name = "--cas-cache-dir",
+				usage = "Cache the part-of-speech tagged and stemmed documents in this directory, and reuse them on later runs over the same files with the same preprocessing")
+		public File casCacheDirectory = null;
+
+		@Option(
+				name = "--data-writer",
+				usage = "The class name of the sequence data writer, which determines the learner, e.g. com.cbsi.ner.classifier.PerceptronDataWriter for an averaged perceptron")
+		public String dataWriterClassName = MalletCRFStringOutcomeDataWriter.class.getName();
+
+		@Option(
+				name = "--threads",
+				usage = "Train the CRF with its likelihood computed on this many threads, instead of with Mallet's single-threaded trainer (0 uses Mallet's trainer)")
+		public int threads = 0;
+
+		@Option(
+				name = "--iterations",
+				usage = "The maximum number of training iterations, with --threads")
+		public int iterations = ThreadedCRFTrainer.DEFAULT_ITERATIONS;
+
+		@Option(
+				name = "--tolerance",
+				usage = "The relative change in likelihood at which training has converged, with --threads")
+		public double tolerance = ThreadedCRFTrainer.DEFAULT_TOLERANCE;
+
+		@Option(
+				name = "--gaussian-variance",
+				usage = "The variance of the Gaussian prior on the CRF weights, with --threads")
+		public double gaussianVariance = ThreadedCRFTrainer.DEFAULT_GAUSSIAN_VARIANCE;
+
+		@Option(
+				name = "--folds",
+				usage = "Cross-validate on the first training file with this many folds of documents before the holdout evaluation (0 skips cross-validation)")
+		public int folds = 0;
+
+		@Option(
+				name = "--cv-threads",
+				usage = "The number of threads shared by the cross-validation folds; each fold takes --threads of them (or one)")
+		public int crossValidationThreads = Runtime.getRuntime().availableProcessors();
+
+		@Option(
+				name = "--fold-memory-mb",
+				usage = "The heap a cross-validation fold is expected to need; no more folds run at once than fit in the maximum heap")
+		public int foldMemoryMegabytes = 1024;
+
+		@Option(
+				name = "--metrics-json",
+				usage = "Also write the holdout precision, recall and F1 with the tagging throughput, latency percentiles, peak heap and model load time to this JSON file")
+		public File metricsJsonFile = null;
+
+		@Option(
+				name = "--test-threads",
+				usage = "The number of threads (each with its own tagging engine) the holdout documents of all the test files are spread over")
+		public int testThreads = Runtime.getRuntime().availableProcessors();
 	}
 
 	public static enum AnnotatorMode {
@@ -135,61 +211,193 @@ Evaluation_ImplBase<File, AnnotationStatistics<String>> {
 
 		EvaluateNamedEntityChunker evaluator = new EvaluateNamedEntityChunker(
 				options.modelsDirectory,
-				options.trainingArguments);
+				options.trainingArguments,
+				options.featureHashBits,
+				options.casCacheDirectory);
+		evaluator.setDataWriterClassName(options.dataWriterClassName);
+		if (options.threads > 0) {
+			evaluator.setCRFTrainer(new ThreadedCRFTrainer(
+					options.threads,
+					options.iterations,
+					options.tolerance,
+					options.gaussianVariance));
+		}
 
 		// Run Cross Validation
-		//    List<AnnotationStatistics<String>> foldStats = evaluator.crossValidation(trainFiles, 2);
-		//    AnnotationStatistics<String> crossValidationStats = AnnotationStatistics.addAll(foldStats);
-		//
-		//    System.err.println("Cross Validation Results:");
-		//    System.err.print(crossValidationStats);
-		//    System.err.println();
-		//    System.err.println(crossValidationStats.confusions());
-		//    System.err.println();
+		if (options.folds > 0) {
+			List<AnnotationStatistics<String>> foldStats = evaluator.crossValidateInParallel(
+					trainFiles.get(0),
+					options.folds,
+					options.crossValidationThreads,
+					options.foldMemoryMegabytes);
+			AnnotationStatistics<String> crossValidationStats = AnnotationStatistics.addAll(foldStats);
+
+			System.err.println("Cross Validation Results:");
+			System.err.print(crossValidationStats);
+			System.err.println();
+			System.err.println(crossValidationStats.confusions());
+			System.err.println();
+		}
 
 		// Run Holdout Set
 		//AnnotationStatistics<String> holdoutStats = evaluator.trainAndTest(trainFiles, testFiles);
-		AnnotationStatistics<String> holdoutStats = evaluator.test(
-				Conll2003GoldReader.getCollectionReader(testFiles.get(0).getAbsolutePath()),
-				new File(options.modelsDirectory+"/"));
+		InferenceStatistics inferenceStats = new InferenceStatistics();
+		AnnotationStatistics<String> holdoutStats = evaluator.testInParallel(
+				testFiles,
+				new File(options.modelsDirectory+"/"),
+				options.testThreads,
+				inferenceStats);
 		System.err.println("Holdout Set Results:");
 		System.err.print(holdoutStats);
 		System.err.println();
 		System.err.println(holdoutStats.confusions());
+		System.err.println();
+		System.err.print(inferenceStats);
+		if (options.metricsJsonFile != null) {
+			inferenceStats.writeJson(options.metricsJsonFile, holdoutStats);
+		}
 	}
 
 	public static final String GOLD_VIEW_NAME = "NamedEntityGoldView";
 
 	public static final String SYSTEM_VIEW_NAME = CAS.NAME_DEFAULT_SOFA;
 
+	private File baseDirectory;
+
 	private List<String> trainingArguments;
 
+	private int featureHashBits;
+
+	private File casCacheDirectory;
+
+	private ThreadedCRFTrainer crfTrainer;
+
+	private String dataWriterClassName = MalletCRFStringOutcomeDataWriter.class.getName();
+
 	public EvaluateNamedEntityChunker(File baseDirectory) {
-		super(baseDirectory);
-		this.trainingArguments = Arrays.<String> asList();
+		this(baseDirectory, Arrays.<String> asList());
 	}
 
 	public EvaluateNamedEntityChunker(File baseDirectory, List<String> trainingArguments) {
+		this(baseDirectory, trainingArguments, 0);
+	}
+
+	public EvaluateNamedEntityChunker(File baseDirectory, List<String> trainingArguments, int featureHashBits) {
+		this(baseDirectory, trainingArguments, featureHashBits, null);
+	}
+
+	/**
+	 * @param casCacheDirectory
+	 *          the directory in which to cache the preprocessed documents, or null to preprocess them
+	 *          on every run
+	 */
+	public EvaluateNamedEntityChunker(
+			File baseDirectory,
+			List<String> trainingArguments,
+			int featureHashBits,
+			File casCacheDirectory) {
 		super(baseDirectory);
+		this.baseDirectory = baseDirectory;
 		this.trainingArguments = trainingArguments;
+		this.featureHashBits = featureHashBits;
+		this.casCacheDirectory = casCacheDirectory;
+	}
+
+	/**
+	 * @param crfTrainer
+	 *          the trainer for the CRF, or null to train it with Mallet's single-threaded trainer
+	 */
+	public void setCRFTrainer(ThreadedCRFTrainer crfTrainer) {
+		this.crfTrainer = crfTrainer;
+	}
+
+	/**
+	 * @param dataWriterClassName
+	 *          the class name of the sequence data writer, which determines the learner
+	 */
+	public void setDataWriterClassName(String dataWriterClassName) {
+		this.dataWriterClassName = dataWriterClassName;
 	}
 
 	@Override
 	protected CollectionReader getCollectionReader(List<File> items) throws Exception {
-		// a reader that loads the the CONLL 2003 format train file
+		// a reader that loads the the CONLL 2003 format train file; it reads a single file, so
+		// several files are refused rather than all but the first ignored
+		if (items.size() != 1) {
+			throw new IllegalArgumentException(String.format(
+					"expected one CONLL 2003 file, found %d (use testInParallel to test on several): %s",
+					items.size(),
+					items));
+		}
 		return Conll2003GoldReader.getCollectionReader(items.get(0).getAbsolutePath());
 	}
 
+	/**
+	 * Returns a reader of the same documents as a CONLL 2003 reader, but with the gold mentions in
+	 * the gold view, or the reader itself if it already reads them there or replays cached documents.
+	 */
+	private CollectionReader getGoldViewReader(CollectionReader collectionReader) throws Exception {
+		if (collectionReader.getConfigParameterValue(CachedCasReader.PARAM_CACHE_FILE) != null
+				|| collectionReader.getConfigParameterValue(Conll2003GoldReader.PARAM_GOLD_VIEW_NAME) != null) {
+			return collectionReader;
+		}
+		List<Object> parameters = new ArrayList<Object>();
+		for (NameValuePair setting : collectionReader.getMetaData().getConfigurationParameterSettings().getParameterSettings()) {
+			parameters.add(setting.getName());
+			parameters.add(setting.getValue());
+		}
+		parameters.add(Conll2003GoldReader.PARAM_GOLD_VIEW_NAME);
+		parameters.add(GOLD_VIEW_NAME);
+		collectionReader.close();
+		return CollectionReaderFactory.createCollectionReader(
+				Conll2003GoldReader.class,
+				parameters.toArray());
+	}
+
+	/**
+	 * Creates the cache of the preprocessed documents of a CONLL 2003 reader, or returns null for a
+	 * reader that already replays preprocessed documents.
+	 */
+	private PreprocessedCasCache createCache(CollectionReader collectionReader) throws Exception {
+		if (collectionReader.getConfigParameterValue(CachedCasReader.PARAM_CACHE_FILE) != null) {
+			return null;
+		}
+		String dataFileName = (String) collectionReader.getConfigParameterValue(
+				Conll2003GoldReader.PARAM_DATA_FILE_NAME);
+		return new PreprocessedCasCache(
+				this.casCacheDirectory,
+				new File(dataFileName),
+				collectionReader,
+				NamedEntityChunker.getPreprocessingDescription());
+	}
+
 	@Override
 	public void train(CollectionReader collectionReader, File outputDirectory) throws Exception {
+		this.writeTrainingData(collectionReader, outputDirectory);
+		this.trainModel(outputDirectory);
+	}
+
+	/**
+	 * Runs the NER training pipeline, writing the training data for the learner to the directory.
+	 */
+	protected void writeTrainingData(CollectionReader collectionReader, File outputDirectory)
+			throws Exception {
+
+		// the cached documents, if this file has been preprocessed before
+		PreprocessedCasCache cache = this.createCache(collectionReader);
+		if (cache != null && cache.isHit()) {
+			collectionReader = cache.createCachedReader();
+		}
 
 		// Create and run the NER training pipeline
 		AggregateBuilder builder = new AggregateBuilder();
-		// an annotator that adds part-of-speech tags (so we can use them for features)
-		builder.add(PosTaggerAnnotator.getDescription());
-		builder.add(DefaultSnowballStemmer.getDescription("English"));
+		// annotators that add part-of-speech tags and stems (so we can use them for features),
+		// unless they were already added to the cached documents
+		if (cache != null) {
+			cache.addPreprocessing(builder);
+		}
 
-		// our NamedEntityChunker annotator, configured to write Mallet CRF training data
+		// our NamedEntityChunker annotator, configured to write training data for the learner
 		builder.add(AnalysisEngineFactory.createPrimitiveDescription(
 				NamedEntityChunker.class,
 				CleartkSequenceAnnotator.PARAM_IS_TRAINING,
@@ -197,14 +405,173 @@ Evaluation_ImplBase<File, AnnotationStatistics<String>> {
 				DirectoryDataWriterFactory.PARAM_OUTPUT_DIRECTORY,
 				outputDirectory,
 				DefaultSequenceDataWriterFactory.PARAM_DATA_WRITER_CLASS_NAME,
-				MalletCRFStringOutcomeDataWriter.class));
+				this.dataWriterClassName,
+				NamedEntityChunker.PARAM_FEATURE_HASH_BITS,
+				this.featureHashBits));
 
 		// run the pipeline over the training corpus
 		SimplePipeline.runPipeline(collectionReader, builder.createAggregateDescription());
+	}
 
-		// train a Mallet CRF model on the training data
-		Train.main(outputDirectory);
+	/**
+	 * Trains a model on the training data in the directory.
+	 */
+	protected void trainModel(File outputDirectory) throws Exception {
+		if (this.crfTrainer != null) {
+			this.crfTrainer.train(outputDirectory);
+		} else {
+			Train.main(
+					outputDirectory,
+					this.trainingArguments.toArray(new String[this.trainingArguments.size()]));
+		}
+	}
 
+	/**
+	 * Cross-validates on the documents of a CONLL 2003 file: the documents are split into consecutive
+	 * folds, and each fold is tested with a model trained on all the other folds. The documents are
+	 * preprocessed once, into the CAS cache (under the base directory if no cache directory was
+	 * given), and every fold replays them from there: the training documents with the gold mentions
+	 * in the default view, and the test documents, cached separately, with them in the gold view.
+	 * 
+	 * Folds are trained and tested concurrently, as many at once as fit in the thread budget (each
+	 * fold takes as many threads as the CRF trainer has, or one) and in the maximum heap. The wall
+	 * clock time of each fold and of the whole cross-validation is printed.
+	 * 
+	 * @return the statistics of each fold, in fold order
+	 */
+	public List<AnnotationStatistics<String>> crossValidateInParallel(
+			File dataFile,
+			int numFolds,
+			int threads,
+			int foldMemoryMegabytes) throws Exception {
+		long start = System.nanoTime();
+
+		// preprocess the documents once for all the folds
+		CollectionReaderDescription reader = Conll2003GoldReader.getDescription(dataFile.getAbsolutePath());
+		AnalysisEngineDescription preprocessing = NamedEntityChunker.getPreprocessingDescription();
+		File cacheDirectory = this.casCacheDirectory != null
+				? this.casCacheDirectory
+				: new File(this.baseDirectory, "cas-cache");
+		PreprocessedCasCache cache = new PreprocessedCasCache(cacheDirectory, dataFile, reader, preprocessing);
+		if (!cache.isHit()) {
+			AggregateBuilder builder = new AggregateBuilder();
+			cache.addPreprocessing(builder);
+			SimplePipeline.runPipeline(reader, builder.createAggregateDescription());
+			cache = new PreprocessedCasCache(cacheDirectory, dataFile, reader, preprocessing);
+		}
+		CollectionReaderDescription goldViewReader = Conll2003GoldReader.getGoldViewDescription(
+				dataFile.getAbsolutePath(),
+				GOLD_VIEW_NAME);
+		PreprocessedCasCache goldViewCache = new PreprocessedCasCache(
+				cacheDirectory,
+				dataFile,
+				goldViewReader,
+				preprocessing);
+		if (!goldViewCache.isHit()) {
+			AggregateBuilder builder = new AggregateBuilder();
+			goldViewCache.addPreprocessing(builder);
+			SimplePipeline.runPipeline(goldViewReader, builder.createAggregateDescription());
+			goldViewCache = new PreprocessedCasCache(cacheDirectory, dataFile, goldViewReader, preprocessing);
+		}
+		int numDocuments = ConllDocumentIndex.load(dataFile).size();
+
+		// as many folds at once as the threads and the heap allow
+		int threadsPerFold = this.crfTrainer != null ? this.crfTrainer.getThreads() : 1;
+		long maxMemoryMegabytes = Runtime.getRuntime().maxMemory() >> 20;
+		int concurrentFolds = (int) Math.min(
+				Math.max(1, threads / threadsPerFold),
+				Math.max(1, maxMemoryMegabytes / foldMemoryMegabytes));
+		concurrentFolds = Math.min(concurrentFolds, numFolds);
+
+		ExecutorService executor = Executors.newFixedThreadPool(concurrentFolds);
+		List<Future<AnnotationStatistics<String>>> results = new ArrayList<Future<AnnotationStatistics<String>>>();
+		try {
+			for (int fold = 0; fold < numFolds; ++fold) {
+				int begin = (int) ((long) numDocuments * fold / numFolds);
+				int end = (int) ((long) numDocuments * (fold + 1) / numFolds);
+				results.add(executor.submit(new Fold(
+						fold,
+						cache.getCachedReaderDescription(begin, end, true),
+						goldViewCache.getCachedReaderDescription(begin, end, false),
+						new File(this.baseDirectory, "fold-" + fold))));
+			}
+			List<AnnotationStatistics<String>> foldStats = new ArrayList<AnnotationStatistics<String>>();
+			for (Future<AnnotationStatistics<String>> result : results) {
+				foldStats.add(result.get());
+			}
+			System.err.printf(
+					"cross-validation: %d folds of %d documents, %d at once, in %.1f s\n",
+					numFolds,
+					numDocuments,
+					concurrentFolds,
+					(System.nanoTime() - start) / 1e9);
+			return foldStats;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Trains a model on the training documents of a fold, in its own directory, and tests it on the
+	 * fold's test documents.
+	 */
+	private class Fold implements Callable<AnnotationStatistics<String>> {
+
+		private int index;
+
+		private CollectionReaderDescription trainReader;
+
+		private CollectionReaderDescription testReader;
+
+		private File directory;
+
+		public Fold(
+				int index,
+				CollectionReaderDescription trainReader,
+				CollectionReaderDescription testReader,
+				File directory) {
+			this.index = index;
+			this.trainReader = trainReader;
+			this.testReader = testReader;
+			this.directory = directory;
+		}
+
+		public AnnotationStatistics<String> call() throws Exception {
+			long start = System.nanoTime();
+			if (this.directory.exists()) {
+				FileUtils.deleteDirectory(this.directory);
+			}
+			writeTrainingData(CollectionReaderFactory.createCollectionReader(this.trainReader), this.directory);
+
+			// Mallet's own trainer keeps its options in static fields, so it cannot train several
+			// folds at once; its CRF is trained by a (single-threaded) ThreadedCRFTrainer instead,
+			// configured by the same training arguments
+			JarClassifierBuilder<?> builder = JarClassifierBuilder.fromTrainingDirectory(this.directory);
+			if (builder.getClass().equals(MalletCRFStringOutcomeClassifierBuilder.class)) {
+				ThreadedCRFTrainer foldTrainer = crfTrainer != null
+						? crfTrainer
+						: ThreadedCRFTrainer.fromTrainingArguments(1, trainingArguments);
+				System.err.printf("fold %d: training the CRF with %s\n", this.index, foldTrainer);
+				foldTrainer.train(this.directory);
+			} else {
+				System.err.printf("fold %d: training with arguments %s\n", this.index, trainingArguments);
+				trainModel(this.directory);
+			}
+			long trainTime = System.nanoTime() - start;
+
+			AnnotationStatistics<String> stats = test(
+					CollectionReaderFactory.createCollectionReader(this.testReader),
+					this.directory);
+			long time = System.nanoTime() - start;
+			System.err.printf(
+					"fold %d: trained in %.1f s, tested in %.1f s, %.1f s in all, F1 %.4f\n",
+					this.index,
+					trainTime / 1e9,
+					(time - trainTime) / 1e9,
+					time / 1e9,
+					stats.f1());
+			return stats;
+		}
 	}
 
 	/**
@@ -291,59 +658,286 @@ Evaluation_ImplBase<File, AnnotationStatistics<String>> {
 	@Override
 	protected AnnotationStatistics<String> test(CollectionReader collectionReader, File directory)
 			throws Exception {
+		return this.test(collectionReader, directory, new InferenceStatistics());
+	}
+
+	/**
+	 * Like {@link #test(CollectionReader, File)}, but also records in inferenceStats how long the
+	 * model took to load and to tag each document (in total and per annotator, including the
+	 * part-of-speech tagger and the stemmer unless their results come from the CAS cache), how many
+	 * tokens it tagged, and the peak heap. The reading of the documents is not timed.
+	 * 
+	 * A CONLL 2003 reader is replaced by one that reads the gold mentions into the gold view, so
+	 * that the system mentions are tagged beside them; a reader of cached documents must replay
+	 * documents that were read that way.
+	 */
+	public AnnotationStatistics<String> test(
+			CollectionReader collectionReader,
+			File directory,
+			InferenceStatistics inferenceStats) throws Exception {
 		AnnotationStatistics<String> stats = new AnnotationStatistics<String>();
+		collectionReader = this.getGoldViewReader(collectionReader);
 		
-		TypeSystemDescription tsd = TypeSystemDescriptionFactory.createTypeSystemDescription();
+		//the cached documents, if this file has been preprocessed before
+		PreprocessedCasCache cache = this.createCache(collectionReader);
+		if (cache != null && cache.isHit()) {
+			collectionReader = cache.createCachedReader();
+		}
 		
-		//create an AggregateBuilder (and then an AnalysisEngine) to identify
-		//system NamedEntityMentions
-		AggregateBuilder systemTaggingBuilder = new AggregateBuilder();
-		//an annotator that adds part-of-speech tags (so we can use them for features)
-		systemTaggingBuilder.add(PosTaggerAnnotator.getDescription());
-		//an annotator that adds stem of token (so we can use it for features)
-		systemTaggingBuilder.add(DefaultSnowballStemmer.getDescription("English"));
-		systemTaggingBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(
+		//annotators that add part-of-speech tags and stems (so we can use them for features),
+		//unless they were already added to the cached documents, followed by the writer that
+		//caches their results, gold view included
+		TimedPipeline preprocessingPipeline = null;
+		AnalysisEngine cacheWriter = null;
+		if (cache != null && !cache.isHit()) {
+			preprocessingPipeline = new TimedPipeline(NamedEntityChunker.getPreprocessingDescriptions());
+			AnalysisEngineDescription writer = cache.getWriterDescription();
+			if (writer != null) {
+				cacheWriter = AnalysisEngineFactory.createPrimitive(writer);
+			}
+		}
+		
+		InferenceStatistics.resetPeakHeap();
+		TimedPipeline systemTaggingPipeline = this.createTaggingPipeline(directory, inferenceStats);
+		this.tagAndScore(
+				collectionReader,
+				preprocessingPipeline,
+				cacheWriter,
+				systemTaggingPipeline,
+				stats,
+				inferenceStats);
+		
+		//only a complete pass over the documents is saved to the cache
+		if (preprocessingPipeline != null) {
+			preprocessingPipeline.collectionProcessComplete();
+			preprocessingPipeline.destroy();
+		}
+		if (cacheWriter != null) {
+			cacheWriter.collectionProcessComplete();
+			cacheWriter.destroy();
+		}
+		systemTaggingPipeline.collectionProcessComplete();
+		systemTaggingPipeline.destroy();
+		inferenceStats.updatePeakHeap();
+
+		return stats;
+	}
+
+	/**
+	 * Tests the model in the directory on every document of the CONLL 2003 files, spread over a pool
+	 * of workers. Each worker has its own tagging engine and its own statistics, and takes a
+	 * consecutive run of (nearly) the same number of documents from every file. The statistics of
+	 * the workers are merged at the end; since they are only counts, they are the same as those of a
+	 * serial {@link #test(CollectionReader, File)} of each file, added together.
+	 * 
+	 * The gold mentions are read into the gold view, so the system mentions are tagged beside them
+	 * rather than in their place. If there is a CAS cache, each file that is not yet in it (read that
+	 * way) is first preprocessed and cached in a single pass, and then every file is replayed from
+	 * the cache, so later tests of the same files skip the preprocessing. Without a cache, the
+	 * workers preprocess their own shards of the files. The wall clock time of the whole test,
+	 * including any caching pass, is printed.
+	 * 
+	 * @param inferenceStats
+	 *          receives the merged inference statistics of the workers; since each worker loads the
+	 *          model, its load time is the total over the workers
+	 */
+	public AnnotationStatistics<String> testInParallel(
+			List<File> testFiles,
+			File directory,
+			int threads,
+			InferenceStatistics inferenceStats) throws Exception {
+		long start = System.nanoTime();
+		AnalysisEngineDescription preprocessing = NamedEntityChunker.getPreprocessingDescription();
+
+		// each worker's share of each file: from the cache, after caching the file if it is not there
+		// yet, or else (without a cache) a shard of the file itself, to be preprocessed
+		List<List<CollectionReaderDescription>> workerReaders = new ArrayList<List<CollectionReaderDescription>>();
+		List<List<Boolean>> workerPreprocessing = new ArrayList<List<Boolean>>();
+		for (int worker = 0; worker < threads; ++worker) {
+			workerReaders.add(new ArrayList<CollectionReaderDescription>());
+			workerPreprocessing.add(new ArrayList<Boolean>());
+		}
+		for (File testFile : testFiles) {
+			CollectionReaderDescription reader = Conll2003GoldReader.getGoldViewDescription(
+					testFile.getAbsolutePath(),
+					GOLD_VIEW_NAME);
+			PreprocessedCasCache cache = new PreprocessedCasCache(
+					this.casCacheDirectory,
+					testFile,
+					reader,
+					preprocessing);
+			if (!cache.isHit() && this.casCacheDirectory != null) {
+				AggregateBuilder builder = new AggregateBuilder();
+				cache.addPreprocessing(builder);
+				SimplePipeline.runPipeline(reader, builder.createAggregateDescription());
+				cache = new PreprocessedCasCache(this.casCacheDirectory, testFile, reader, preprocessing);
+			}
+			int numDocuments = cache.isHit() ? ConllDocumentIndex.load(testFile).size() : 0;
+			for (int worker = 0; worker < threads; ++worker) {
+				if (cache.isHit()) {
+					int begin = (int) ((long) numDocuments * worker / threads);
+					int end = (int) ((long) numDocuments * (worker + 1) / threads);
+					workerReaders.get(worker).add(cache.getCachedReaderDescription(begin, end, false));
+					workerPreprocessing.get(worker).add(false);
+				} else {
+					workerReaders.get(worker).add(Conll2003GoldReader.getShardDescription(
+							testFile.getAbsolutePath(),
+							false,
+							worker,
+							threads,
+							GOLD_VIEW_NAME));
+					workerPreprocessing.get(worker).add(true);
+				}
+			}
+		}
+
+		InferenceStatistics.resetPeakHeap();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<TestWorker> workers = new ArrayList<TestWorker>();
+		List<Future<AnnotationStatistics<String>>> results = new ArrayList<Future<AnnotationStatistics<String>>>();
+		try {
+			for (int worker = 0; worker < threads; ++worker) {
+				TestWorker testWorker = new TestWorker(
+						directory,
+						workerReaders.get(worker),
+						workerPreprocessing.get(worker));
+				workers.add(testWorker);
+				results.add(executor.submit(testWorker));
+			}
+			List<AnnotationStatistics<String>> workerStats = new ArrayList<AnnotationStatistics<String>>();
+			for (Future<AnnotationStatistics<String>> result : results) {
+				workerStats.add(result.get());
+			}
+			for (TestWorker testWorker : workers) {
+				inferenceStats.addAll(testWorker.inferenceStats);
+			}
+			inferenceStats.updatePeakHeap();
+			System.err.printf(
+					"holdout: %d files on %d threads in %.1f s\n",
+					testFiles.size(),
+					threads,
+					(System.nanoTime() - start) / 1e9);
+			return AnnotationStatistics.addAll(workerStats);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tags and scores a worker's share of the test documents with the worker's own tagging engine.
+	 */
+	private class TestWorker implements Callable<AnnotationStatistics<String>> {
+
+		private File directory;
+
+		private List<CollectionReaderDescription> readers;
+
+		private List<Boolean> needsPreprocessing;
+
+		private InferenceStatistics inferenceStats;
+
+		public TestWorker(
+				File directory,
+				List<CollectionReaderDescription> readers,
+				List<Boolean> needsPreprocessing) {
+			this.directory = directory;
+			this.readers = readers;
+			this.needsPreprocessing = needsPreprocessing;
+			this.inferenceStats = new InferenceStatistics();
+		}
+
+		public AnnotationStatistics<String> call() throws Exception {
+			AnnotationStatistics<String> stats = new AnnotationStatistics<String>();
+			TimedPipeline preprocessingPipeline = null;
+			if (this.needsPreprocessing.contains(true)) {
+				preprocessingPipeline = new TimedPipeline(NamedEntityChunker.getPreprocessingDescriptions());
+			}
+			TimedPipeline systemTaggingPipeline = createTaggingPipeline(this.directory, this.inferenceStats);
+			for (int i = 0; i < this.readers.size(); ++i) {
+				tagAndScore(
+						CollectionReaderFactory.createCollectionReader(this.readers.get(i)),
+						this.needsPreprocessing.get(i) ? preprocessingPipeline : null,
+						null,
+						systemTaggingPipeline,
+						stats,
+						this.inferenceStats);
+			}
+			if (preprocessingPipeline != null) {
+				preprocessingPipeline.destroy();
+			}
+			systemTaggingPipeline.collectionProcessComplete();
+			systemTaggingPipeline.destroy();
+			return stats;
+		}
+	}
+
+	/**
+	 * Creates the pipeline that tags the system NamedEntityMentions with the model in the directory,
+	 * recording the time taken to load the model.
+	 */
+	private TimedPipeline createTaggingPipeline(File directory, InferenceStatistics inferenceStats)
+			throws ResourceInitializationException {
+		//the NamedEntityChunker that identifies system NamedEntityMentions
+		AnalysisEngineDescription chunker = AnalysisEngineFactory.createPrimitiveDescription(
 				NamedEntityChunker.class,
 				CleartkSequenceAnnotator.PARAM_IS_TRAINING,
 				false,
 				GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH,
-				new File(directory, "model.jar")));
-		AnalysisEngine systemTaggingEngine = systemTaggingBuilder.createAggregate();
+				new File(directory, "model.jar"),
+				NamedEntityChunker.PARAM_FEATURE_HASH_BITS,
+				this.featureHashBits);
+		long loadStart = System.nanoTime();
+		TimedPipeline systemTaggingPipeline = new TimedPipeline(Arrays.asList(chunker));
+		inferenceStats.addModelLoadTime(System.nanoTime() - loadStart);
+		return systemTaggingPipeline;
+	}
+
+	/**
+	 * Runs the tagging pipeline over the documents of the reader (preprocessing them first, and
+	 * caching the results, if a preprocessing pipeline and a cache writer are given) and adds the
+	 * comparison of its NamedEntityMentions with the gold ones to stats. The time of each document
+	 * is that of the preprocessing and tagging annotators that ran on it.
+	 */
+	private void tagAndScore(
+			CollectionReader collectionReader,
+			TimedPipeline preprocessingPipeline,
+			AnalysisEngine cacheWriter,
+			TimedPipeline systemTaggingPipeline,
+			AnnotationStatistics<String> stats,
+			InferenceStatistics inferenceStats) throws Exception {
+		TypeSystemDescription tsd = TypeSystemDescriptionFactory.createTypeSystemDescription();
 
 		Function<NamedEntityMention, ?> getSpan = AnnotationStatistics.annotationToSpan();
 		Function<NamedEntityMention, String> getCategory = AnnotationStatistics.annotationToFeatureValue("mentionType");
 		
 		//loop to run the collection reader to read in gold NamedEntityMention 
-		//annotations (apart from other annotations) and then run the systemTaggingEngine
+		//annotations (apart from other annotations) and then run the systemTaggingPipeline
 		//to identify NamedEntityMentions using our NamedEntityChunker
 		for (JCas jCas : new JCasIterable(collectionReader, tsd)) {
-			//store gold NamedEntityMention annotations
-			List<NamedEntityMention> goldNem = new ArrayList<NamedEntityMention>(JCasUtil.select(jCas, NamedEntityMention.class));
-			
-			//remove the gold annotations from the jCas so that 
-			//the NamedEntityChunker can be run to populate system
-			//NamedEntityAnnotations in the same jCas
-			for(NamedEntityMention nm: goldNem){
-				try {
-					nm.removeFromIndexes(jCas);
-				} catch (Exception ex){
-					System.out.println("Exception in named entity removal from jCas");
-					continue;
-				}
+			long time = 0;
+			if (preprocessingPipeline != null) {
+				time += preprocessingPipeline.process(jCas, inferenceStats);
+			}
+			if (cacheWriter != null) {
+				cacheWriter.process(jCas);
 			}
 			
-			//now run the AnalysisEngine for named entity chunking to 
-			//populate NamedEntityMentions in the same jCas
-			SimplePipeline.runPipeline(jCas, systemTaggingEngine);
+			//the gold NamedEntityMention annotations are in the gold view, so the
+			//NamedEntityChunker can populate system NamedEntityMentions in the system view
+			Collection<NamedEntityMention> goldNem = JCasUtil.select(
+					jCas.getView(GOLD_VIEW_NAME),
+					NamedEntityMention.class);
 			
-			//store system identfied NamedEntityMentions
-			List<NamedEntityMention> systemNem = new ArrayList<NamedEntityMention>(JCasUtil.select(jCas, NamedEntityMention.class));
+			//now run the NamedEntityChunker to populate NamedEntityMentions in
+			//the system view, timing it along with the preprocessing
+			time += systemTaggingPipeline.process(jCas, inferenceStats);
+			int tokens = JCasUtil.select(jCas, org.cleartk.token.type.Token.class).size();
+			inferenceStats.addDocument(tokens, time);
 			
-			//add the stats obtained from current jCas to a global 
-			//AnnotationStatistics object
+			//compare the gold NamedEntityMentions with the system ones, straight from the
+			//indexes, and add the result to the global AnnotationStatistics object
+			Collection<NamedEntityMention> systemNem = JCasUtil.select(jCas, NamedEntityMention.class);
 			stats.add(goldNem, systemNem, getSpan, getCategory);
 		}
-
-		return stats;
 	}
-}
\ No newline at end of file
+}
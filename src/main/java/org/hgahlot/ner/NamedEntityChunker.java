@@ -23,17 +23,29 @@
  */
 package com.cbsi.ner;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
 import org.cleartk.classifier.CleartkSequenceAnnotator;
 import org.cleartk.classifier.Feature;
 import org.cleartk.classifier.Instances;
+import org.cleartk.classifier.SequenceClassifier;
 import org.cleartk.classifier.chunking.BIOChunking;
+import org.cleartk.classifier.jar.GenericJarClassifierFactory;
 import org.cleartk.classifier.feature.extractor.CleartkExtractor;
 import org.cleartk.classifier.feature.extractor.CleartkExtractor.Following;
 import org.cleartk.classifier.feature.extractor.CleartkExtractor.Preceding;
@@ -50,10 +62,30 @@ import org.cleartk.classifier.feature.function.FeatureFunctionExtractor;
 import org.cleartk.classifier.feature.function.LowerCaseFeatureFunction;
 import org.cleartk.classifier.feature.function.NumericTypeFeatureFunction;
 import org.cleartk.ne.type.NamedEntityMention;
+import org.cleartk.syntax.opennlp.PosTaggerAnnotator;
+import org.cleartk.token.stem.snowball.DefaultSnowballStemmer;
 import org.cleartk.token.type.Sentence;
 import org.cleartk.token.type.Token;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
 import org.uimafit.util.JCasUtil;
 
+import com.cbsi.ner.classifier.ClassifierRegistry;
+import com.cbsi.ner.classifier.HashedSequenceClassifier;
+import com.cbsi.ner.classifier.MappedCRFModel;
+import com.cbsi.ner.classifier.MappedSequenceClassifierFactory;
+import com.cbsi.ner.classifier.ReloadingModelRegistry;
+import com.cbsi.ner.classifier.ReloadingSequenceClassifierFactory;
+import com.cbsi.ner.classifier.SharedSequenceClassifierFactory;
+import com.cbsi.ner.feature.CachedTextFeatureExtractor;
+import com.cbsi.ner.feature.FeatureHasher;
+import com.cbsi.ner.feature.HashedFeatureExtractor;
+import com.cbsi.ner.feature.HashedFeatureSequence;
+import com.cbsi.ner.feature.TokenFeatureTable;
+import com.cbsi.ner.feature.TokenTextFeatureCache;
+
 /**
  * This is the most important class in the named entity chunking example -- it demonstrates how to
  * write a ClearTK annotator that creates NamedEntityMention annotations by classifying Token
@@ -67,44 +99,373 @@ import org.uimafit.util.JCasUtil;
  */
 public class NamedEntityChunker extends CleartkSequenceAnnotator<String> {
 
+  public static final String PARAM_FEATURE_HASH_BITS = ConfigurationParameterFactory.createConfigurationParameterName(
+      NamedEntityChunker.class,
+      "featureHashBits");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "If greater than 0, features are hashed into 2^featureHashBits integer ids instead "
+          + "of being passed to the classifier by name. A model trained with hashed features must be "
+          + "run with the same number of bits.",
+      defaultValue = "0")
+  private int featureHashBits;
+
+  public static final String PARAM_DECODING_THREADS = ConfigurationParameterFactory.createConfigurationParameterName(
+      NamedEntityChunker.class,
+      "decodingThreads");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "The number of threads used to classify the sentences of large documents. The "
+          + "features are still extracted on the calling thread. Only classifiers that are safe to "
+          + "call concurrently (compiled CRF and perceptron models) are run in parallel; any other "
+          + "model decodes serially.",
+      defaultValue = "1")
+  private int decodingThreads;
+
+  public static final String PARAM_PARALLEL_DECODING_THRESHOLD = ConfigurationParameterFactory.createConfigurationParameterName(
+      NamedEntityChunker.class,
+      "parallelDecodingThreshold");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "The number of sentences a document must have for its sentences to be classified "
+          + "in parallel (when decodingThreads is greater than 1).",
+      defaultValue = "32")
+  private int parallelDecodingThreshold;
+
+  public static final String PARAM_BOUND_CONTEXT_BY_SENTENCE = ConfigurationParameterFactory.createConfigurationParameterName(
+      NamedEntityChunker.class,
+      "boundContextBySentence");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "If true, the preceding and following token features stop at the sentence "
+          + "boundaries, instead of reaching into the neighbouring sentences. This is needed when "
+          + "the sentences of a CAS are unrelated inputs.",
+      defaultValue = "false")
+  private boolean boundContextBySentence;
+
+  public static final String PARAM_TEXT_FEATURE_CACHE_SIZE = ConfigurationParameterFactory.createConfigurationParameterName(
+      NamedEntityChunker.class,
+      "textFeatureCacheSize");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "If greater than 0, the features that depend only on a token's text are kept in a "
+          + "process-wide LRU cache of this many texts, shared by all NamedEntityChunkers.",
+      defaultValue = "0")
+  private int textFeatureCacheSize;
+
+  public static final String PARAM_MAX_CHARACTER_NGRAM_LENGTH = ConfigurationParameterFactory.createConfigurationParameterName(
+      NamedEntityChunker.class,
+      "maxCharacterNGramLength");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "The longest character prefix and suffix features of a token: prefixes and "
+          + "suffixes of every length from 2 up to this one are extracted (none below 2). A model "
+          + "must be run with the feature configuration it was trained with.",
+      defaultValue = "3")
+  private int maxCharacterNGramLength;
+
+  public static final String PARAM_CONTEXT_WINDOW_SIZE = ConfigurationParameterFactory.createConfigurationParameterName(
+      NamedEntityChunker.class,
+      "contextWindowSize");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "The number of preceding and of following tokens whose features are added to each "
+          + "token's (0 for none).",
+      defaultValue = "3")
+  private int contextWindowSize;
+
+  public static final String PARAM_USE_PART_OF_SPEECH = ConfigurationParameterFactory.createConfigurationParameterName(
+      NamedEntityChunker.class,
+      "usePartOfSpeech");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "If true, the part-of-speech tag of a token is one of its features.",
+      defaultValue = "true")
+  private boolean usePartOfSpeech;
+
+  public static final String PARAM_USE_STEM = ConfigurationParameterFactory.createConfigurationParameterName(
+      NamedEntityChunker.class,
+      "useStem");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "If true, the stem of a token is one of its features.",
+      defaultValue = "true")
+  private boolean useStem;
+
+  @ConfigurationParameter(
+      name = ReloadingSequenceClassifierFactory.PARAM_MODEL_DIRECTORY,
+      mandatory = false,
+      description = "If set, the model is taken from the ReloadingModelRegistry of this directory, and a "
+          + "new model.jar written there is picked up at the start of the next document.")
+  private String reloadingModelDirectory;
+
   private SimpleFeatureExtractor extractor;
   
   private CleartkExtractor contextExtractor;
 
+  private TokenFeatureTable tokenFeatureTable;
+
+  private HashedFeatureExtractor hashedExtractor;
+
+  private HashedFeatureSequence hashedFeatures;
+
+  private ForkJoinPool decodingPool;
+
+  private ReloadingModelRegistry modelRegistry;
+
+  private TokenTextFeatureCache textFeatureCache;
+
   private BIOChunking<Token, NamedEntityMention> chunking;
 
-  @Override
-  public void initialize(UimaContext context) throws ResourceInitializationException {
-    super.initialize(context);
+  /**
+   * Creates a description of a NamedEntityChunker that classifies with the model in the given jar.
+   * 
+   * @param shareModel
+   *          if true, the classifier is taken from the process-wide {@link ClassifierRegistry}, so
+   *          that all chunkers using the same jar share one copy of the model, if it is one that
+   *          can be shared (see {@link ClassifierRegistry#isShareable(SequenceClassifier)})
+   * @param configurationData
+   *          any further parameter name/value pairs for the chunker
+   */
+  public static AnalysisEngineDescription getClassifierDescription(
+      File modelJar,
+      boolean shareModel,
+      Object... configurationData) throws ResourceInitializationException {
+    List<Object> parameters = new ArrayList<Object>();
+    parameters.add(CleartkSequenceAnnotator.PARAM_IS_TRAINING);
+    parameters.add(false);
+    parameters.add(GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH);
+    parameters.add(modelJar);
+    if (shareModel) {
+      parameters.add(CleartkSequenceAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME);
+      parameters.add(SharedSequenceClassifierFactory.class.getName());
+    }
+    parameters.addAll(Arrays.asList(configurationData));
+    return AnalysisEngineFactory.createPrimitiveDescription(
+        NamedEntityChunker.class,
+        parameters.toArray());
+  }
+
+  /**
+   * Creates a description of a NamedEntityChunker that classifies with a memory-mapped
+   * {@link MappedCRFModel} file, as written by {@link CompileCRFModel}.
+   * 
+   * @param configurationData
+   *          any further parameter name/value pairs for the chunker
+   */
+  public static AnalysisEngineDescription getMappedClassifierDescription(
+      File mappedModel,
+      Object... configurationData) throws ResourceInitializationException {
+    List<Object> parameters = new ArrayList<Object>();
+    parameters.add(CleartkSequenceAnnotator.PARAM_IS_TRAINING);
+    parameters.add(false);
+    parameters.add(CleartkSequenceAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME);
+    parameters.add(MappedSequenceClassifierFactory.class.getName());
+    parameters.add(MappedSequenceClassifierFactory.PARAM_MAPPED_MODEL_PATH);
+    parameters.add(mappedModel.getPath());
+    parameters.addAll(Arrays.asList(configurationData));
+    return AnalysisEngineFactory.createPrimitiveDescription(
+        NamedEntityChunker.class,
+        parameters.toArray());
+  }
+
+  /**
+   * Creates a description of a NamedEntityChunker that classifies with the model.jar of a
+   * directory, and switches to a new model.jar as soon as one is written there.
+   * 
+   * @param configurationData
+   *          any further parameter name/value pairs for the chunker
+   */
+  public static AnalysisEngineDescription getReloadingClassifierDescription(
+      File modelDirectory,
+      Object... configurationData) throws ResourceInitializationException {
+    List<Object> parameters = new ArrayList<Object>();
+    parameters.add(CleartkSequenceAnnotator.PARAM_IS_TRAINING);
+    parameters.add(false);
+    parameters.add(CleartkSequenceAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME);
+    parameters.add(ReloadingSequenceClassifierFactory.class.getName());
+    parameters.add(ReloadingSequenceClassifierFactory.PARAM_MODEL_DIRECTORY);
+    parameters.add(modelDirectory.getPath());
+    parameters.addAll(Arrays.asList(configurationData));
+    return AnalysisEngineFactory.createPrimitiveDescription(
+        NamedEntityChunker.class,
+        parameters.toArray());
+  }
+
+  /**
+   * Creates a description of the annotators that add what the features need on top of the tokens
+   * and sentences of the reader: part-of-speech tags and stems.
+   */
+  public static AnalysisEngineDescription getPreprocessingDescription()
+      throws ResourceInitializationException {
+    AggregateBuilder builder = new AggregateBuilder();
+    for (AnalysisEngineDescription description : getPreprocessingDescriptions()) {
+      builder.add(description);
+    }
+    return builder.createAggregateDescription();
+  }
+
+  /**
+   * @return the annotators of {@link #getPreprocessingDescription()}, in the order they run
+   */
+  public static List<AnalysisEngineDescription> getPreprocessingDescriptions()
+      throws ResourceInitializationException {
+    return Arrays.asList(
+        PosTaggerAnnotator.getDescription(),
+        DefaultSnowballStemmer.getDescription("English"));
+  }
+
+  /**
+   * Creates the extractor for the features of a single token: text, character ngrams, char pattern
+   * (uppercase, digits, etc.), part-of-speech and stem.
+   */
+  public static SimpleFeatureExtractor createTokenFeatureExtractor() {
+    return createTokenFeatureExtractor(null);
+  }
+
+  /**
+   * Creates the extractor for the features of a single token, looking up the features that depend
+   * only on the token's text in the given cache (if it is not null).
+   */
+  public static SimpleFeatureExtractor createTokenFeatureExtractor(TokenTextFeatureCache cache) {
+    return createTokenFeatureExtractor(cache, 3, true, true);
+  }
+
+  /**
+   * Creates the extractor for the features of a single token, with suffixes and prefixes of lengths
+   * 2 up to <code>maxNGramLength</code>, and with or without the part-of-speech and stem.
+   */
+  public static SimpleFeatureExtractor createTokenFeatureExtractor(
+      TokenTextFeatureCache cache,
+      int maxNGramLength,
+      boolean usePartOfSpeech,
+      boolean useStem) {
     // alias for NGram feature parameters - suffix
     CharacterNGramFeatureFunction.Orientation fromRight = CharacterNGramFeatureFunction.Orientation.RIGHT_TO_LEFT;
     // alias for NGram feature parameters - prefix
     CharacterNGramFeatureFunction.Orientation fromLeft = CharacterNGramFeatureFunction.Orientation.LEFT_TO_RIGHT;
-    
+
+    // all the suffixes, then all the prefixes, shortest first
+    List<CharacterNGramFeatureFunction> nGrams = new ArrayList<CharacterNGramFeatureFunction>();
+    for (CharacterNGramFeatureFunction.Orientation orientation : Arrays.asList(fromRight, fromLeft)) {
+      for (int length = 2; length <= maxNGramLength; ++length) {
+        nGrams.add(new CharacterNGramFeatureFunction(orientation, 0, length));
+      }
+    }
     SimpleFeatureExtractor tokenFeatureExtractor = new FeatureFunctionExtractor(
             new CoveredTextExtractor(),
-            new CharacterNGramFeatureFunction(fromRight, 0, 2),
-            new CharacterNGramFeatureFunction(fromRight, 0, 3),
-            new CharacterNGramFeatureFunction(fromLeft, 0, 2),
-            new CharacterNGramFeatureFunction(fromLeft, 0, 3)
+            nGrams.toArray(new CharacterNGramFeatureFunction[nGrams.size()])
     		);
 
-    // the token feature extractor: text, character ngrams, char pattern 
-    // (uppercase, digits, etc.), and part-of-speech
-    this.extractor = new CombinedExtractor(
+    // the features above depend only on the token's text, so they may be cached by text
+    SimpleFeatureExtractor textFeatureExtractor = new CombinedExtractor(
         tokenFeatureExtractor,
-        new CharacterCategoryPatternExtractor(PatternType.REPEATS_MERGED),
-        new TypePathExtractor(Token.class, "pos"),
-        new TypePathExtractor(Token.class, "stem")
-        );
-    
-    // the context feature extractor: the features above for the 3 preceding and 3 following tokens
-    this.contextExtractor = new CleartkExtractor(
+        new CharacterCategoryPatternExtractor(PatternType.REPEATS_MERGED));
+    if (cache != null) {
+      textFeatureExtractor = new CachedTextFeatureExtractor(textFeatureExtractor, cache);
+    }
+
+    List<SimpleFeatureExtractor> extractors = new ArrayList<SimpleFeatureExtractor>();
+    extractors.add(textFeatureExtractor);
+    if (usePartOfSpeech) {
+      extractors.add(new TypePathExtractor(Token.class, "pos"));
+    }
+    if (useStem) {
+      extractors.add(new TypePathExtractor(Token.class, "stem"));
+    }
+    return new CombinedExtractor(extractors.toArray(new SimpleFeatureExtractor[extractors.size()]));
+  }
+
+  /**
+   * Creates the context feature extractor: the token features for the 3 preceding and 3 following
+   * tokens.
+   */
+  public static CleartkExtractor createContextExtractor(SimpleFeatureExtractor tokenExtractor) {
+    return createContextExtractor(tokenExtractor, 3);
+  }
+
+  /**
+   * Creates the context feature extractor for the given number of preceding and following tokens.
+   */
+  public static CleartkExtractor createContextExtractor(
+      SimpleFeatureExtractor tokenExtractor,
+      int windowSize) {
+    return new CleartkExtractor(
         Token.class,
-        this.extractor,
-        new Preceding(3),
-        new Following(3));
+        tokenExtractor,
+        new Preceding(windowSize),
+        new Following(windowSize));
+  }
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+
+    // the cache of text-only features, shared by all chunkers in the process
+    if (this.textFeatureCacheSize > 0) {
+      // chunkers with different n-gram features must not share text features
+      this.textFeatureCache = TokenTextFeatureCache.getShared(
+          NamedEntityChunker.class.getName() + ":" + this.maxCharacterNGramLength,
+          this.textFeatureCacheSize);
+    }
+
+    // the token feature extractor, wrapped in a table so that each token's features are only
+    // computed once, even though they are also needed for the context of its neighbours
+    this.tokenFeatureTable = new TokenFeatureTable(this.createTokenFeatureExtractor());
+    this.extractor = this.tokenFeatureTable;
+    
+    // the context feature extractor: the features above for the preceding and following tokens
+    if (this.contextWindowSize > 0) {
+      this.contextExtractor = createContextExtractor(this.tokenFeatureTable, this.contextWindowSize);
+    }
+
+    // the same features as hashed ids, if requested
+    if (this.featureHashBits > 0) {
+      this.hashedExtractor = new HashedFeatureExtractor(
+          this.createTokenFeatureExtractor(),
+          new FeatureHasher(this.featureHashBits),
+          this.contextWindowSize,
+          this.boundContextBySentence);
+      this.hashedFeatures = new HashedFeatureSequence();
+
+      if (!this.isTraining()) {
+        try {
+          this.checkHashBits(this.classifier);
+        } catch (IllegalArgumentException e) {
+          throw new ResourceInitializationException(e);
+        }
+      }
+    }
+
+    // the registry that swaps in new models, if the model directory is watched
+    if (!this.isTraining() && this.reloadingModelDirectory != null) {
+      try {
+        this.modelRegistry = ReloadingModelRegistry.get(new File(this.reloadingModelDirectory));
+      } catch (IOException e) {
+        throw new ResourceInitializationException(e);
+      }
+    }
     
+    // the pool for classifying the sentences of large documents in parallel; it is only used for
+    // classifiers that can be called concurrently, which a reloaded model may or may not be
+    if (!this.isTraining() && this.decodingThreads > 1) {
+      this.decodingPool = new ForkJoinPool(this.decodingThreads);
+      if (!ClassifierRegistry.isShareable(this.classifier)) {
+        this.getContext().getLogger().log(Level.WARNING, String.format(
+            "%s cannot be called concurrently, so sentences are classified serially",
+            this.classifier.getClass().getSimpleName()));
+      }
+    }
+
     // the chunking definition: Tokens will be combined to form NamedEntityMentions, with labels
     // from the "mentionType" attribute so that we get B-location, I-person, etc.
     this.chunking = new BIOChunking<Token, NamedEntityMention>(
@@ -115,21 +476,86 @@ public class NamedEntityChunker extends CleartkSequenceAnnotator<String> {
 
   @Override
   public void process(JCas jCas) throws AnalysisEngineProcessException {
-    for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+    // pick up a newly loaded model between documents, never in the middle of one
+    if (this.modelRegistry != null) {
+      SequenceClassifier<String> classifier = this.modelRegistry.getClassifier();
+      if (classifier != this.classifier) {
+        try {
+          this.checkHashBits(classifier);
+        } catch (IllegalArgumentException e) {
+          throw new AnalysisEngineProcessException(e);
+        }
+        this.classifier = classifier;
+      }
+    }
 
-      // extract features for each token in the sentence
-      List<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sentence);
-      List<List<Feature>> featureLists = new ArrayList<List<Feature>>();
-      for (Token token : tokens) {
-        List<Feature> features = new ArrayList<Feature>();
-        features.addAll(this.extractor.extract(jCas, token));
-        features.addAll(this.contextExtractor.extract(jCas, token));
-        featureLists.add(features);
+    // the context windows are not bounded by the sentence, so the table lives for the whole CAS
+    this.tokenFeatureTable.clear();
+    if (this.hashedExtractor != null) {
+      this.hashedExtractor.reset(jCas);
+    }
+    try {
+      this.processSentences(jCas);
+    } finally {
+      this.tokenFeatureTable.clear();
+      if (this.hashedExtractor != null) {
+        this.hashedExtractor.clear();
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (this.decodingPool != null) {
+      this.decodingPool.shutdown();
+    }
+    if (this.textFeatureCache != null) {
+      this.getContext().getLogger().log(Level.INFO, String.format(
+          "text feature cache: %d hits, %d misses (%.1f%% hit rate), %d of %d texts",
+          this.textFeatureCache.getHitCount(),
+          this.textFeatureCache.getMissCount(),
+          100.0 * this.textFeatureCache.getHitRate(),
+          this.textFeatureCache.size(),
+          this.textFeatureCache.getCapacity()));
+    }
+    super.destroy();
+  }
+
+  /**
+   * A model that reads hash ids directly must have been trained with the same hash size.
+   */
+  private void checkHashBits(SequenceClassifier<String> classifier) {
+    if (this.featureHashBits > 0 && classifier instanceof HashedSequenceClassifier) {
+      int modelHashBits = ((HashedSequenceClassifier) classifier).getHashBits();
+      if (modelHashBits != this.featureHashBits) {
+        throw new IllegalArgumentException(String.format(
+            "expected a model trained with %d hash bits, found %d",
+            this.featureHashBits,
+            modelHashBits));
       }
+    }
+  }
+
+  private void processSentences(JCas jCas) throws AnalysisEngineProcessException {
+    Collection<Sentence> sentences = JCasUtil.select(jCas, Sentence.class);
+    // checked for every document, since a reloaded model may be of a different type
+    if (this.decodingPool != null
+        && sentences.size() >= this.parallelDecodingThreshold
+        && ClassifierRegistry.isShareable(this.classifier)) {
+      this.classifySentencesInParallel(jCas, sentences);
+      return;
+    }
+
+    for (Sentence sentence : sentences) {
+
+      List<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sentence);
 
       // during training, convert NamedEntityMentions in the CAS into expected classifier outcomes
       if (this.isTraining()) {
 
+        // extract features for each token in the sentence
+        List<List<Feature>> featureLists = this.extractFeatures(jCas, sentence, tokens);
+
         // extract the gold (human annotated) NamedEntityMention annotations
         List<NamedEntityMention> namedEntityMentions = JCasUtil.selectCovered(
             jCas,
@@ -147,7 +573,7 @@ public class NamedEntityChunker extends CleartkSequenceAnnotator<String> {
       else {
 
         // get the predicted BIO outcome labels from the classifier
-        List<String> outcomes = this.classifier.classify(featureLists);
+        List<String> outcomes = this.classify(jCas, sentence, tokens);
         
         //System.out.println(this.classifier.score(featureLists, 10));
 
@@ -156,4 +582,99 @@ public class NamedEntityChunker extends CleartkSequenceAnnotator<String> {
       }
     }
   }
+
+  private List<String> classify(JCas jCas, Sentence sentence, List<Token> tokens)
+      throws AnalysisEngineProcessException {
+
+    // classifiers that understand hashed features get the ids directly
+    if (this.hashedExtractor != null && this.classifier instanceof HashedSequenceClassifier) {
+      this.hashedExtractor.extract(jCas, tokens, this.hashedFeatures);
+      return ((HashedSequenceClassifier) this.classifier).classify(this.hashedFeatures);
+    }
+    return this.classifier.classify(this.extractFeatures(jCas, sentence, tokens));
+  }
+
+  /**
+   * Extracts the features of all sentences on the calling thread (the CAS is not thread-safe), then
+   * classifies the sentences on the decoding pool, and finally creates the NamedEntityMentions in
+   * sentence order.
+   */
+  private void classifySentencesInParallel(JCas jCas, Collection<Sentence> sentences)
+      throws AnalysisEngineProcessException {
+    List<List<Token>> sentenceTokens = new ArrayList<List<Token>>();
+    List<Callable<List<String>>> decodes = new ArrayList<Callable<List<String>>>();
+    for (Sentence sentence : sentences) {
+      List<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sentence);
+      sentenceTokens.add(tokens);
+      decodes.add(this.createDecode(jCas, sentence, tokens));
+    }
+
+    List<Future<List<String>>> results = this.decodingPool.invokeAll(decodes);
+    for (int i = 0; i < results.size(); ++i) {
+      List<String> outcomes;
+      try {
+        outcomes = results.get(i).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AnalysisEngineProcessException(e);
+      } catch (ExecutionException e) {
+        throw new AnalysisEngineProcessException(e.getCause());
+      }
+      this.chunking.createChunks(jCas, sentenceTokens.get(i), outcomes);
+    }
+  }
+
+  private Callable<List<String>> createDecode(JCas jCas, Sentence sentence, List<Token> tokens)
+      throws AnalysisEngineProcessException {
+    final SequenceClassifier<String> classifier = this.classifier;
+
+    // each sentence needs its own hashed feature sequence, since they are classified concurrently
+    if (this.hashedExtractor != null && classifier instanceof HashedSequenceClassifier) {
+      final HashedFeatureSequence hashedFeatures = new HashedFeatureSequence();
+      this.hashedExtractor.extract(jCas, tokens, hashedFeatures);
+      return new Callable<List<String>>() {
+        public List<String> call() throws Exception {
+          return ((HashedSequenceClassifier) classifier).classify(hashedFeatures);
+        }
+      };
+    }
+
+    final List<List<Feature>> featureLists = this.extractFeatures(jCas, sentence, tokens);
+    return new Callable<List<String>>() {
+      public List<String> call() throws Exception {
+        return classifier.classify(featureLists);
+      }
+    };
+  }
+
+  private SimpleFeatureExtractor createTokenFeatureExtractor() {
+    return createTokenFeatureExtractor(
+        this.textFeatureCache,
+        this.maxCharacterNGramLength,
+        this.usePartOfSpeech,
+        this.useStem);
+  }
+
+  private List<List<Feature>> extractFeatures(JCas jCas, Sentence sentence, List<Token> tokens)
+      throws AnalysisEngineProcessException {
+
+    // hashed features are converted to (shared) Feature objects for the classifier
+    if (this.hashedExtractor != null) {
+      this.hashedExtractor.extract(jCas, tokens, this.hashedFeatures);
+      return this.hashedFeatures.toFeatureLists(this.hashedExtractor.getHasher());
+    }
+
+    List<List<Feature>> featureLists = new ArrayList<List<Feature>>();
+    for (Token token : tokens) {
+      List<Feature> features = new ArrayList<Feature>();
+      features.addAll(this.extractor.extract(jCas, token));
+      if (this.contextExtractor != null && this.boundContextBySentence) {
+        features.addAll(this.contextExtractor.extractWithin(jCas, token, sentence));
+      } else if (this.contextExtractor != null) {
+        features.addAll(this.contextExtractor.extract(jCas, token));
+      }
+      featureLists.add(features);
+    }
+    return featureLists;
+  }
 }
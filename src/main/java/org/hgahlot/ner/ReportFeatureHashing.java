@@ -0,0 +1,169 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.feature.extractor.simple.SimpleFeatureExtractor;
+import org.cleartk.eval.AnnotationStatistics;
+import org.cleartk.syntax.opennlp.PosTaggerAnnotator;
+import org.cleartk.token.stem.snowball.DefaultSnowballStemmer;
+import org.cleartk.token.type.Token;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.pipeline.JCasIterable;
+import org.uimafit.util.JCasUtil;
+
+import com.cbsi.ner.feature.FeatureHasher;
+import com.cbsi.ner.reader.Conll2003GoldReader;
+
+/**
+ * This class provides a main method that reports, for a range of feature hash sizes, how many of
+ * the distinct features of the training data collide in the hashed space, and the F1 on the test
+ * data of a {@link NamedEntityChunker} model trained with that many hash bits.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class ReportFeatureHashing {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--train-file", usage = "The Conll-annotated file to train on")
+    public File trainFile = new File(
+        "src/main/resources/data/cbsi-ner-data/cmp_prod_conll2003.train");
+
+    @Option(name = "--test-file", usage = "The Conll-annotated file to test on")
+    public File testFile = new File(
+        "src/main/resources/data/cbsi-ner-data/test/cmp_prod_conll2003.test");
+
+    @Option(name = "--models-dir", usage = "The directory where a model is written for each hash size")
+    public File modelsDirectory = new File("target/chunking/ne-model-hashing");
+
+    @Option(name = "--hash-bits", usage = "The comma-separated hash sizes (in bits) to try")
+    public String hashBits = "14,16,18,20,22";
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+
+    // the full 32-bit hash of every distinct token feature in each context position
+    List<Set<Integer>> positionHashes = collectFeatureHashes(options.trainFile);
+    int featureCount = 0;
+    for (Set<Integer> hashes : positionHashes) {
+      featureCount += hashes.size();
+    }
+
+    List<String> rows = new ArrayList<String>();
+    for (String bitsString : options.hashBits.split(",")) {
+      int bits = Integer.parseInt(bitsString.trim());
+      FeatureHasher hasher = new FeatureHasher(bits);
+
+      // count the ids that the distinct features end up in
+      Set<Integer> ids = new HashSet<Integer>();
+      for (int i = 0; i < positionHashes.size(); ++i) {
+        int position = i - 3;
+        for (int hash : positionHashes.get(i)) {
+          ids.add(hasher.index(position == 0 ? hash : hasher.hashContext(hash, position)));
+        }
+      }
+      double collisionRate = 1.0 - (double) ids.size() / featureCount;
+
+      // train and test a model with this many hash bits
+      File modelDirectory = new File(options.modelsDirectory, "bits-" + bits);
+      EvaluateNamedEntityChunker evaluator = new EvaluateNamedEntityChunker(
+          modelDirectory,
+          Arrays.<String> asList(),
+          bits);
+      evaluator.train(
+          Conll2003GoldReader.getCollectionReader(options.trainFile.getAbsolutePath()),
+          modelDirectory);
+      AnnotationStatistics<String> stats = evaluator.test(
+          Conll2003GoldReader.getCollectionReader(options.testFile.getAbsolutePath()),
+          modelDirectory);
+
+      rows.add(String.format(
+          "%4d %10d %10d %9.4f %7.4f",
+          bits,
+          hasher.getSize(),
+          ids.size(),
+          collisionRate,
+          stats.f1()));
+    }
+
+    System.out.printf("%d distinct features in %s\n", featureCount, options.trainFile);
+    System.out.println("bits       size    usedIds collisions      F1");
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  /**
+   * @return for each context position from -3 to 3, the full hashes of the token features seen in
+   *         that position (position 0 being the token itself)
+   */
+  private static List<Set<Integer>> collectFeatureHashes(File dataFile) throws Exception {
+    AggregateBuilder builder = new AggregateBuilder();
+    builder.add(PosTaggerAnnotator.getDescription());
+    builder.add(DefaultSnowballStemmer.getDescription("English"));
+    AnalysisEngine preprocessor = builder.createAggregate();
+
+    SimpleFeatureExtractor extractor = NamedEntityChunker.createTokenFeatureExtractor();
+    FeatureHasher hasher = new FeatureHasher(FeatureHasher.MAX_BITS);
+    List<Set<Integer>> positionHashes = new ArrayList<Set<Integer>>();
+    for (int i = 0; i < 7; ++i) {
+      positionHashes.add(new HashSet<Integer>());
+    }
+
+    for (JCas jCas : new JCasIterable(
+        Conll2003GoldReader.getCollectionReader(dataFile.getAbsolutePath()),
+        preprocessor)) {
+      List<Token> tokens = new ArrayList<Token>(JCasUtil.select(jCas, Token.class));
+      for (int index = 0; index < tokens.size(); ++index) {
+        List<Integer> hashes = new ArrayList<Integer>();
+        for (Feature feature : extractor.extract(jCas, tokens.get(index))) {
+          hashes.add(hasher.hash(feature));
+        }
+        // a token's features are seen at every position of the window that is inside the document
+        for (int position = -3; position <= 3; ++position) {
+          int focusIndex = index - position;
+          if (focusIndex >= 0 && focusIndex < tokens.size()) {
+            positionHashes.get(position + 3).addAll(hashes);
+          }
+        }
+      }
+    }
+    return positionHashes;
+  }
+}
@@ -24,13 +24,19 @@
 package com.cbsi.ner;
 
 import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Future;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.jcas.JCas;
-import org.cleartk.classifier.CleartkSequenceAnnotator;
-import org.cleartk.classifier.jar.GenericJarClassifierFactory;
 import org.cleartk.ne.type.NamedEntityMention;
 import org.cleartk.syntax.opennlp.PosTaggerAnnotator;
 import org.cleartk.syntax.opennlp.SentenceAnnotator;
@@ -46,6 +52,9 @@ import org.uimafit.factory.AnalysisEngineFactory;
 import org.uimafit.pipeline.SimplePipeline;
 import org.uimafit.util.JCasUtil;
 
+import com.cbsi.ner.BatchingNamedEntityTagger.Mention;
+import com.cbsi.ner.classifier.MappedCRFModel;
+
 /**
  * This class provides a main method that demonstrates how to run a trained
  * {@link NamedEntityChunker} on new files.
@@ -58,18 +67,67 @@ import org.uimafit.util.JCasUtil;
  */
 public class RunNamedEntityChunker {
 
+  /**
+   * The number of batches of lines submitted ahead of the line whose mentions are printed next.
+   */
+  private static final int PENDING_BATCHES = 4;
+
   public static class Options extends Options_ImplBase {
     @Option(name = "--model-dir", usage = "The directory where the model was trained")
     public File modelDirectory = new File("target/chunking/ne-model-comp-prod-noBI_noNull");
 
     @Option(name = "--text-file", usage = "The file to label with named entities.")
     public File textFile = new File("src/main/resources/data/cbsi-ner-data/cmp_prod_test.txt");
+
+    @Option(
+        name = "--feature-hash-bits",
+        usage = "Hash features into 2^bits ids as the model was trained with (0 disables hashing)")
+    public int featureHashBits = 0;
+
+    @Option(
+        name = "--decoding-threads",
+        usage = "The number of threads used to classify the sentences of large documents")
+    public int decodingThreads = 1;
+
+    @Option(
+        name = "--parallel-decoding-threshold",
+        usage = "The number of sentences a document must have to be classified in parallel")
+    public int parallelDecodingThreshold = 32;
+
+    @Option(
+        name = "--batch-size",
+        usage = "If greater than 0, treat each line of the text file as a separate text, and tag "
+            + "this many lines per CAS")
+    public int batchSize = 0;
+
+    @Option(name = "--batch-max-wait-ms", usage = "The longest a line waits for its batch to fill")
+    public long batchMaxWaitMillis = 10;
+
+    @Option(
+        name = "--mapped-model",
+        usage = "Classify with the memory-mapped " + MappedCRFModel.FILE_NAME + " in the model directory instead of model.jar")
+    public boolean mappedModel = false;
+
+    @Option(
+        name = "--watch-model",
+        usage = "Switch to a new model.jar as soon as one is written to the model directory")
+    public boolean watchModel = false;
+
+    @Option(
+        name = "--text-feature-cache-size",
+        usage = "The number of token texts whose features are cached (0 disables the cache)")
+    public int textFeatureCacheSize = 0;
   }
 
   public static void main(String[] args) throws Exception {
     Options options = new Options();
     options.parseOptions(args);
 
+    if (options.batchSize > 0) {
+      runBatches(options);
+      return;
+    }
+
     // a reader that loads the URIs of the text file
     CollectionReader reader = UriCollectionReader.getCollectionReaderFromFiles(Arrays.asList(options.textFile));
 
@@ -86,12 +144,7 @@ public class RunNamedEntityChunker {
     aggregate.add(DefaultSnowballStemmer.getDescription("English"));
     
     // our NamedEntityChunker annotator, configured to classify on the new texts
-    aggregate.add(AnalysisEngineFactory.createPrimitiveDescription(
-        NamedEntityChunker.class,
-        CleartkSequenceAnnotator.PARAM_IS_TRAINING,
-        false,
-        GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH,
-        new File(options.modelDirectory, "model.jar")));
+    aggregate.add(createChunkerDescription(options));
 
     // a very simple annotator that just prints out any named entities we found
     aggregate.add(AnalysisEngineFactory.createPrimitiveDescription(PrintNamedEntityMentions.class));
@@ -100,6 +153,81 @@ public class RunNamedEntityChunker {
     SimplePipeline.runPipeline(reader, aggregate.createAggregateDescription());
   }
 
+  /**
+   * Creates the description of the NamedEntityChunker for the model options (a mapped, a watched or
+   * a plain model.jar) and the decoding options.
+   * 
+   * @param configurationData
+   *          any further parameter name/value pairs for the chunker
+   */
+  private static AnalysisEngineDescription createChunkerDescription(
+      Options options,
+      Object... configurationData) throws Exception {
+    List<Object> chunkerParameters = new ArrayList<Object>(Arrays.asList(
+        NamedEntityChunker.PARAM_FEATURE_HASH_BITS,
+        options.featureHashBits,
+        NamedEntityChunker.PARAM_DECODING_THREADS,
+        options.decodingThreads,
+        NamedEntityChunker.PARAM_PARALLEL_DECODING_THRESHOLD,
+        options.parallelDecodingThreshold,
+        NamedEntityChunker.PARAM_TEXT_FEATURE_CACHE_SIZE,
+        options.textFeatureCacheSize));
+    chunkerParameters.addAll(Arrays.asList(configurationData));
+    if (options.watchModel) {
+      return NamedEntityChunker.getReloadingClassifierDescription(
+          options.modelDirectory,
+          chunkerParameters.toArray());
+    } else if (options.mappedModel) {
+      return NamedEntityChunker.getMappedClassifierDescription(
+          new File(options.modelDirectory, MappedCRFModel.FILE_NAME),
+          chunkerParameters.toArray());
+    } else {
+      return NamedEntityChunker.getClassifierDescription(
+          new File(options.modelDirectory, "model.jar"),
+          false,
+          chunkerParameters.toArray());
+    }
+  }
+
+  /**
+   * Tags each line of the text file as a separate text, packing many lines into each CAS. Lines are
+   * read as they are needed, and at most a few batches of them are waiting for their mentions to be
+   * printed at any time, so memory does not grow with the size of the file.
+   */
+  private static void runBatches(Options options) throws Exception {
+    BatchingNamedEntityTagger tagger = new BatchingNamedEntityTagger(
+        AnalysisEngineFactory.createAggregate(BatchingNamedEntityTagger.getAggregateDescription(
+            createChunkerDescription(
+                options,
+                NamedEntityChunker.PARAM_BOUND_CONTEXT_BY_SENTENCE,
+                true))),
+        options.batchSize,
+        options.batchMaxWaitMillis);
+    int window = PENDING_BATCHES * options.batchSize;
+    Queue<Future<List<Mention>>> pending = new ArrayDeque<Future<List<Mention>>>(window);
+    LineIterator lines = FileUtils.lineIterator(options.textFile);
+    try {
+      while (lines.hasNext()) {
+        if (pending.size() == window) {
+          printMentions(pending.remove());
+        }
+        pending.add(tagger.submit(lines.nextLine()));
+      }
+      while (!pending.isEmpty()) {
+        printMentions(pending.remove());
+      }
+    } finally {
+      LineIterator.closeQuietly(lines);
+      tagger.close();
+    }
+  }
+
+  private static void printMentions(Future<List<Mention>> future) throws Exception {
+    for (Mention mention : future.get()) {
+      System.out.println(mention);
+    }
+  }
+
   /**
    * A simple annotator that just prints out any {@link NamedEntityMention}s in the CAS.
    * 
@@ -0,0 +1,312 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.ne.type.NamedEntityMention;
+import org.cleartk.syntax.opennlp.PosTaggerAnnotator;
+import org.cleartk.syntax.opennlp.SentenceAnnotator;
+import org.cleartk.token.stem.snowball.DefaultSnowballStemmer;
+import org.cleartk.token.tokenizer.TokenAnnotator;
+import org.cleartk.token.type.Token;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.util.JCasUtil;
+
+/**
+ * This class provides a main method that runs a trained {@link NamedEntityChunker} over many files
+ * at once: a pool of worker threads, each with its own replica of the tagging aggregate, takes
+ * documents from a bounded queue. Every mention is printed with the URI of its document, either in
+ * the order of the input files or as soon as each document is done. Throughput is reported at the
+ * end.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class RunNamedEntityChunkerInParallel {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--model-dir", usage = "The directory where the model was trained")
+    public File modelDirectory = new File("target/chunking/ne-model-comp-prod-noBI_noNull");
+
+    @Option(name = "--input-dir", usage = "A directory of files to label with named entities")
+    public File inputDirectory = null;
+
+    @Option(name = "--file-list", usage = "A file listing the files to label, one path per line")
+    public File fileList = null;
+
+    @Option(name = "--threads", usage = "The number of tagging pipelines to run in parallel")
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "--queue-size", usage = "The number of documents that may wait for a free pipeline")
+    public int queueSize = 64;
+
+    @Option(
+        name = "--unordered",
+        usage = "Print each document's mentions as soon as it is done, instead of in input order")
+    public boolean unordered = false;
+
+    @Option(
+        name = "--feature-hash-bits",
+        usage = "Hash features into 2^bits ids as the model was trained with (0 disables hashing)")
+    public int featureHashBits = 0;
+
+    @Option(
+        name = "--separate-models",
+        usage = "Load a separate copy of the model for each pipeline, instead of sharing one. Only compiled CRF and perceptron models are shared; any other model (such as the default Mallet CRF) is loaded once per pipeline either way")
+    public boolean separateModels = false;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+
+    List<File> files = new ArrayList<File>();
+    if (options.inputDirectory != null) {
+      files.addAll(EvaluateNamedEntityChunker.getFilesFromDirectory(options.inputDirectory));
+    }
+    if (options.fileList != null) {
+      for (String line : FileUtils.readLines(options.fileList)) {
+        if (line.trim().length() > 0) {
+          files.add(new File(line.trim()));
+        }
+      }
+    }
+    if (files.isEmpty()) {
+      throw new IllegalArgumentException("expected --input-dir or --file-list naming some files");
+    }
+
+    AnalysisEngineDescription description = getAggregateDescription(
+        options.modelDirectory,
+        options.featureHashBits,
+        !options.separateModels);
+    Output output = new Output(!options.unordered);
+    BlockingQueue<Integer> queue = new ArrayBlockingQueue<Integer>(options.queueSize);
+    AtomicLong tokenCount = new AtomicLong();
+    AtomicInteger failureCount = new AtomicInteger();
+
+    // start the workers, each with its own pipeline
+    ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+    List<Future<Void>> workers = new ArrayList<Future<Void>>();
+    long start = System.nanoTime();
+    try {
+      for (int i = 0; i < options.threads; ++i) {
+        workers.add(executor.submit(new Worker(
+            AnalysisEngineFactory.createAggregate(description),
+            files,
+            queue,
+            output,
+            tokenCount,
+            failureCount)));
+      }
+
+      // feed them the documents, then one end marker per worker
+      for (int i = 0; i < files.size(); ++i) {
+        put(queue, i, workers);
+      }
+      for (int i = 0; i < options.threads; ++i) {
+        put(queue, Worker.END, workers);
+      }
+      for (Future<Void> worker : workers) {
+        worker.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    long elapsed = System.nanoTime() - start;
+
+    double seconds = elapsed / 1e9;
+    System.err.printf(
+        "%d documents (%d failed), %d tokens in %.1f s with %d threads\n",
+        files.size(),
+        failureCount.get(),
+        tokenCount.get(),
+        seconds,
+        options.threads);
+    System.err.printf("%.1f docs/sec, %.1f tokens/sec\n", files.size() / seconds, tokenCount.get()
+        / seconds);
+  }
+
+  /**
+   * Puts an item on the queue, waiting for room as long as all the workers are still running. A
+   * worker that has stopped before its end marker has failed (its own per-document failures are
+   * caught), and its failure is thrown rather than waiting forever for the queue to drain.
+   */
+  private static void put(BlockingQueue<Integer> queue, Integer item, List<Future<Void>> workers)
+      throws Exception {
+    while (!queue.offer(item, PUT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+      for (Future<Void> worker : workers) {
+        if (worker.isDone()) {
+          // throws the worker's failure, if it has one
+          worker.get();
+          throw new IllegalStateException("a worker stopped before the end of the documents");
+        }
+      }
+    }
+  }
+
+  private static final long PUT_TIMEOUT_MILLIS = 100;
+
+  /**
+   * Creates the tagging aggregate for plain text documents: sentences, tokens, part-of-speech tags,
+   * stems and the {@link NamedEntityChunker}. If the model is shared and is a compiled CRF or a
+   * perceptron model, all pipelines created from the description use the same classifier; any other
+   * model (such as the default Mallet CRF) cannot be called concurrently, so each pipeline still
+   * loads its own copy, and a warning is logged.
+   */
+  public static AnalysisEngineDescription getAggregateDescription(
+      File modelDirectory,
+      int featureHashBits,
+      boolean shareModel) throws ResourceInitializationException {
+    AggregateBuilder aggregate = new AggregateBuilder();
+    aggregate.add(SentenceAnnotator.getDescription());
+    aggregate.add(TokenAnnotator.getDescription());
+    aggregate.add(PosTaggerAnnotator.getDescription());
+    aggregate.add(DefaultSnowballStemmer.getDescription("English"));
+    aggregate.add(NamedEntityChunker.getClassifierDescription(
+        new File(modelDirectory, "model.jar"),
+        shareModel,
+        NamedEntityChunker.PARAM_FEATURE_HASH_BITS,
+        featureHashBits));
+    return aggregate.createAggregateDescription();
+  }
+
+  /**
+   * Takes document indexes from the queue and tags the documents with its own pipeline.
+   */
+  private static class Worker implements Callable<Void> {
+
+    public static final Integer END = -1;
+
+    private AnalysisEngine engine;
+
+    private List<File> files;
+
+    private BlockingQueue<Integer> queue;
+
+    private Output output;
+
+    private AtomicLong tokenCount;
+
+    private AtomicInteger failureCount;
+
+    public Worker(
+        AnalysisEngine engine,
+        List<File> files,
+        BlockingQueue<Integer> queue,
+        Output output,
+        AtomicLong tokenCount,
+        AtomicInteger failureCount) {
+      this.engine = engine;
+      this.files = files;
+      this.queue = queue;
+      this.output = output;
+      this.tokenCount = tokenCount;
+      this.failureCount = failureCount;
+    }
+
+    public Void call() throws Exception {
+      JCas jCas = this.engine.newJCas();
+      try {
+        Integer index;
+        while (!(index = this.queue.take()).equals(END)) {
+          File file = this.files.get(index);
+          StringBuilder result = new StringBuilder();
+          try {
+            jCas.reset();
+            jCas.setDocumentText(FileUtils.readFileToString(file));
+            this.engine.process(jCas);
+            this.tokenCount.addAndGet(JCasUtil.select(jCas, Token.class).size());
+            for (NamedEntityMention mention : JCasUtil.select(jCas, NamedEntityMention.class)) {
+              result.append(String.format(
+                  "%s\t%s (%s)\n",
+                  file.toURI(),
+                  mention.getCoveredText(),
+                  mention.getMentionType()));
+            }
+          } catch (Exception e) {
+            this.failureCount.incrementAndGet();
+            result.setLength(0);
+            result.append(String.format("%s\tfailed: %s\n", file.toURI(), e));
+          }
+          this.output.write(index, result.toString());
+        }
+      } finally {
+        this.engine.destroy();
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Prints the results of each document, either immediately or in document order.
+   */
+  private static class Output {
+
+    private boolean ordered;
+
+    private int next;
+
+    private TreeMap<Integer, String> pending;
+
+    public Output(boolean ordered) {
+      this.ordered = ordered;
+      this.next = 0;
+      this.pending = new TreeMap<Integer, String>();
+    }
+
+    public synchronized void write(int index, String result) {
+      if (!this.ordered) {
+        System.out.print(result);
+        return;
+      }
+      this.pending.put(index, result);
+      while (!this.pending.isEmpty() && this.pending.firstKey() == this.next) {
+        System.out.print(this.pending.remove(this.next));
+        ++this.next;
+      }
+    }
+  }
+}
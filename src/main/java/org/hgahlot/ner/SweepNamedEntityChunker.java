@@ -0,0 +1,372 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.cleartk.classifier.CleartkSequenceAnnotator;
+import org.cleartk.classifier.jar.DefaultSequenceDataWriterFactory;
+import org.cleartk.classifier.jar.DirectoryDataWriterFactory;
+import org.cleartk.classifier.jar.Train;
+import org.cleartk.classifier.mallet.MalletCRFStringOutcomeDataWriter;
+import org.cleartk.eval.AnnotationStatistics;
+import org.cleartk.ne.type.NamedEntityMention;
+import org.cleartk.token.type.Token;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.factory.TypeSystemDescriptionFactory;
+import org.uimafit.pipeline.JCasIterable;
+import org.uimafit.pipeline.SimplePipeline;
+import org.uimafit.util.JCasUtil;
+
+import com.cbsi.ner.cache.PreprocessedCasCache;
+import com.cbsi.ner.classifier.BinaryMalletCRFDataWriter;
+import com.cbsi.ner.reader.Conll2003GoldReader;
+import com.google.common.base.Function;
+
+/**
+ * This class provides a main method that trains and evaluates the {@link NamedEntityChunker} for
+ * every combination of a grid of feature configurations (character n-gram length, context window
+ * size, part-of-speech and stem features) and training arguments, and prints a table of the F1,
+ * model size, training time and decoding speed of each, so that the fastest model that is accurate
+ * enough can be picked.
+ * 
+ * The training and test files are preprocessed once, into a
+ * {@link com.cbsi.ner.cache.PreprocessedCasCache}, and every configuration replays them from
+ * there. Configurations are trained and evaluated in parallel, each in its own directory. Mallet's
+ * own trainer cannot run several times at once, so Mallet CRFs are trained from a
+ * {@link BinaryMalletCRFDataWriter}'s data instead, whose training arguments are
+ * <code>--iterations</code>, <code>--gaussian-variance</code>, <code>--tolerance</code> and
+ * <code>--threads</code>.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class SweepNamedEntityChunker {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--train-file", usage = "The Conll-annotated file to train on")
+    public File trainFile = new File(
+        "src/main/resources/data/cbsi-ner-data/cmp_prod_conll2003.train");
+
+    @Option(name = "--test-file", usage = "The Conll-annotated file to evaluate on")
+    public File testFile = new File(
+        "src/main/resources/data/cbsi-ner-data/test/cmp_prod_conll2003.test");
+
+    @Option(name = "--work-dir", usage = "The directory in which to write the models")
+    public File workDirectory = new File("target/chunking/sweep");
+
+    @Option(
+        name = "--cas-cache-dir",
+        usage = "The directory of the preprocessed documents (by default, in the work directory)")
+    public File casCacheDirectory = null;
+
+    @Option(
+        name = "--ngram-lengths",
+        usage = "Comma-separated longest character prefix and suffix lengths to try (1 for none)")
+    public String nGramLengths = "3";
+
+    @Option(
+        name = "--window-sizes",
+        usage = "Comma-separated numbers of preceding and following context tokens to try")
+    public String windowSizes = "3";
+
+    @Option(name = "--pos", usage = "Comma-separated settings of the part-of-speech feature to try")
+    public String partOfSpeech = "true";
+
+    @Option(name = "--stem", usage = "Comma-separated settings of the stem feature to try")
+    public String stem = "true";
+
+    @Option(
+        name = "--training-args-set",
+        usage = "A space-separated set of training arguments to try, e.g. "
+            + "'--training-args-set \"--iterations 100\" --training-args-set \"--iterations 500\"'")
+    public List<String> trainingArgumentSets = new ArrayList<String>();
+
+    @Option(
+        name = "--data-writer",
+        usage = "The class name of the sequence data writer, which determines the learner")
+    public String dataWriterClassName = MalletCRFStringOutcomeDataWriter.class.getName();
+
+    @Option(name = "--threads", usage = "The number of configurations to train and evaluate at once")
+    public int threads = Runtime.getRuntime().availableProcessors();
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+    if (options.trainingArgumentSets.isEmpty()) {
+      options.trainingArgumentSets.add("");
+    }
+    String dataWriterClassName = options.dataWriterClassName;
+    if (dataWriterClassName.equals(MalletCRFStringOutcomeDataWriter.class.getName())) {
+      dataWriterClassName = BinaryMalletCRFDataWriter.class.getName();
+    }
+
+    // preprocess the training and test documents once, for all configurations
+    File cacheDirectory = options.casCacheDirectory != null
+        ? options.casCacheDirectory
+        : new File(options.workDirectory, "cas-cache");
+    CollectionReaderDescription trainReader = preprocess(options.trainFile, cacheDirectory, null);
+    CollectionReaderDescription testReader = preprocess(
+        options.testFile,
+        cacheDirectory,
+        EvaluateNamedEntityChunker.GOLD_VIEW_NAME);
+
+    // the grid of configurations
+    List<Configuration> configurations = new ArrayList<Configuration>();
+    for (String nGramLength : options.nGramLengths.split(",")) {
+      for (String windowSize : options.windowSizes.split(",")) {
+        for (String partOfSpeech : options.partOfSpeech.split(",")) {
+          for (String stem : options.stem.split(",")) {
+            for (String trainingArguments : options.trainingArgumentSets) {
+              String trimmed = trainingArguments.trim();
+              configurations.add(new Configuration(
+                  Integer.parseInt(nGramLength.trim()),
+                  Integer.parseInt(windowSize.trim()),
+                  Boolean.parseBoolean(partOfSpeech.trim()),
+                  Boolean.parseBoolean(stem.trim()),
+                  trimmed.length() == 0 ? new String[0] : trimmed.split("\\s+")));
+            }
+          }
+        }
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+    List<Future<String>> results = new ArrayList<Future<String>>();
+    try {
+      for (int i = 0; i < configurations.size(); ++i) {
+        results.add(executor.submit(new Run(
+            configurations.get(i),
+            new File(options.workDirectory, "config-" + i),
+            dataWriterClassName,
+            trainReader,
+            testReader)));
+      }
+      System.out.println("ngram\twindow\tpos\tstem\ttraining args\tF1\tmodel KB\ttrain s\ttokens/sec");
+      for (Future<String> result : results) {
+        System.out.println(result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Make sure the documents of a file are in the CAS cache, and return a reader that replays them.
+   * 
+   * @param goldViewName
+   *          the view to read the named entity mentions into, or null for the default view
+   */
+  private static CollectionReaderDescription preprocess(
+      File file,
+      File cacheDirectory,
+      String goldViewName) throws Exception {
+    CollectionReaderDescription reader = goldViewName != null
+        ? Conll2003GoldReader.getGoldViewDescription(file.getAbsolutePath(), goldViewName)
+        : Conll2003GoldReader.getDescription(file.getAbsolutePath());
+    AnalysisEngineDescription preprocessing = NamedEntityChunker.getPreprocessingDescription();
+    PreprocessedCasCache cache = new PreprocessedCasCache(cacheDirectory, file, reader, preprocessing);
+    if (!cache.isHit()) {
+      AggregateBuilder builder = new AggregateBuilder();
+      cache.addPreprocessing(builder);
+      SimplePipeline.runPipeline(reader, builder.createAggregateDescription());
+      cache = new PreprocessedCasCache(cacheDirectory, file, reader, preprocessing);
+    }
+    return cache.getCachedReaderDescription();
+  }
+
+  /**
+   * One point of the grid.
+   */
+  private static class Configuration {
+
+    public int nGramLength;
+
+    public int windowSize;
+
+    public boolean partOfSpeech;
+
+    public boolean stem;
+
+    public String[] trainingArguments;
+
+    public Configuration(
+        int nGramLength,
+        int windowSize,
+        boolean partOfSpeech,
+        boolean stem,
+        String[] trainingArguments) {
+      this.nGramLength = nGramLength;
+      this.windowSize = windowSize;
+      this.partOfSpeech = partOfSpeech;
+      this.stem = stem;
+      this.trainingArguments = trainingArguments;
+    }
+
+    /**
+     * @return the chunker parameters of the feature configuration
+     */
+    public List<Object> getParameters() {
+      return Arrays.<Object> asList(
+          NamedEntityChunker.PARAM_MAX_CHARACTER_NGRAM_LENGTH,
+          this.nGramLength,
+          NamedEntityChunker.PARAM_CONTEXT_WINDOW_SIZE,
+          this.windowSize,
+          NamedEntityChunker.PARAM_USE_PART_OF_SPEECH,
+          this.partOfSpeech,
+          NamedEntityChunker.PARAM_USE_STEM,
+          this.stem);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder arguments = new StringBuilder();
+      for (String argument : this.trainingArguments) {
+        if (arguments.length() > 0) {
+          arguments.append(' ');
+        }
+        arguments.append(argument);
+      }
+      return String.format(
+          "%d\t%d\t%s\t%s\t%s",
+          this.nGramLength,
+          this.windowSize,
+          this.partOfSpeech,
+          this.stem,
+          arguments.length() == 0 ? "-" : arguments);
+    }
+  }
+
+  /**
+   * Trains and evaluates one configuration, and returns its row of the table.
+   */
+  private static class Run implements Callable<String> {
+
+    private Configuration configuration;
+
+    private File directory;
+
+    private String dataWriterClassName;
+
+    private CollectionReaderDescription trainReader;
+
+    private CollectionReaderDescription testReader;
+
+    public Run(
+        Configuration configuration,
+        File directory,
+        String dataWriterClassName,
+        CollectionReaderDescription trainReader,
+        CollectionReaderDescription testReader) {
+      this.configuration = configuration;
+      this.directory = directory;
+      this.dataWriterClassName = dataWriterClassName;
+      this.trainReader = trainReader;
+      this.testReader = testReader;
+    }
+
+    public String call() throws Exception {
+      if (this.directory.exists()) {
+        FileUtils.deleteDirectory(this.directory);
+      }
+
+      // extract the training data and train
+      long start = System.nanoTime();
+      List<Object> parameters = new ArrayList<Object>(this.configuration.getParameters());
+      parameters.addAll(Arrays.<Object> asList(
+          CleartkSequenceAnnotator.PARAM_IS_TRAINING,
+          true,
+          DirectoryDataWriterFactory.PARAM_OUTPUT_DIRECTORY,
+          this.directory,
+          DefaultSequenceDataWriterFactory.PARAM_DATA_WRITER_CLASS_NAME,
+          this.dataWriterClassName));
+      SimplePipeline.runPipeline(
+          this.trainReader,
+          AnalysisEngineFactory.createPrimitiveDescription(
+              NamedEntityChunker.class,
+              parameters.toArray()));
+      Train.main(this.directory, this.configuration.trainingArguments);
+      long trainTime = System.nanoTime() - start;
+      File modelJar = new File(this.directory, "model.jar");
+
+      // tag the test documents, timing the chunker alone
+      AnalysisEngine chunker = AnalysisEngineFactory.createPrimitive(NamedEntityChunker.getClassifierDescription(
+          modelJar,
+          false,
+          this.configuration.getParameters().toArray()));
+      AnnotationStatistics<String> stats = new AnnotationStatistics<String>();
+      Function<NamedEntityMention, ?> getSpan = AnnotationStatistics.annotationToSpan();
+      Function<NamedEntityMention, String> getCategory = AnnotationStatistics.annotationToFeatureValue("mentionType");
+      TypeSystemDescription typeSystem = TypeSystemDescriptionFactory.createTypeSystemDescription();
+      long tokens = 0;
+      long decodeTime = 0;
+      try {
+        for (JCas jCas : new JCasIterable(
+            CollectionReaderFactory.createCollectionReader(this.testReader),
+            typeSystem)) {
+          // the gold mentions are in their own view, and the chunker adds its own to the default view
+          Collection<NamedEntityMention> gold = JCasUtil.select(
+              jCas.getView(EvaluateNamedEntityChunker.GOLD_VIEW_NAME),
+              NamedEntityMention.class);
+          long decodeStart = System.nanoTime();
+          chunker.process(jCas);
+          decodeTime += System.nanoTime() - decodeStart;
+          tokens += JCasUtil.select(jCas, Token.class).size();
+          Collection<NamedEntityMention> system = JCasUtil.select(jCas, NamedEntityMention.class);
+          stats.add(gold, system, getSpan, getCategory);
+        }
+      } finally {
+        chunker.destroy();
+      }
+
+      return String.format(
+          "%s\t%.4f\t%.0f\t%.1f\t%.0f",
+          this.configuration,
+          stats.f1(),
+          modelJar.length() / 1024.0,
+          trainTime / 1e9,
+          tokens / (decodeTime / 1e9));
+    }
+  }
+}
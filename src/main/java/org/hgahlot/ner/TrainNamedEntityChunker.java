@@ -24,22 +24,41 @@
 package com.cbsi.ner;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.IOFileFilter;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.resource.ResourceInitializationException;
 import org.cleartk.classifier.CleartkSequenceAnnotator;
 import org.cleartk.classifier.jar.DefaultSequenceDataWriterFactory;
 import org.cleartk.classifier.jar.DirectoryDataWriterFactory;
 import org.cleartk.classifier.jar.Train;
 import org.cleartk.classifier.mallet.MalletCRFStringOutcomeDataWriter;
-import org.cleartk.syntax.opennlp.PosTaggerAnnotator;
-import org.cleartk.token.stem.snowball.DefaultSnowballStemmer;
 import org.cleartk.util.Options_ImplBase;
 import org.kohsuke.args4j.Option;
 import org.uimafit.factory.AggregateBuilder;
 import org.uimafit.factory.AnalysisEngineFactory;
 import org.uimafit.pipeline.SimplePipeline;
 
+import com.cbsi.ner.cache.Fingerprint;
+import com.cbsi.ner.cache.PreprocessedCasCache;
+import com.cbsi.ner.cache.TrainingDataCache;
+import com.cbsi.ner.classifier.MappedCRFModel;
+import com.cbsi.ner.classifier.ThreadedCRFTrainer;
+import com.cbsi.ner.classifier.TrainingDataShards;
+import com.cbsi.ner.feature.CachedTextFeatureExtractor;
+import com.cbsi.ner.feature.FeatureHasher;
+import com.cbsi.ner.feature.HashedFeatureExtractor;
+import com.cbsi.ner.feature.HashedFeatureSequence;
+import com.cbsi.ner.feature.TokenFeatureTable;
+import com.cbsi.ner.feature.TokenTextFeatureCache;
 import com.cbsi.ner.reader.Conll2003GoldReader;
 
 /**
@@ -61,39 +80,265 @@ public class TrainNamedEntityChunker {
 
     @Option(name = "--model-dir", usage = "The directory where the model should be written")
     public File modelDirectory = new File("target/chunking/ne-model-feature-test");
+
+    @Option(
+        name = "--feature-hash-bits",
+        usage = "Hash features into 2^bits ids instead of passing them by name (0 disables hashing)")
+    public int featureHashBits = 0;
+
+    @Option(
+        name = "--export-mapped-model",
+        usage = "Also compile the trained model into a memory-mapped " + MappedCRFModel.FILE_NAME + " in the model directory")
+    public boolean exportMappedModel = false;
+
+    @Option(
+        name = "--text-feature-cache-size",
+        usage = "The number of token texts whose features are cached (0 disables the cache)")
+    public int textFeatureCacheSize = 0;
+
+    @Option(
+        name = "--memory-mapped-reader",
+        usage = "Parse the training file from a memory mapping instead of line by line")
+    public boolean memoryMappedReader = false;
+
+    @Option(
+        name = "--cas-cache-dir",
+        usage = "Cache the part-of-speech tagged and stemmed documents in this directory, and reuse "
+            + "them on later runs over the same file with the same preprocessing")
+    public File casCacheDirectory = null;
+
+    @Option(
+        name = "--training-data-cache-dir",
+        usage = "Cache the extracted training data in this directory, and reuse it on later runs "
+            + "with the same corpus, preprocessing and features, e.g. when only the training "
+            + "arguments change")
+    public File trainingDataCacheDirectory = null;
+
+    @Option(
+        name = "--training-args",
+        usage = "Training arguments to be passed to the learner.  For multiple values specify "
+            + "--training-args for each - e.g. '--training-args --iterations --training-args 100'")
+    public List<String> trainingArguments = new ArrayList<String>();
+
+    @Option(
+        name = "--data-writer",
+        usage = "The class name of the sequence data writer, which determines the learner, e.g. "
+            + "com.cbsi.ner.classifier.PerceptronDataWriter for an averaged perceptron, "
+            + "com.cbsi.ner.classifier.BinaryPerceptronDataWriter for one trained by streaming "
+            + "its data from disk, or com.cbsi.ner.classifier.BinaryMalletCRFDataWriter (or "
+            + "CompressedBinaryMalletCRFDataWriter) for a Mallet CRF trained from compact binary data")
+    public String dataWriterClassName = MalletCRFStringOutcomeDataWriter.class.getName();
+
+    @Option(
+        name = "--extraction-threads",
+        usage = "Preprocess the documents and extract their features on this many threads, each "
+            + "writing the training data of a consecutive shard of the documents, then merge the "
+            + "shards; the training data is identical whatever the number of threads. Documents "
+            + "are not added to the --cas-cache-dir by parallel extraction")
+    public int extractionThreads = 1;
+
+    @Option(
+        name = "--threads",
+        usage = "Train the CRF with its likelihood computed on this many threads, instead of with "
+            + "Mallet's single-threaded trainer and the --training-args (0 uses Mallet's trainer)")
+    public int threads = 0;
+
+    @Option(name = "--iterations", usage = "The maximum number of training iterations, with --threads")
+    public int iterations = ThreadedCRFTrainer.DEFAULT_ITERATIONS;
+
+    @Option(
+        name = "--tolerance",
+        usage = "The relative change in likelihood at which training has converged, with --threads")
+    public double tolerance = ThreadedCRFTrainer.DEFAULT_TOLERANCE;
+
+    @Option(
+        name = "--gaussian-variance",
+        usage = "The variance of the Gaussian prior on the CRF weights, with --threads")
+    public double gaussianVariance = ThreadedCRFTrainer.DEFAULT_GAUSSIAN_VARIANCE;
   }
 
+  /**
+   * The classes that extract the chunker's features, which determine the training data as much as
+   * the chunker itself does.
+   */
+  private static final Class<?>[] FEATURE_CLASSES = new Class<?>[] {
+      CachedTextFeatureExtractor.class,
+      FeatureHasher.class,
+      HashedFeatureExtractor.class,
+      HashedFeatureSequence.class,
+      TokenFeatureTable.class,
+      TokenTextFeatureCache.class };
+
   public static void main(String[] args) throws Exception {
     Options options = new Options();
     options.parseOptions(args);
 
     // a reader that loads the the CONLL 2003 format train file
-    CollectionReaderDescription reader = Conll2003GoldReader.getDescription(options.trainFile.getAbsolutePath());
+    CollectionReaderDescription reader = Conll2003GoldReader.getDescription(
+        options.trainFile.getAbsolutePath(),
+        options.memoryMappedReader);
+    AnalysisEngineDescription preprocessing = NamedEntityChunker.getPreprocessingDescription();
 
-    // assemble the training pipeline
-    AggregateBuilder aggregate = new AggregateBuilder();
+    // the training data extracted before from the same corpus with the same features, if any;
+    // how the file is read and the size of the feature cache do not change the data, while the
+    // feature extractors and the data writer, which the chunker's description does not name, do
+    Fingerprint fingerprint = new Fingerprint();
+    fingerprint.addContents(options.trainFile);
+    fingerprint.addDescription(reader, Conll2003GoldReader.PARAM_MEMORY_MAPPED);
+    fingerprint.addDescription(preprocessing);
+    fingerprint.addDescription(
+        getChunkerDescription(options, options.modelDirectory),
+        DirectoryDataWriterFactory.PARAM_OUTPUT_DIRECTORY,
+        NamedEntityChunker.PARAM_TEXT_FEATURE_CACHE_SIZE);
+    for (Class<?> featureClass : FEATURE_CLASSES) {
+      fingerprint.addClass(featureClass.getName());
+    }
+    fingerprint.addClass(options.dataWriterClassName);
+    TrainingDataCache trainingDataCache = new TrainingDataCache(
+        options.trainingDataCacheDirectory,
+        fingerprint);
 
-    // an annotator that adds part-of-speech tags (so we can use them for features)
-    aggregate.add(PosTaggerAnnotator.getDescription());
-    
-    // an annotator that adds the stem of the token (so we can use them for features)
-    aggregate.add(DefaultSnowballStemmer.getDescription("English"));
+    if (trainingDataCache.isHit()) {
+      trainingDataCache.copyTo(options.modelDirectory);
+    } else {
+      File dataDirectory = trainingDataCache.getDataDirectory(options.modelDirectory);
+      extractTrainingData(options, reader, preprocessing, dataDirectory);
+      trainingDataCache.finishExtraction(options.modelDirectory);
+    }
 
-    // our NamedEntityChunker annotator, configured to write Mallet CRF training data
-    aggregate.add(AnalysisEngineFactory.createPrimitiveDescription(
+    // train a model on the training data
+    if (options.threads > 0) {
+      new ThreadedCRFTrainer(
+          options.threads,
+          options.iterations,
+          options.tolerance,
+          options.gaussianVariance).train(options.modelDirectory);
+    } else {
+      Train.main(
+          options.modelDirectory,
+          options.trainingArguments.toArray(new String[options.trainingArguments.size()]));
+    }
+
+    // export the model for fast loading
+    if (options.exportMappedModel) {
+      CompileCRFModel.compileMapped(
+          new File(options.modelDirectory, "model.jar"),
+          new File(options.modelDirectory, MappedCRFModel.FILE_NAME),
+          options.featureHashBits);
+    }
+  }
+
+  /**
+   * Run the preprocessing and the {@link NamedEntityChunker} over the training file, writing its
+   * training data to the given directory.
+   */
+  static void extractTrainingData(
+      Options options,
+      CollectionReaderDescription reader,
+      AnalysisEngineDescription preprocessing,
+      File dataDirectory) throws Exception {
+    // the cached documents, if this file has been preprocessed before
+    PreprocessedCasCache cache = new PreprocessedCasCache(
+        options.casCacheDirectory,
+        options.trainFile,
+        reader,
+        preprocessing);
+    if (options.extractionThreads > 1 && !cache.isHit()) {
+      extractInParallel(options, preprocessing, dataDirectory);
+    } else {
+      if (cache.isHit()) {
+        reader = cache.getCachedReaderDescription();
+      }
+
+      // assemble the training pipeline
+      AggregateBuilder aggregate = new AggregateBuilder();
+
+      // annotators that add part-of-speech tags and stems (so we can use them for features),
+      // unless they were already added to the cached documents
+      cache.addPreprocessing(aggregate);
+
+      // our NamedEntityChunker annotator, configured to write training data for the learner
+      aggregate.add(getChunkerDescription(options, dataDirectory));
+
+      // run the pipeline over the training corpus
+      SimplePipeline.runPipeline(reader, aggregate.createAggregateDescription());
+    }
+  }
+
+  /**
+   * Write the training data with one pipeline per thread, each over a consecutive shard of the
+   * documents and into its own directory, then merge the shards in document order.
+   */
+  private static void extractInParallel(
+      Options options,
+      AnalysisEngineDescription preprocessing,
+      File dataDirectory) throws Exception {
+    int threads = options.extractionThreads;
+    File shardsDirectory = new File(dataDirectory, "shards");
+    List<File> shardDirectories = new ArrayList<File>();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Void>> workers = new ArrayList<Future<Void>>();
+      for (int i = 0; i < threads; ++i) {
+        File shardDirectory = new File(shardsDirectory, String.valueOf(i));
+        shardDirectories.add(shardDirectory);
+
+        AggregateBuilder aggregate = new AggregateBuilder();
+        aggregate.add(preprocessing);
+        aggregate.add(getChunkerDescription(options, shardDirectory));
+        workers.add(executor.submit(new ExtractionWorker(
+            Conll2003GoldReader.getShardDescription(
+                options.trainFile.getAbsolutePath(),
+                options.memoryMappedReader,
+                i,
+                threads),
+            aggregate.createAggregateDescription())));
+      }
+      for (Future<Void> worker : workers) {
+        worker.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    TrainingDataShards.merge(shardDirectories, dataDirectory);
+    FileUtils.deleteDirectory(shardsDirectory);
+  }
+
+  /**
+   * Runs one shard's training data pipeline.
+   */
+  private static class ExtractionWorker implements Callable<Void> {
+
+    private CollectionReaderDescription reader;
+
+    private AnalysisEngineDescription aggregate;
+
+    public ExtractionWorker(CollectionReaderDescription reader, AnalysisEngineDescription aggregate) {
+      this.reader = reader;
+      this.aggregate = aggregate;
+    }
+
+    public Void call() throws Exception {
+      SimplePipeline.runPipeline(this.reader, this.aggregate);
+      return null;
+    }
+  }
+
+  private static AnalysisEngineDescription getChunkerDescription(
+      Options options,
+      File outputDirectory) throws ResourceInitializationException {
+    return AnalysisEngineFactory.createPrimitiveDescription(
         NamedEntityChunker.class,
         CleartkSequenceAnnotator.PARAM_IS_TRAINING,
         true,
         DirectoryDataWriterFactory.PARAM_OUTPUT_DIRECTORY,
-        options.modelDirectory,
+        outputDirectory,
         DefaultSequenceDataWriterFactory.PARAM_DATA_WRITER_CLASS_NAME,
-        MalletCRFStringOutcomeDataWriter.class));
-
-    // run the pipeline over the training corpus
-    SimplePipeline.runPipeline(reader, aggregate.createAggregateDescription());
-
-    // train a Mallet CRF model on the training data
-    Train.main(options.modelDirectory);
+        options.dataWriterClassName,
+        NamedEntityChunker.PARAM_FEATURE_HASH_BITS,
+        options.featureHashBits,
+        NamedEntityChunker.PARAM_TEXT_FEATURE_CACHE_SIZE,
+        options.textFeatureCacheSize);
   }
 
   /**
@@ -0,0 +1,161 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.cleartk.classifier.jar.JarClassifierBuilder;
+import org.cleartk.eval.AnnotationStatistics;
+import org.cleartk.util.Options_ImplBase;
+import org.kohsuke.args4j.Option;
+
+import com.cbsi.ner.classifier.PerceptronClassifierBuilder;
+import com.cbsi.ner.classifier.PerceptronDataWriter;
+import com.cbsi.ner.classifier.PerceptronModel;
+import com.cbsi.ner.classifier.PerceptronTrainer;
+import com.cbsi.ner.reader.Conll2003GoldReader;
+
+/**
+ * This class provides a main method that updates a trained averaged perceptron model (see
+ * {@link PerceptronDataWriter}) with a few newly annotated documents, instead of retraining it on
+ * the whole corpus. The new documents go through the usual preprocessing and feature extraction,
+ * and then the model's weights are refined by further perceptron epochs over the new documents
+ * only, adding any features and labels the model has not seen yet.
+ * 
+ * The held-out F1 of the model is printed before and after the update. The updated model.jar is
+ * first written to a candidate directory, and only replaces the model.jar in the model directory if
+ * its F1 has not dropped by more than --max-f1-drop. The replacement is a rename, so a
+ * {@link com.cbsi.ner.classifier.ReloadingModelRegistry} watching the directory picks it up as a
+ * whole.
+ * 
+ * Mallet CRF models cannot be updated this way; only perceptron models can.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class UpdateNamedEntityChunker {
+
+  public static class Options extends Options_ImplBase {
+    @Option(name = "--model-dir", usage = "The directory containing the model.jar to update")
+    public File modelDirectory = new File("target/chunking/ne-model-feature-test");
+
+    @Option(name = "--update-file", usage = "The Conll-annotated file of new documents")
+    public File updateFile;
+
+    @Option(name = "--held-out-file", usage = "The Conll-annotated file to measure F1 on")
+    public File heldOutFile = new File(
+        "src/main/resources/data/cbsi-ner-data/test/cmp_prod_conll2003.test");
+
+    @Option(name = "--iterations", usage = "The number of perceptron epochs over the new documents")
+    public int iterations = 5;
+
+    @Option(name = "--seed", usage = "The seed of the order the new documents are visited in")
+    public long seed = 42;
+
+    @Option(
+        name = "--max-f1-drop",
+        usage = "Keep the old model if the held-out F1 drops by more than this (negative to always update)")
+    public double maxF1Drop = 0.0;
+
+    @Option(
+        name = "--feature-hash-bits",
+        usage = "The number of feature hash bits the model was trained with (0 if not hashed)")
+    public int featureHashBits = 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    options.parseOptions(args);
+    if (options.updateFile == null) {
+      throw new IllegalArgumentException("expected an --update-file of new documents");
+    }
+    File modelJar = new File(options.modelDirectory, "model.jar");
+    File updateDirectory = new File(options.modelDirectory, "update");
+    File dataDirectory = new File(updateDirectory, "data");
+    File candidateDirectory = new File(updateDirectory, "candidate");
+    if (updateDirectory.exists()) {
+      FileUtils.deleteDirectory(updateDirectory);
+    }
+    candidateDirectory.mkdirs();
+
+    EvaluateNamedEntityChunker evaluator = new EvaluateNamedEntityChunker(
+        updateDirectory,
+        Arrays.<String> asList(),
+        options.featureHashBits);
+    evaluator.setDataWriterClassName(PerceptronDataWriter.class.getName());
+
+    // the held-out F1 of the current model
+    double f1Before = test(evaluator, options.heldOutFile, options.modelDirectory);
+
+    // extract the features of the new documents, exactly as for training
+    long start = System.nanoTime();
+    evaluator.writeTrainingData(
+        Conll2003GoldReader.getCollectionReader(options.updateFile.getAbsolutePath()),
+        dataDirectory);
+    JarClassifierBuilder<?> builder = JarClassifierBuilder.fromTrainingDirectory(dataDirectory);
+
+    // continue training the current model on the new documents
+    PerceptronModel model = PerceptronClassifierBuilder.readModel(modelJar);
+    PerceptronTrainer trainer = new PerceptronTrainer(model, options.seed);
+    trainer.addTrainingData(builder.getTrainingDataFile(dataDirectory));
+    PerceptronModel updatedModel = trainer.train(options.iterations);
+    File candidateJar = new File(candidateDirectory, "model.jar");
+    PerceptronClassifierBuilder.repackage(modelJar, updatedModel, candidateJar);
+    long updateTime = System.nanoTime() - start;
+    System.out.printf(
+        "updated on %d tokens in %.1f s: %d new features, %d new labels\n",
+        trainer.getNumTokens(),
+        updateTime / 1e9,
+        trainer.getNumNewFeatures(),
+        trainer.getNumNewLabels());
+
+    // the held-out F1 of the updated model
+    double f1After = test(evaluator, options.heldOutFile, candidateDirectory);
+    System.out.printf(
+        "held-out F1: %.4f before, %.4f after (%+.4f)\n",
+        f1Before,
+        f1After,
+        f1After - f1Before);
+
+    if (options.maxF1Drop >= 0 && f1Before - f1After > options.maxF1Drop) {
+      System.out.printf("F1 dropped by more than %.4f, keeping the old model\n", options.maxF1Drop);
+      System.exit(1);
+    }
+    if (!candidateJar.renameTo(modelJar)) {
+      throw new IllegalStateException("cannot rename " + candidateJar + " to " + modelJar);
+    }
+    FileUtils.deleteDirectory(updateDirectory);
+  }
+
+  private static double test(EvaluateNamedEntityChunker evaluator, File heldOutFile, File directory)
+      throws Exception {
+    AnnotationStatistics<String> stats = evaluator.test(
+        Conll2003GoldReader.getCollectionReader(heldOutFile.getAbsolutePath()),
+        directory);
+    return stats.f1();
+  }
+}
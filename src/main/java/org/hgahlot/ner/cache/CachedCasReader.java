@@ -0,0 +1,239 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+import org.apache.uima.util.ProgressImpl;
+import org.cleartk.util.ViewURIUtil;
+import org.uimafit.component.JCasCollectionReader_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.descriptor.SofaCapability;
+import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+
+/**
+ * Replays the documents of a {@link PreprocessedCasCache} file, as written by a
+ * {@link CasCacheWriter}. Each CAS is restored with all its views and annotations, exactly as it
+ * was after preprocessing.
+ * 
+ * The binary CAS form depends on the type system, so the reader checks that the pipeline's type
+ * system is the one the file was written with before restoring the first document.
+ * 
+ * The reader can replay only a range of the documents, or every document but a range, e.g. the
+ * test and training documents of a cross-validation fold. Skipped documents are not deserialized.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+@SofaCapability(outputSofas = ViewURIUtil.URI)
+public class CachedCasReader extends JCasCollectionReader_ImplBase {
+
+  public static final String PARAM_CACHE_FILE = ConfigurationParameterFactory.createConfigurationParameterName(
+      CachedCasReader.class,
+      "cacheFile");
+
+  @ConfigurationParameter(mandatory = true, description = "The cache file to replay")
+  private String cacheFile;
+
+  public static final String PARAM_BEGIN_DOCUMENT = ConfigurationParameterFactory.createConfigurationParameterName(
+      CachedCasReader.class,
+      "beginDocument");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "If not negative, the index of the first document of the range.",
+      defaultValue = "-1")
+  private int beginDocument;
+
+  public static final String PARAM_END_DOCUMENT = ConfigurationParameterFactory.createConfigurationParameterName(
+      CachedCasReader.class,
+      "endDocument");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "If not negative, the index after the last document of the range.",
+      defaultValue = "-1")
+  private int endDocument;
+
+  public static final String PARAM_EXCLUDE_RANGE = ConfigurationParameterFactory.createConfigurationParameterName(
+      CachedCasReader.class,
+      "excludeRange");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "If true, replay every document except those of the range, instead of only those.",
+      defaultValue = "false")
+  private boolean excludeRange;
+
+  private DataInputStream input;
+
+  private String typeSystemFingerprint;
+
+  private boolean typeSystemChecked;
+
+  private int nextLength;
+
+  private byte[] buffer;
+
+  private int documentCount;
+
+  private int nextDocument; // the index of the document whose length is nextLength
+
+  public static CollectionReaderDescription getDescription(File cacheFile)
+      throws ResourceInitializationException {
+    return CollectionReaderFactory.createDescription(
+        CachedCasReader.class,
+        PARAM_CACHE_FILE,
+        cacheFile.getPath());
+  }
+
+  /**
+   * @return a description of a reader that replays the documents from <code>begin</code> up to
+   *         <code>end</code>, or, if <code>exclude</code> is true, all the other documents
+   */
+  public static CollectionReaderDescription getDescription(
+      File cacheFile,
+      int begin,
+      int end,
+      boolean exclude) throws ResourceInitializationException {
+    return CollectionReaderFactory.createDescription(
+        CachedCasReader.class,
+        PARAM_CACHE_FILE,
+        cacheFile.getPath(),
+        PARAM_BEGIN_DOCUMENT,
+        begin,
+        PARAM_END_DOCUMENT,
+        end,
+        PARAM_EXCLUDE_RANGE,
+        exclude);
+  }
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    try {
+      this.input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+          new FileInputStream(this.cacheFile),
+          1 << 16)));
+      if (this.input.readInt() != PreprocessedCasCache.MAGIC) {
+        throw new IOException(this.cacheFile + " is not a preprocessed CAS cache");
+      }
+      int version = this.input.readInt();
+      if (version != PreprocessedCasCache.VERSION) {
+        throw new IOException(String.format(
+            "expected cache version %d, found %d in %s",
+            PreprocessedCasCache.VERSION,
+            version,
+            this.cacheFile));
+      }
+      this.typeSystemFingerprint = this.input.readUTF();
+      this.nextLength = this.input.readInt();
+      this.nextDocument = 0;
+      this.skipUnselected();
+    } catch (IOException e) {
+      throw new ResourceInitializationException(e);
+    }
+    this.typeSystemChecked = this.typeSystemFingerprint.length() == 0;
+    this.buffer = new byte[1 << 16];
+    this.documentCount = 0;
+  }
+
+  @Override
+  public void getNext(JCas jCas) throws IOException, CollectionException {
+    if (!this.typeSystemChecked) {
+      String fingerprint = PreprocessedCasCache.getTypeSystemFingerprint(jCas.getTypeSystem());
+      if (!fingerprint.equals(this.typeSystemFingerprint)) {
+        throw new CollectionException(new IOException(String.format(
+            "%s was written with a different type system; delete it to rebuild it",
+            this.cacheFile)));
+      }
+      this.typeSystemChecked = true;
+    }
+    if (this.buffer.length < this.nextLength) {
+      this.buffer = new byte[Math.max(this.nextLength, this.buffer.length * 2)];
+    }
+    this.input.readFully(this.buffer, 0, this.nextLength);
+    Serialization.deserializeCAS(
+        jCas.getCas(),
+        new ByteArrayInputStream(this.buffer, 0, this.nextLength));
+    ++this.documentCount;
+    this.nextLength = this.input.readInt();
+    ++this.nextDocument;
+    this.skipUnselected();
+  }
+
+  /**
+   * Move past the documents outside the selection, up to the next selected one (or the end).
+   */
+  private void skipUnselected() throws IOException {
+    while (this.nextLength >= 0 && !this.isSelected(this.nextDocument)) {
+      int remaining = this.nextLength;
+      while (remaining > 0) {
+        int skipped = this.input.skipBytes(remaining);
+        if (skipped <= 0) {
+          throw new EOFException("truncated cache file " + this.cacheFile);
+        }
+        remaining -= skipped;
+      }
+      this.nextLength = this.input.readInt();
+      ++this.nextDocument;
+    }
+  }
+
+  private boolean isSelected(int document) {
+    boolean inRange = (this.beginDocument < 0 || document >= this.beginDocument)
+        && (this.endDocument < 0 || document < this.endDocument);
+    return inRange != this.excludeRange;
+  }
+
+  public boolean hasNext() throws IOException, CollectionException {
+    return this.nextLength >= 0;
+  }
+
+  public Progress[] getProgress() {
+    // the number of documents is only known at the end of the file
+    return new Progress[] { new ProgressImpl(this.documentCount, -1, Progress.ENTITIES) };
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.input.close();
+  }
+}
@@ -0,0 +1,172 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+
+/**
+ * Writes every CAS it processes, with all its views, to a {@link PreprocessedCasCache} file, to be
+ * replayed by a {@link CachedCasReader}.
+ * 
+ * The file is a gzipped stream of: a magic number and version, a fingerprint of the type system,
+ * then each CAS in UIMA's binary form, preceded by its length, and finally a length of -1. It is
+ * written under a temporary name and only renamed once the whole collection has been processed, so
+ * an interrupted run never leaves a partial cache behind.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class CasCacheWriter extends JCasAnnotator_ImplBase {
+
+  public static final String PARAM_CACHE_FILE = ConfigurationParameterFactory.createConfigurationParameterName(
+      CasCacheWriter.class,
+      "cacheFile");
+
+  @ConfigurationParameter(mandatory = true, description = "The cache file to write")
+  private String cacheFile;
+
+  private File file;
+
+  private File temporaryFile;
+
+  private DataOutputStream output;
+
+  private ByteArrayOutputStream buffer;
+
+  private boolean headerWritten;
+
+  private int documentCount;
+
+  public static AnalysisEngineDescription getDescription(File cacheFile)
+      throws ResourceInitializationException {
+    return AnalysisEngineFactory.createPrimitiveDescription(
+        CasCacheWriter.class,
+        PARAM_CACHE_FILE,
+        cacheFile.getPath());
+  }
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    this.file = new File(this.cacheFile);
+    this.temporaryFile = new File(this.cacheFile + ".tmp");
+    File directory = this.file.getAbsoluteFile().getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new ResourceInitializationException(new IOException("cannot create " + directory));
+    }
+    try {
+      this.output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+          new FileOutputStream(this.temporaryFile),
+          1 << 16)));
+    } catch (IOException e) {
+      throw new ResourceInitializationException(e);
+    }
+    this.buffer = new ByteArrayOutputStream();
+    this.headerWritten = false;
+    this.documentCount = 0;
+  }
+
+  @Override
+  public void process(JCas jCas) throws AnalysisEngineProcessException {
+    CAS cas = jCas.getCas();
+    try {
+      if (!this.headerWritten) {
+        this.writeHeader(PreprocessedCasCache.getTypeSystemFingerprint(cas.getTypeSystem()));
+      }
+      this.buffer.reset();
+      Serialization.serializeCAS(cas, this.buffer);
+      this.output.writeInt(this.buffer.size());
+      this.buffer.writeTo(this.output);
+    } catch (IOException e) {
+      throw new AnalysisEngineProcessException(e);
+    }
+    ++this.documentCount;
+  }
+
+  @Override
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    super.collectionProcessComplete();
+    try {
+      if (!this.headerWritten) {
+        this.writeHeader("");
+      }
+      this.output.writeInt(-1);
+      this.output.close();
+      this.output = null;
+      if (this.file.exists() && !this.file.delete()) {
+        throw new IOException("cannot replace " + this.file);
+      }
+      if (!this.temporaryFile.renameTo(this.file)) {
+        throw new IOException("cannot rename " + this.temporaryFile + " to " + this.file);
+      }
+    } catch (IOException e) {
+      throw new AnalysisEngineProcessException(e);
+    }
+    this.getContext().getLogger().log(
+        Level.INFO,
+        String.format("cached %d documents in %s", this.documentCount, this.file));
+  }
+
+  @Override
+  public void destroy() {
+    // the collection was not completed, so the cache must not be used
+    if (this.output != null) {
+      try {
+        this.output.close();
+      } catch (IOException e) {
+        // the file is deleted anyway
+      }
+      this.output = null;
+      this.temporaryFile.delete();
+    }
+    super.destroy();
+  }
+
+  private void writeHeader(String typeSystemFingerprint) throws IOException {
+    this.output.writeInt(PreprocessedCasCache.MAGIC);
+    this.output.writeInt(PreprocessedCasCache.VERSION);
+    this.output.writeUTF(typeSystemFingerprint);
+    this.headerWritten = true;
+  }
+}
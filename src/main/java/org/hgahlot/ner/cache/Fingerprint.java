@@ -0,0 +1,180 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.uima.resource.ResourceCreationSpecifier;
+import org.apache.uima.util.XMLizable;
+import org.xml.sax.SAXException;
+
+/**
+ * A SHA-1 over everything that determines the output of a pipeline, used to name cached results so
+ * that they are only found again when nothing that produced them has changed.
+ * 
+ * Components are added by their XML descriptions, which include their parameter settings and type
+ * systems, and by the jar (or class file) every implementation class named in those descriptions is
+ * loaded from, by path, length and modification time, so that upgrading a component or the models
+ * bundled with it also changes the fingerprint.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class Fingerprint {
+
+  private static final Pattern IMPLEMENTATION_NAME = Pattern.compile(
+      "<(?:annotatorI|i)mplementationName>\\s*([^<\\s]+)\\s*</");
+
+  private MessageDigest digest;
+
+  private String hex;
+
+  public Fingerprint() {
+    try {
+      this.digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public Fingerprint add(String string) {
+    this.checkOpen();
+    try {
+      this.digest.update(string.getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+    this.digest.update((byte) 0);
+    return this;
+  }
+
+  /**
+   * Add the entire contents of a file.
+   */
+  public Fingerprint addContents(File file) throws IOException {
+    this.checkOpen();
+    InputStream input = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[1 << 16];
+      int count;
+      while ((count = input.read(buffer)) != -1) {
+        this.digest.update(buffer, 0, count);
+      }
+    } finally {
+      input.close();
+    }
+    this.digest.update((byte) 0);
+    return this;
+  }
+
+  /**
+   * Add a description or metadata, along with the classes it names.
+   */
+  public Fingerprint addDescription(XMLizable description) throws IOException {
+    StringWriter writer = new StringWriter();
+    try {
+      description.toXML(writer);
+    } catch (SAXException e) {
+      throw new IOException(e);
+    }
+    String xml = writer.toString();
+    this.add(xml);
+    Matcher matcher = IMPLEMENTATION_NAME.matcher(xml);
+    while (matcher.find()) {
+      this.addClass(matcher.group(1));
+    }
+    return this;
+  }
+
+  /**
+   * Add a description, ignoring the values of some of its parameters, e.g. an output directory that
+   * does not change what the component produces.
+   */
+  public Fingerprint addDescription(
+      ResourceCreationSpecifier description,
+      String... ignoredParameters) throws IOException {
+    ResourceCreationSpecifier copy = (ResourceCreationSpecifier) description.clone();
+    for (String ignoredParameter : ignoredParameters) {
+      copy.getMetaData().getConfigurationParameterSettings().setParameterValue(ignoredParameter, null);
+    }
+    return this.addDescription(copy);
+  }
+
+  /**
+   * Add the path, length and modification time of the jar or class file the class is loaded from.
+   */
+  public Fingerprint addClass(String className) throws IOException {
+    ClassLoader classLoader = Fingerprint.class.getClassLoader();
+    URL url = classLoader.getResource(className.replace('.', '/') + ".class");
+    if (url == null) {
+      return this.add(className + " not found");
+    }
+    if (url.getProtocol().equals("jar")) {
+      url = ((JarURLConnection) url.openConnection()).getJarFileURL();
+    }
+    if (!url.getProtocol().equals("file")) {
+      return this.add(url.toString());
+    }
+    File file;
+    try {
+      file = new File(url.toURI());
+    } catch (URISyntaxException e) {
+      file = new File(url.getPath());
+    }
+    return this.add(String.format("%s %d %d", file.getPath(), file.length(), file.lastModified()));
+  }
+
+  private void checkOpen() {
+    if (this.hex != null) {
+      throw new IllegalStateException("the fingerprint is already complete");
+    }
+  }
+
+  /**
+   * @return the fingerprint in hexadecimal; nothing more can be added afterwards
+   */
+  public String toHex() {
+    if (this.hex == null) {
+      StringBuilder builder = new StringBuilder();
+      for (byte b : this.digest.digest()) {
+        builder.append(String.format("%02x", b & 0xff));
+      }
+      this.hex = builder.toString();
+    }
+    return this.hex;
+  }
+}
@@ -0,0 +1,247 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.ConfigurationParameterSettings;
+import org.apache.uima.resource.metadata.NameValuePair;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.factory.CollectionReaderFactory;
+
+/**
+ * A directory of preprocessed documents, so that the annotators that prepare a corpus for the
+ * {@link com.cbsi.ner.NamedEntityChunker} (part-of-speech tagging and stemming) run only once per
+ * corpus rather than once per training or evaluation run.
+ * 
+ * Each cache file holds the documents of one input file as read by one reader and processed by one
+ * preprocessing aggregate, in UIMA's binary CAS form, gzipped. The file is named by a
+ * {@link Fingerprint} of the contents of the input file and of the reader and the preprocessing
+ * annotators, so a stale cache file is never read; it is just no longer found.
+ * 
+ * On a {@link #isHit() hit}, a {@link CachedCasReader} replays the documents in place of the
+ * original reader and preprocessing. On a miss, {@link #addPreprocessing(AggregateBuilder)} adds the
+ * preprocessing followed by a {@link CasCacheWriter}, which saves the documents for next time. A
+ * cache without a directory is disabled: it is never hit and writes nothing.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class PreprocessedCasCache {
+
+  public static final String FILE_EXTENSION = ".cas.gz";
+
+  static final int MAGIC = 0x43434153; // "CCAS"
+
+  static final int VERSION = 1;
+
+  private File cacheFile;
+
+  private boolean hit;
+
+  private AnalysisEngineDescription preprocessing;
+
+  /**
+   * @param cacheDirectory
+   *          the directory of the cache files, or null to disable the cache
+   * @param inputFile
+   *          the file the reader reads
+   * @param reader
+   *          the reader of the input file
+   * @param preprocessing
+   *          the annotators whose results are cached
+   */
+  public PreprocessedCasCache(
+      File cacheDirectory,
+      File inputFile,
+      CollectionReaderDescription reader,
+      AnalysisEngineDescription preprocessing) throws IOException {
+    this(
+        cacheDirectory,
+        inputFile,
+        reader.getImplementationName(),
+        reader.getMetaData().getConfigurationParameterSettings(),
+        preprocessing);
+  }
+
+  /**
+   * As {@link #PreprocessedCasCache(File, File, CollectionReaderDescription, AnalysisEngineDescription)}
+   * for a reader that has already been instantiated. Either way, the reader is keyed by its class
+   * and its parameter settings, so a reader and its description share their cache files.
+   */
+  public PreprocessedCasCache(
+      File cacheDirectory,
+      File inputFile,
+      CollectionReader reader,
+      AnalysisEngineDescription preprocessing) throws IOException {
+    this(
+        cacheDirectory,
+        inputFile,
+        reader.getClass().getName(),
+        reader.getMetaData().getConfigurationParameterSettings(),
+        preprocessing);
+  }
+
+  private PreprocessedCasCache(
+      File cacheDirectory,
+      File inputFile,
+      String readerClassName,
+      ConfigurationParameterSettings readerSettings,
+      AnalysisEngineDescription preprocessing) throws IOException {
+    this.preprocessing = preprocessing;
+    if (cacheDirectory != null) {
+      Fingerprint fingerprint = new Fingerprint();
+      fingerprint.add("version " + VERSION);
+      fingerprint.addContents(inputFile);
+      fingerprint.addClass(readerClassName);
+      for (String setting : getSettings(readerSettings)) {
+        fingerprint.add(setting);
+      }
+      fingerprint.addDescription(preprocessing);
+      this.cacheFile = new File(cacheDirectory, fingerprint.toHex() + FILE_EXTENSION);
+      this.hit = this.cacheFile.isFile();
+    }
+  }
+
+  /**
+   * @return the file the documents are cached in, or null if the cache is disabled
+   */
+  public File getCacheFile() {
+    return this.cacheFile;
+  }
+
+  /**
+   * @return true if the documents were already cached when this cache was created
+   */
+  public boolean isHit() {
+    return this.hit;
+  }
+
+  /**
+   * @return a description of a reader that replays the cached documents; only valid on a hit
+   */
+  public CollectionReaderDescription getCachedReaderDescription()
+      throws ResourceInitializationException {
+    if (!this.hit) {
+      throw new IllegalStateException("no cached documents in " + this.cacheFile);
+    }
+    return CachedCasReader.getDescription(this.cacheFile);
+  }
+
+  /**
+   * @return a description of a reader that replays the cached documents from <code>begin</code> up
+   *         to <code>end</code>, or, if <code>exclude</code> is true, all the other documents; only
+   *         valid on a hit
+   */
+  public CollectionReaderDescription getCachedReaderDescription(int begin, int end, boolean exclude)
+      throws ResourceInitializationException {
+    if (!this.hit) {
+      throw new IllegalStateException("no cached documents in " + this.cacheFile);
+    }
+    return CachedCasReader.getDescription(this.cacheFile, begin, end, exclude);
+  }
+
+  /**
+   * @return a reader that replays the cached documents; only valid on a hit
+   */
+  public CollectionReader createCachedReader() throws ResourceInitializationException {
+    return CollectionReaderFactory.createCollectionReader(this.getCachedReaderDescription());
+  }
+
+  /**
+   * Add what the pipeline needs to run in place of the cached documents: nothing on a hit, or else
+   * the preprocessing annotators, followed by a writer that caches their results (unless the cache
+   * is disabled).
+   */
+  public void addPreprocessing(AggregateBuilder builder) throws ResourceInitializationException {
+    if (!this.hit) {
+      builder.add(this.preprocessing);
+      AnalysisEngineDescription writer = this.getWriterDescription();
+      if (writer != null) {
+        builder.add(writer);
+      }
+    }
+  }
+
+  /**
+   * @return a description of the writer that caches the preprocessed documents, or null on a hit or
+   *         if the cache is disabled; for pipelines that run the preprocessing annotators themselves
+   */
+  public AnalysisEngineDescription getWriterDescription() throws ResourceInitializationException {
+    if (this.hit || this.cacheFile == null) {
+      return null;
+    }
+    return CasCacheWriter.getDescription(this.cacheFile);
+  }
+
+  /**
+   * @return the parameter settings as name=value strings, in the order of their names
+   */
+  private static List<String> getSettings(ConfigurationParameterSettings settings) {
+    List<String> strings = new ArrayList<String>();
+    for (NameValuePair pair : settings.getParameterSettings()) {
+      Object value = pair.getValue();
+      if (value instanceof Object[]) {
+        value = Arrays.asList((Object[]) value);
+      }
+      if (value != null) {
+        strings.add(pair.getName() + "=" + value);
+      }
+    }
+    Collections.sort(strings);
+    return strings;
+  }
+
+  /**
+   * @return a hash of the types and features of the type system, in the order of their codes, which
+   *         the binary CAS form depends on
+   */
+  static String getTypeSystemFingerprint(TypeSystem typeSystem) {
+    Fingerprint fingerprint = new Fingerprint();
+    Iterator<Type> types = typeSystem.getTypeIterator();
+    while (types.hasNext()) {
+      Type type = types.next();
+      fingerprint.add(type.getName());
+      List<Feature> features = type.getFeatures();
+      for (Feature feature : features) {
+        fingerprint.add(feature.getName() + ":" + feature.getRange().getName());
+      }
+    }
+    return fingerprint.toHex();
+  }
+}
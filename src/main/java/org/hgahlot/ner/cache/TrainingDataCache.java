@@ -0,0 +1,115 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A directory of extracted training data, so that runs that only change the training arguments
+ * (e.g. the number of iterations or the Gaussian variance) skip straight to training.
+ * 
+ * Each entry is a directory holding everything a data writer left behind for
+ * {@link org.cleartk.classifier.jar.Train}: the training data file and the serialized classifier
+ * builder and encoders. It is named by a {@link Fingerprint} of the corpus and of every component
+ * that produced the features, so the entry is only found again if none of them changed.
+ * 
+ * Data is written to a temporary directory and only becomes an entry once extraction has finished,
+ * after which it is copied into the model directory for training. A cache without a directory is
+ * disabled: it is never hit and data is written straight into the model directory.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class TrainingDataCache {
+
+  private File entryDirectory;
+
+  private File temporaryDirectory;
+
+  private boolean hit;
+
+  /**
+   * @param cacheDirectory
+   *          the directory of the entries, or null to disable the cache
+   * @param fingerprint
+   *          the fingerprint of the corpus and the feature extraction pipeline
+   */
+  public TrainingDataCache(File cacheDirectory, Fingerprint fingerprint) {
+    if (cacheDirectory != null) {
+      this.entryDirectory = new File(cacheDirectory, fingerprint.toHex());
+      this.temporaryDirectory = new File(cacheDirectory, fingerprint.toHex() + ".tmp");
+      this.hit = this.entryDirectory.isDirectory();
+    }
+  }
+
+  /**
+   * @return true if the training data was already cached when this cache was created
+   */
+  public boolean isHit() {
+    return this.hit;
+  }
+
+  /**
+   * @return the directory the data writer should write to: a temporary directory that
+   *         {@link #finishExtraction(File)} turns into an entry, or the model directory itself if
+   *         the cache is disabled
+   */
+  public File getDataDirectory(File modelDirectory) throws IOException {
+    if (this.entryDirectory == null) {
+      return modelDirectory;
+    }
+    if (this.temporaryDirectory.exists()) {
+      FileUtils.deleteDirectory(this.temporaryDirectory);
+    }
+    return this.temporaryDirectory;
+  }
+
+  /**
+   * Save the data written to {@link #getDataDirectory(File)} as an entry and copy it into the model
+   * directory.
+   */
+  public void finishExtraction(File modelDirectory) throws IOException {
+    if (this.entryDirectory == null) {
+      return;
+    }
+    if (this.entryDirectory.exists()) {
+      FileUtils.deleteDirectory(this.entryDirectory);
+    }
+    if (!this.temporaryDirectory.renameTo(this.entryDirectory)) {
+      throw new IOException("cannot rename " + this.temporaryDirectory + " to " + this.entryDirectory);
+    }
+    this.copyTo(modelDirectory);
+  }
+
+  /**
+   * Copy the cached data into the model directory, replacing any data already there.
+   */
+  public void copyTo(File modelDirectory) throws IOException {
+    FileUtils.copyDirectory(this.entryDirectory, modelDirectory);
+  }
+}
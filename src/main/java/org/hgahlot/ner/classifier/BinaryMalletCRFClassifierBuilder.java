@@ -0,0 +1,82 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.File;
+
+import org.cleartk.classifier.mallet.MalletCRFStringOutcomeClassifierBuilder;
+
+/**
+ * Trains a Mallet CRF from the {@link BinarySequenceFile} written by a
+ * {@link BinaryMalletCRFDataWriter}, building Mallet's instances directly from the feature ids
+ * rather than parsing a text file. Training is done by a {@link ThreadedCRFTrainer}, and the model
+ * is packaged and loaded exactly as by the {@link MalletCRFStringOutcomeClassifierBuilder}.
+ * 
+ * The training arguments are a subset of SimpleTagger's:
+ * <ul>
+ * <li><code>--threads N</code>: the number of threads computing the likelihood (default 1)
+ * <li><code>--iterations N</code>: the maximum number of L-BFGS iterations (default
+ * {@value ThreadedCRFTrainer#DEFAULT_ITERATIONS})
+ * <li><code>--tolerance X</code>: the relative change in likelihood under which L-BFGS has
+ * converged (default {@value ThreadedCRFTrainer#DEFAULT_TOLERANCE})
+ * <li><code>--gaussian-variance X</code>: the variance of the Gaussian prior on the weights
+ * (default {@value ThreadedCRFTrainer#DEFAULT_GAUSSIAN_VARIANCE})
+ * </ul>
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BinaryMalletCRFClassifierBuilder extends MalletCRFStringOutcomeClassifierBuilder {
+
+  @Override
+  public void trainClassifier(File dir, String... args) throws Exception {
+    int threads = 1;
+    int iterations = ThreadedCRFTrainer.DEFAULT_ITERATIONS;
+    double tolerance = ThreadedCRFTrainer.DEFAULT_TOLERANCE;
+    double gaussianVariance = ThreadedCRFTrainer.DEFAULT_GAUSSIAN_VARIANCE;
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("--threads") && i + 1 < args.length) {
+        threads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--iterations") && i + 1 < args.length) {
+        iterations = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--tolerance") && i + 1 < args.length) {
+        tolerance = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("--gaussian-variance") && i + 1 < args.length) {
+        gaussianVariance = Double.parseDouble(args[++i]);
+      } else {
+        throw new IllegalArgumentException("unrecognized CRF training argument: " + args[i]);
+      }
+    }
+
+    ThreadedCRFTrainer trainer = new ThreadedCRFTrainer(
+        threads,
+        iterations,
+        tolerance,
+        gaussianVariance);
+    trainer.train(
+        ThreadedCRFTrainer.readTrainingData(dir, this),
+        new File(dir, ThreadedCRFTrainer.MODEL_FILE_NAME));
+  }
+}
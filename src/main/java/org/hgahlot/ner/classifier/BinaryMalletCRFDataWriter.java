@@ -0,0 +1,54 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes training data for a {@link BinaryMalletCRFClassifierBuilder} as a
+ * {@link BinarySequenceFile}. It can be used in place of the
+ * {@link org.cleartk.classifier.mallet.MalletCRFStringOutcomeDataWriter} with the same features, and
+ * produces the same kind of model.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BinaryMalletCRFDataWriter extends
+    BinarySequenceDataWriter_ImplBase<BinaryMalletCRFClassifierBuilder> {
+
+  public BinaryMalletCRFDataWriter(File outputDirectory) throws IOException {
+    this(outputDirectory, false);
+  }
+
+  protected BinaryMalletCRFDataWriter(File outputDirectory, boolean compress) throws IOException {
+    super(outputDirectory, compress);
+  }
+
+  @Override
+  protected BinaryMalletCRFClassifierBuilder newClassifierBuilder() {
+    return new BinaryMalletCRFClassifierBuilder();
+  }
+}
@@ -0,0 +1,104 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.SequenceClassifier;
+import org.cleartk.classifier.encoder.features.NameNumber;
+import org.cleartk.classifier.encoder.features.NameNumberFeaturesEncoder;
+import org.cleartk.classifier.encoder.outcome.StringToStringOutcomeEncoder;
+import org.cleartk.classifier.jar.SequenceClassifierBuilder;
+import org.cleartk.classifier.jar.SequenceDataWriter_ImplBase;
+
+/**
+ * Writes sequence training data as a {@link BinarySequenceFile} instead of as text, so that each
+ * feature name is stored once, in the dictionary, rather than on every token it occurs on. Only the
+ * current sequence and the dictionary are kept in memory while writing.
+ * 
+ * The features are encoded by name only, as for the Mallet CRF, so a builder can rebuild exactly the
+ * training data it would have read from text. The text training data file of the superclass is left
+ * empty.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public abstract class BinarySequenceDataWriter_ImplBase<BUILDER extends SequenceClassifierBuilder<? extends SequenceClassifier<String>>>
+    extends SequenceDataWriter_ImplBase<BUILDER, List<NameNumber>, String, String> {
+
+  public static final String TRAINING_DATA_FILE_NAME = "training-data.bin";
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private BinarySequenceFile.Writer writer;
+
+  public BinarySequenceDataWriter_ImplBase(File outputDirectory, boolean compress)
+      throws IOException {
+    super(outputDirectory);
+    this.setFeaturesEncoder(new NameNumberFeaturesEncoder(false, false));
+    this.setOutcomeEncoder(new StringToStringOutcomeEncoder());
+    this.writer = new BinarySequenceFile.Writer(
+        getTrainingDataFile(outputDirectory),
+        BUFFER_SIZE,
+        compress);
+  }
+
+  /**
+   * @return the binary file the training data of a directory is written to
+   */
+  public static File getTrainingDataFile(File outputDirectory) {
+    return new File(outputDirectory, TRAINING_DATA_FILE_NAME);
+  }
+
+  @Override
+  public void writeEncoded(List<NameNumber> features, String outcome) {
+    for (NameNumber nameNumber : features) {
+      this.writer.addFeature(nameNumber.name);
+    }
+    this.writer.endToken(outcome);
+  }
+
+  @Override
+  public void writeEndSequence() throws CleartkProcessingException {
+    try {
+      this.writer.endSequence();
+    } catch (IOException e) {
+      throw new CleartkProcessingException(e);
+    }
+  }
+
+  @Override
+  public void finish() throws CleartkProcessingException {
+    try {
+      this.writer.close();
+    } catch (IOException e) {
+      throw new CleartkProcessingException(e);
+    }
+    super.finish();
+  }
+}
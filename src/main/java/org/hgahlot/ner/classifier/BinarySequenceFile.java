@@ -0,0 +1,453 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Training sequences with their features and labels replaced by integer ids, so that they take a
+ * fraction of the space of their names and can be streamed back one sequence at a time.
+ * 
+ * The data is kept in two files: the sequences themselves, and a dictionary (the same path with the
+ * extension {@value #DICTIONARY_EXTENSION}) of the feature and label names, which is written once
+ * all sequences have been. Both files start with the same header:
+ * <ul>
+ * <li>a 4-byte big-endian magic number, "BSEQ" for the sequences and "BDIC" for the dictionary
+ * <li>a 4-byte big-endian version, currently {@value #VERSION}
+ * <li>a flags byte; if bit 0 ({@value #FLAG_GZIP}) is set, everything after the header is gzipped
+ * </ul>
+ * All other numbers are unsigned varints: 7 bits per byte, least significant first, with the high
+ * bit set on every byte but the last. After the header, the dictionary holds the number of labels,
+ * the labels, the number of features and the feature names, each name as a 2-byte big-endian
+ * length followed by its characters in modified UTF-8 (as written by
+ * {@link DataOutputStream#writeUTF(String)}). The id of a label or feature is its position in the
+ * dictionary, from 0.
+ * 
+ * After the header, the sequence file holds, for each sequence, its number of tokens and then, for
+ * each token, its label id, its number of features, and its feature ids in increasing order, the
+ * first as is and each following one as its difference from the previous one. A sequence of length
+ * 0 ends the file.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class BinarySequenceFile {
+
+  public static final String DICTIONARY_EXTENSION = ".dict";
+
+  public static final int VERSION = 2;
+
+  public static final int FLAG_GZIP = 1;
+
+  private static final int MAGIC = 0x42534551; // "BSEQ"
+
+  private static final int DICTIONARY_MAGIC = 0x42444943; // "BDIC"
+
+  public static File getDictionaryFile(File file) {
+    return new File(file.getPath() + DICTIONARY_EXTENSION);
+  }
+
+  /**
+   * Writes sequences, assigning ids to feature and label names as they are first seen. Only the
+   * current sequence and the dictionary are kept in memory.
+   */
+  public static class Writer {
+
+    private File file;
+
+    private boolean compress;
+
+    private DataOutputStream output;
+
+    private Map<String, Integer> featureIds;
+
+    private List<String> featureNames;
+
+    private Map<String, Integer> labelIds;
+
+    private List<String> labels;
+
+    // the sequence being written
+    private int[] ids;
+
+    private int numIds;
+
+    private int[] offsets;
+
+    private int[] sequenceLabels;
+
+    private int length;
+
+    public Writer(File file, int bufferSize) throws IOException {
+      this(file, bufferSize, false);
+    }
+
+    /**
+     * @param bufferSize
+     *          the number of bytes buffered before they are written to the file
+     * @param compress
+     *          whether to gzip the sequences and the dictionary
+     */
+    public Writer(File file, int bufferSize, boolean compress) throws IOException {
+      this.file = file;
+      this.compress = compress;
+      this.output = openOutput(file, MAGIC, compress, bufferSize);
+      this.featureIds = new HashMap<String, Integer>();
+      this.featureNames = new ArrayList<String>();
+      this.labelIds = new HashMap<String, Integer>();
+      this.labels = new ArrayList<String>();
+      this.ids = new int[1024];
+      this.offsets = new int[64];
+      this.sequenceLabels = new int[64];
+    }
+
+    /**
+     * Add a feature to the current token.
+     */
+    public void addFeature(String name) {
+      Integer id = this.featureIds.get(name);
+      if (id == null) {
+        id = this.featureNames.size();
+        this.featureIds.put(name, id);
+        this.featureNames.add(name);
+      }
+      if (this.numIds == this.ids.length) {
+        this.ids = grow(this.ids);
+      }
+      this.ids[this.numIds] = id;
+      ++this.numIds;
+    }
+
+    /**
+     * Finish the current token, whose features are the ones added since the previous token.
+     */
+    public void endToken(String label) {
+      Integer id = this.labelIds.get(label);
+      if (id == null) {
+        id = this.labels.size();
+        this.labelIds.put(label, id);
+        this.labels.add(label);
+      }
+      if (this.length + 1 >= this.offsets.length) {
+        this.offsets = grow(this.offsets);
+        this.sequenceLabels = grow(this.sequenceLabels);
+      }
+      this.sequenceLabels[this.length] = id;
+      ++this.length;
+      this.offsets[this.length] = this.numIds;
+    }
+
+    /**
+     * Write the current sequence, whose tokens are the ones ended since the previous sequence.
+     */
+    public void endSequence() throws IOException {
+      if (this.length > 0) {
+        writeVarint(this.output, this.length);
+        for (int i = 0; i < this.length; ++i) {
+          int begin = this.offsets[i];
+          int end = this.offsets[i + 1];
+          writeVarint(this.output, this.sequenceLabels[i]);
+          writeVarint(this.output, end - begin);
+          Arrays.sort(this.ids, begin, end);
+          int previous = 0;
+          for (int k = begin; k < end; ++k) {
+            writeVarint(this.output, this.ids[k] - previous);
+            previous = this.ids[k];
+          }
+        }
+      }
+      this.numIds = 0;
+      this.length = 0;
+    }
+
+    /**
+     * Finish the sequence file, and write the dictionary.
+     */
+    public void close() throws IOException {
+      this.endSequence();
+      writeVarint(this.output, 0);
+      this.output.close();
+
+      DataOutputStream dictionary = openOutput(
+          getDictionaryFile(this.file),
+          DICTIONARY_MAGIC,
+          this.compress,
+          1 << 16);
+      try {
+        writeVarint(dictionary, this.labels.size());
+        for (String label : this.labels) {
+          dictionary.writeUTF(label);
+        }
+        writeVarint(dictionary, this.featureNames.size());
+        for (String name : this.featureNames) {
+          dictionary.writeUTF(name);
+        }
+      } finally {
+        dictionary.close();
+      }
+    }
+  }
+
+  /**
+   * Reads the sequences of a file back, one at a time, into arrays that are reused from one
+   * sequence to the next.
+   */
+  public static class Reader {
+
+    private DataInputStream input;
+
+    private boolean compressed;
+
+    private String[] labels;
+
+    private String[] featureNames;
+
+    /**
+     * The feature ids of the current sequence: those of token <code>i</code> are
+     * <code>ids[offsets[i]]</code> up to <code>ids[offsets[i + 1]]</code>.
+     */
+    public int[] ids = new int[1024];
+
+    public int[] offsets = new int[64];
+
+    /**
+     * The label ids of the tokens of the current sequence.
+     */
+    public int[] sequenceLabels = new int[64];
+
+    /**
+     * The number of tokens of the current sequence.
+     */
+    public int length;
+
+    public Reader(File file, int bufferSize) throws IOException {
+      DataInputStream dictionary = openInput(
+          getDictionaryFile(file),
+          DICTIONARY_MAGIC,
+          1 << 16);
+      try {
+        this.labels = new String[readVarint(dictionary)];
+        for (int i = 0; i < this.labels.length; ++i) {
+          this.labels[i] = dictionary.readUTF();
+        }
+        this.featureNames = new String[readVarint(dictionary)];
+        for (int i = 0; i < this.featureNames.length; ++i) {
+          this.featureNames[i] = dictionary.readUTF();
+        }
+      } finally {
+        dictionary.close();
+      }
+      this.input = openInput(file, MAGIC, bufferSize);
+      this.compressed = isCompressed(file);
+    }
+
+    /**
+     * @return true if the sequences are gzipped
+     */
+    public boolean isCompressed() {
+      return this.compressed;
+    }
+
+    public String[] getLabels() {
+      return this.labels;
+    }
+
+    public String[] getFeatureNames() {
+      return this.featureNames;
+    }
+
+    /**
+     * Read the next sequence.
+     * 
+     * @return false if there are no more sequences
+     */
+    public boolean next() throws IOException {
+      int length = readVarint(this.input);
+      if (length == 0) {
+        this.length = 0;
+        return false;
+      }
+      if (length + 1 > this.offsets.length) {
+        this.offsets = new int[Math.max(length + 1, this.offsets.length * 2)];
+        this.sequenceLabels = new int[this.offsets.length];
+      }
+      int numIds = 0;
+      this.offsets[0] = 0;
+      for (int i = 0; i < length; ++i) {
+        this.sequenceLabels[i] = readVarint(this.input);
+        int count = readVarint(this.input);
+        while (numIds + count > this.ids.length) {
+          this.ids = grow(this.ids);
+        }
+        int id = 0;
+        for (int k = 0; k < count; ++k) {
+          id += readVarint(this.input);
+          this.ids[numIds] = id;
+          ++numIds;
+        }
+        this.offsets[i + 1] = numIds;
+      }
+      this.length = length;
+      return true;
+    }
+
+    public void close() throws IOException {
+      this.input.close();
+    }
+  }
+
+  /**
+   * Write the sequences of several files, in order, into one file, with a dictionary of all their
+   * features and labels. Ids are assigned in the order the names are first seen in the sequences,
+   * so the result is exactly the file that a single writer would have written for the same
+   * sequences. It is compressed if the first file is.
+   */
+  public static void merge(List<File> files, File file, int bufferSize) throws IOException {
+    Writer writer = null;
+    try {
+      for (File part : files) {
+        Reader reader = new Reader(part, bufferSize);
+        try {
+          if (writer == null) {
+            writer = new Writer(file, bufferSize, reader.isCompressed());
+          }
+          String[] featureNames = reader.getFeatureNames();
+          String[] labels = reader.getLabels();
+          while (reader.next()) {
+            for (int i = 0; i < reader.length; ++i) {
+              for (int k = reader.offsets[i]; k < reader.offsets[i + 1]; ++k) {
+                writer.addFeature(featureNames[reader.ids[k]]);
+              }
+              writer.endToken(labels[reader.sequenceLabels[i]]);
+            }
+            writer.endSequence();
+          }
+        } finally {
+          reader.close();
+        }
+      }
+    } finally {
+      if (writer != null) {
+        writer.close();
+      }
+    }
+  }
+
+  private static boolean isCompressed(File file) throws IOException {
+    DataInputStream header = new DataInputStream(new FileInputStream(file));
+    try {
+      header.readInt();
+      header.readInt();
+      return (header.readByte() & FLAG_GZIP) != 0;
+    } finally {
+      header.close();
+    }
+  }
+
+  private static DataOutputStream openOutput(File file, int magic, boolean compress, int bufferSize)
+      throws IOException {
+    OutputStream output = new BufferedOutputStream(new FileOutputStream(file), bufferSize);
+    DataOutputStream header = new DataOutputStream(output);
+    header.writeInt(magic);
+    header.writeInt(VERSION);
+    header.writeByte(compress ? FLAG_GZIP : 0);
+    if (compress) {
+      output = new BufferedOutputStream(new GZIPOutputStream(output), bufferSize);
+    }
+    return new DataOutputStream(output);
+  }
+
+  private static DataInputStream openInput(File file, int magic, int bufferSize)
+      throws IOException {
+    InputStream input = new BufferedInputStream(new FileInputStream(file), bufferSize);
+    DataInputStream header = new DataInputStream(input);
+    try {
+      if (header.readInt() != magic) {
+        throw new IOException("not a binary sequence file: " + file);
+      }
+      int version = header.readInt();
+      if (version != VERSION) {
+        throw new IOException(String.format(
+            "expected binary sequence file version %d, found %d in %s",
+            VERSION,
+            version,
+            file));
+      }
+      if ((header.readByte() & FLAG_GZIP) != 0) {
+        input = new BufferedInputStream(new GZIPInputStream(input), bufferSize);
+      }
+    } catch (EOFException e) {
+      input.close();
+      throw new IOException("truncated binary sequence file: " + file, e);
+    } catch (IOException e) {
+      input.close();
+      throw e;
+    }
+    return new DataInputStream(input);
+  }
+
+  private static void writeVarint(DataOutputStream output, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      output.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    output.writeByte(value);
+  }
+
+  private static int readVarint(DataInputStream input) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = input.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("malformed varint in binary sequence file");
+  }
+
+  private static int[] grow(int[] array) {
+    int[] grown = new int[array.length * 2];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+}
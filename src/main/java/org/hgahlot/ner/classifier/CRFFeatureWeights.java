@@ -0,0 +1,63 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+/**
+ * The feature dictionary and feature weights of a compiled CRF, as used by the
+ * {@link CompiledCRFClassifier} decoder. They are either held in the arrays of {@link CRFTables}
+ * or read directly from a memory-mapped {@link MappedCRFModel} file.
+ * 
+ * Implementations must be safe to use from several threads at once.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public interface CRFFeatureWeights {
+
+  /**
+   * @return the number of features in the dictionary
+   */
+  public int numFeatures();
+
+  /**
+   * @return the index of the named feature, or -1 if the model has no such feature
+   */
+  public int getFeatureIndex(String name);
+
+  /**
+   * @return true if the model was trained on hashed features
+   */
+  public boolean hasHashedFeatures();
+
+  /**
+   * @return the index of the feature for the given hash id, or -1 if the model has no such feature
+   */
+  public int getHashedFeatureIndex(int id);
+
+  /**
+   * Add the weights of a feature to the scores of the weight sets it has weights for.
+   */
+  public void addWeights(int feature, double[] weightSetScores);
+}
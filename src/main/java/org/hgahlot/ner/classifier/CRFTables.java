@@ -0,0 +1,399 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.SparseVector;
+
+/**
+ * The weights and transitions of a trained Mallet {@link CRF}, flattened into primitive arrays so
+ * that Viterbi decoding needs no Mallet objects.
+ * 
+ * <ul>
+ * <li>Features: the weights of feature <code>f</code> are <code>featureWeights[k]</code> for the
+ * weight sets <code>featureWeightSets[k]</code>, for <code>k</code> from
+ * <code>featureOffsets[f]</code> up to <code>featureOffsets[f + 1]</code>.
+ * <li>Transitions: the transitions leaving state <code>s</code> are <code>t</code> from
+ * <code>transitionOffsets[s]</code> up to <code>transitionOffsets[s + 1]</code>. The weight of a
+ * transition on a token is <code>transitionDefaults[t]</code> plus the feature weights of the
+ * token for each of the weight sets <code>transitionWeightSets[k]</code>, for <code>k</code> from
+ * <code>transitionWeightOffsets[t]</code> up to <code>transitionWeightOffsets[t + 1]</code>.
+ * <li>Hashed features: if the model was trained on hashed features, <code>hashedFeatures[id]</code>
+ * is the feature index of hash id <code>id</code>, or -1 if the model has no such feature.
+ * </ul>
+ * 
+ * Weights are kept as doubles so that the sums come out exactly as Mallet computes them.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class CRFTables {
+
+  private static final int MAGIC = 0x43524654; // "CRFT"
+
+  private static final int VERSION = 1;
+
+  public String[] featureNames;
+
+  public int[] featureOffsets;
+
+  public int[] featureWeightSets;
+
+  public double[] featureWeights;
+
+  public int numWeightSets;
+
+  public String[] stateNames;
+
+  public double[] initialWeights;
+
+  public double[] finalWeights;
+
+  public int[] transitionOffsets;
+
+  public int[] transitionSources;
+
+  public int[] transitionDestinations;
+
+  public String[] transitionLabels;
+
+  public double[] transitionDefaults;
+
+  public int[] transitionWeightOffsets;
+
+  public int[] transitionWeightSets;
+
+  public int hashBits;
+
+  public int[] hashedFeatures;
+
+  public int numFeatures() {
+    return this.featureNames.length;
+  }
+
+  public int numStates() {
+    return this.stateNames.length;
+  }
+
+  public int numTransitions() {
+    return this.transitionDestinations.length;
+  }
+
+  /**
+   * Flatten the weights and transitions of a trained CRF.
+   */
+  public static CRFTables fromCRF(CRF crf) {
+    CRFTables tables = new CRFTables();
+
+    // the feature dictionary
+    Alphabet alphabet = crf.getInputAlphabet();
+    int numFeatures = alphabet.size();
+    tables.featureNames = new String[numFeatures];
+    for (int f = 0; f < numFeatures; ++f) {
+      tables.featureNames[f] = alphabet.lookupObject(f).toString();
+    }
+
+    // the feature weights, regrouped by feature instead of by weight set
+    SparseVector[] weights = crf.getWeights();
+    double[] defaultWeights = crf.getDefaultWeights();
+    tables.numWeightSets = weights.length;
+    tables.featureOffsets = new int[numFeatures + 1];
+    for (SparseVector vector : weights) {
+      for (int loc = 0; loc < vector.numLocations(); ++loc) {
+        if (vector.valueAtLocation(loc) != 0.0) {
+          ++tables.featureOffsets[vector.indexAtLocation(loc) + 1];
+        }
+      }
+    }
+    for (int f = 0; f < numFeatures; ++f) {
+      tables.featureOffsets[f + 1] += tables.featureOffsets[f];
+    }
+    tables.featureWeightSets = new int[tables.featureOffsets[numFeatures]];
+    tables.featureWeights = new double[tables.featureOffsets[numFeatures]];
+    int[] next = tables.featureOffsets.clone();
+    for (int w = 0; w < weights.length; ++w) {
+      SparseVector vector = weights[w];
+      for (int loc = 0; loc < vector.numLocations(); ++loc) {
+        double value = vector.valueAtLocation(loc);
+        if (value != 0.0) {
+          int k = next[vector.indexAtLocation(loc)]++;
+          tables.featureWeightSets[k] = w;
+          tables.featureWeights[k] = value;
+        }
+      }
+    }
+
+    // the states and the transitions between them
+    int numStates = crf.numStates();
+    tables.stateNames = new String[numStates];
+    tables.initialWeights = new double[numStates];
+    tables.finalWeights = new double[numStates];
+    tables.transitionOffsets = new int[numStates + 1];
+    List<Integer> sources = new ArrayList<Integer>();
+    List<Integer> destinations = new ArrayList<Integer>();
+    List<String> labels = new ArrayList<String>();
+    List<Double> defaults = new ArrayList<Double>();
+    List<Integer> weightOffsets = new ArrayList<Integer>();
+    List<Integer> weightSets = new ArrayList<Integer>();
+    for (int s = 0; s < numStates; ++s) {
+      CRF.State state = (CRF.State) crf.getState(s);
+      tables.stateNames[s] = state.getName();
+      tables.initialWeights[s] = state.getInitialWeight();
+      tables.finalWeights[s] = state.getFinalWeight();
+      tables.transitionOffsets[s] = destinations.size();
+      for (int d = 0; d < state.numDestinations(); ++d) {
+        sources.add(s);
+        destinations.add(state.getDestinationState(d).getIndex());
+        labels.add(state.getLabelName(d));
+        weightOffsets.add(weightSets.size());
+        double defaultWeight = 0.0;
+        for (String weightName : state.getWeightNames(d)) {
+          int w = crf.getWeightsIndex(weightName);
+          weightSets.add(w);
+          defaultWeight += defaultWeights[w];
+        }
+        defaults.add(defaultWeight);
+      }
+    }
+    tables.transitionOffsets[numStates] = destinations.size();
+    weightOffsets.add(weightSets.size());
+    tables.transitionSources = toIntArray(sources);
+    tables.transitionDestinations = toIntArray(destinations);
+    tables.transitionLabels = labels.toArray(new String[labels.size()]);
+    tables.transitionDefaults = new double[defaults.size()];
+    for (int t = 0; t < tables.transitionDefaults.length; ++t) {
+      tables.transitionDefaults[t] = defaults.get(t);
+    }
+    tables.transitionWeightOffsets = toIntArray(weightOffsets);
+    tables.transitionWeightSets = toIntArray(weightSets);
+    return tables;
+  }
+
+  /**
+   * Map hash ids to feature indexes, for a model trained on hashed features.
+   * 
+   * @param bits
+   *          the number of hash bits the model was trained with
+   * @param hashedFeatureNames
+   *          the feature name (as found in the feature dictionary) of each hash id
+   */
+  public void setHashedFeatures(int bits, String[] hashedFeatureNames) {
+    Map<String, Integer> indexes = this.createFeatureIndexes();
+    this.hashBits = bits;
+    this.hashedFeatures = new int[hashedFeatureNames.length];
+    for (int id = 0; id < hashedFeatureNames.length; ++id) {
+      Integer index = indexes.get(hashedFeatureNames[id]);
+      this.hashedFeatures[id] = index == null ? -1 : index;
+    }
+  }
+
+  /**
+   * @return a map from feature name to feature index
+   */
+  public Map<String, Integer> createFeatureIndexes() {
+    Map<String, Integer> indexes = new HashMap<String, Integer>();
+    for (int f = 0; f < this.featureNames.length; ++f) {
+      indexes.put(this.featureNames[f], f);
+    }
+    return indexes;
+  }
+
+  /**
+   * @return the feature dictionary and weights of these tables, for the decoder
+   */
+  public CRFFeatureWeights createFeatureWeights() {
+    return new ArrayFeatureWeights(this);
+  }
+
+  public void write(DataOutput output) throws IOException {
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    writeStrings(output, this.featureNames);
+    writeInts(output, this.featureOffsets);
+    writeInts(output, this.featureWeightSets);
+    writeDoubles(output, this.featureWeights);
+    this.writeTransitions(output);
+    if (this.hashedFeatures != null) {
+      writeInts(output, this.hashedFeatures);
+    }
+  }
+
+  /**
+   * Write everything but the features: the states, the transitions between them and the number of
+   * hash bits.
+   */
+  void writeTransitions(DataOutput output) throws IOException {
+    output.writeInt(this.numWeightSets);
+    writeStrings(output, this.stateNames);
+    writeDoubles(output, this.initialWeights);
+    writeDoubles(output, this.finalWeights);
+    writeInts(output, this.transitionOffsets);
+    writeInts(output, this.transitionSources);
+    writeInts(output, this.transitionDestinations);
+    writeStrings(output, this.transitionLabels);
+    writeDoubles(output, this.transitionDefaults);
+    writeInts(output, this.transitionWeightOffsets);
+    writeInts(output, this.transitionWeightSets);
+    output.writeInt(this.hashBits);
+  }
+
+  public static CRFTables read(DataInput input) throws IOException {
+    if (input.readInt() != MAGIC) {
+      throw new IOException("not a CRF tables file");
+    }
+    int version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException(String.format("expected CRF tables version %d, found %d", VERSION, version));
+    }
+    CRFTables tables = new CRFTables();
+    tables.featureNames = readStrings(input);
+    tables.featureOffsets = readInts(input);
+    tables.featureWeightSets = readInts(input);
+    tables.featureWeights = readDoubles(input);
+    readTransitions(input, tables);
+    if (tables.hashBits > 0) {
+      tables.hashedFeatures = readInts(input);
+    }
+    return tables;
+  }
+
+  /**
+   * Read what {@link #writeTransitions(DataOutput)} wrote into the given tables.
+   */
+  static void readTransitions(DataInput input, CRFTables tables) throws IOException {
+    tables.numWeightSets = input.readInt();
+    tables.stateNames = readStrings(input);
+    tables.initialWeights = readDoubles(input);
+    tables.finalWeights = readDoubles(input);
+    tables.transitionOffsets = readInts(input);
+    tables.transitionSources = readInts(input);
+    tables.transitionDestinations = readInts(input);
+    tables.transitionLabels = readStrings(input);
+    tables.transitionDefaults = readDoubles(input);
+    tables.transitionWeightOffsets = readInts(input);
+    tables.transitionWeightSets = readInts(input);
+    tables.hashBits = input.readInt();
+  }
+
+  private static class ArrayFeatureWeights implements CRFFeatureWeights {
+
+    private CRFTables tables;
+
+    private Map<String, Integer> featureIndexes;
+
+    public ArrayFeatureWeights(CRFTables tables) {
+      this.tables = tables;
+      this.featureIndexes = tables.createFeatureIndexes();
+    }
+
+    public int numFeatures() {
+      return this.tables.numFeatures();
+    }
+
+    public int getFeatureIndex(String name) {
+      Integer index = this.featureIndexes.get(name);
+      return index == null ? -1 : index;
+    }
+
+    public boolean hasHashedFeatures() {
+      return this.tables.hashedFeatures != null;
+    }
+
+    public int getHashedFeatureIndex(int id) {
+      return this.tables.hashedFeatures[id];
+    }
+
+    public void addWeights(int feature, double[] weightSetScores) {
+      int[] weightSets = this.tables.featureWeightSets;
+      double[] weights = this.tables.featureWeights;
+      int end = this.tables.featureOffsets[feature + 1];
+      for (int k = this.tables.featureOffsets[feature]; k < end; ++k) {
+        weightSetScores[weightSets[k]] += weights[k];
+      }
+    }
+  }
+
+  private static int[] toIntArray(List<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; ++i) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+  private static void writeStrings(DataOutput output, String[] strings) throws IOException {
+    output.writeInt(strings.length);
+    for (String string : strings) {
+      output.writeUTF(string);
+    }
+  }
+
+  private static String[] readStrings(DataInput input) throws IOException {
+    String[] strings = new String[input.readInt()];
+    for (int i = 0; i < strings.length; ++i) {
+      strings[i] = input.readUTF();
+    }
+    return strings;
+  }
+
+  private static void writeInts(DataOutput output, int[] ints) throws IOException {
+    output.writeInt(ints.length);
+    for (int value : ints) {
+      output.writeInt(value);
+    }
+  }
+
+  private static int[] readInts(DataInput input) throws IOException {
+    int[] ints = new int[input.readInt()];
+    for (int i = 0; i < ints.length; ++i) {
+      ints[i] = input.readInt();
+    }
+    return ints;
+  }
+
+  private static void writeDoubles(DataOutput output, double[] doubles) throws IOException {
+    output.writeInt(doubles.length);
+    for (double value : doubles) {
+      output.writeDouble(value);
+    }
+  }
+
+  private static double[] readDoubles(DataInput input) throws IOException {
+    double[] doubles = new double[input.readInt()];
+    for (int i = 0; i < doubles.length; ++i) {
+      doubles[i] = input.readDouble();
+    }
+    return doubles;
+  }
+}
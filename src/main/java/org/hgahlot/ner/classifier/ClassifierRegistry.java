@@ -0,0 +1,213 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.JarInputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.cleartk.classifier.SequenceClassifier;
+import org.cleartk.classifier.jar.JarClassifierBuilder;
+
+/**
+ * A process-wide registry of sequence classifiers loaded from model.jar files, so that any number
+ * of annotators using the same model share a single classifier instead of each deserializing its
+ * own copy.
+ * 
+ * Models are keyed by the canonical path of the jar, and remembered with a checksum of its
+ * contents. A jar that is replaced on disk is loaded afresh, and the registry forgets the model it
+ * replaces, so that only the annotators still holding it keep it alive. When several threads ask
+ * for the same model at once, it is loaded by one of them while the others wait.
+ * 
+ * Only classifiers known to be safe to call concurrently are shared: {@link CompiledCRFClassifier}
+ * and {@link PerceptronClassifier}, which keep their working memory in per-thread buffers. Any
+ * other classifier (such as Mallet's CRF, whose classification runs the input pipe over its data
+ * alphabet) is handed to the first request only, and every further request loads its own copy,
+ * so sharing saves no memory for such a model; a warning says so the first time it happens.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class ClassifierRegistry {
+
+  private static final Logger LOGGER = Logger.getLogger(ClassifierRegistry.class.getName());
+
+  private static final ConcurrentMap<String, Entry> CLASSIFIERS = new ConcurrentHashMap<String, Entry>();
+
+  /**
+   * @return the shared classifier for the given model.jar, loading it if this is the first request,
+   *         or, for a classifier that cannot be shared, a classifier of its own
+   */
+  public static SequenceClassifier<String> getClassifier(final File jarFile) throws IOException {
+    String path = jarFile.getCanonicalPath();
+    long checksum = getChecksum(jarFile);
+    Entry entry;
+    boolean created = false;
+    while (true) {
+      Entry existing = CLASSIFIERS.get(path);
+      if (existing != null && existing.checksum == checksum) {
+        entry = existing;
+        break;
+      }
+      // a new jar, or a replaced one, whose entry takes the place of the old one
+      Entry newEntry = new Entry(jarFile, checksum);
+      if (existing == null
+          ? CLASSIFIERS.putIfAbsent(path, newEntry) == null
+          : CLASSIFIERS.replace(path, existing, newEntry)) {
+        entry = newEntry;
+        created = true;
+        break;
+      }
+    }
+    if (created) {
+      entry.task.run();
+    }
+
+    SequenceClassifier<String> classifier;
+    try {
+      classifier = entry.task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      // forget the failed load so that a later request can try again
+      CLASSIFIERS.remove(path, entry);
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+    if (isShareable(classifier) || entry.claimed.compareAndSet(false, true)) {
+      return classifier;
+    }
+    if (entry.warned.compareAndSet(false, true)) {
+      LOGGER.log(Level.WARNING, String.format(
+          "%s in %s cannot be shared between threads, so each annotator loads its own copy; only "
+              + "compiled CRF and perceptron models are shared",
+          classifier.getClass().getSimpleName(),
+          path));
+    }
+    return loadClassifier(jarFile);
+  }
+
+  /**
+   * @return true if the classifier may be called by several threads at once
+   */
+  public static boolean isShareable(SequenceClassifier<String> classifier) {
+    return classifier instanceof CompiledCRFClassifier || classifier instanceof PerceptronClassifier;
+  }
+
+  /**
+   * @return the number of models currently loaded
+   */
+  public static int size() {
+    return CLASSIFIERS.size();
+  }
+
+  /**
+   * Forget all loaded models. Annotators that already hold a classifier keep using it.
+   */
+  public static void clear() {
+    CLASSIFIERS.clear();
+  }
+
+  /**
+   * Load a new (unshared) classifier from a model.jar.
+   */
+  @SuppressWarnings("unchecked")
+  public static SequenceClassifier<String> loadClassifier(File jarFile) throws IOException {
+    JarClassifierBuilder<?> builder;
+    JarInputStream jarStream = new JarInputStream(new BufferedInputStream(new FileInputStream(
+        jarFile)));
+    try {
+      builder = JarClassifierBuilder.fromManifest(jarStream.getManifest());
+    } finally {
+      jarStream.close();
+    }
+
+    // the builder reads the jar from the start, including the manifest
+    InputStream stream = new BufferedInputStream(new FileInputStream(jarFile));
+    try {
+      return (SequenceClassifier<String>) builder.loadClassifier(stream);
+    } finally {
+      stream.close();
+    }
+  }
+
+  private static long getChecksum(File jarFile) throws IOException {
+    CRC32 checksum = new CRC32();
+    InputStream stream = new BufferedInputStream(new FileInputStream(jarFile));
+    try {
+      byte[] buffer = new byte[64 * 1024];
+      int count;
+      while ((count = stream.read(buffer)) != -1) {
+        checksum.update(buffer, 0, count);
+      }
+    } finally {
+      stream.close();
+    }
+    return checksum.getValue();
+  }
+
+  /**
+   * The model loaded from one version of a jar.
+   */
+  private static class Entry {
+
+    public final long checksum;
+
+    public final FutureTask<SequenceClassifier<String>> task;
+
+    // whether the loaded classifier has been handed out, if it cannot be shared
+    public final AtomicBoolean claimed;
+
+    // whether a copy has been loaded because the classifier cannot be shared
+    public final AtomicBoolean warned;
+
+    public Entry(final File jarFile, long checksum) {
+      this.checksum = checksum;
+      this.task = new FutureTask<SequenceClassifier<String>>(
+          new Callable<SequenceClassifier<String>>() {
+            public SequenceClassifier<String> call() throws Exception {
+              return loadClassifier(jarFile);
+            }
+          });
+      this.claimed = new AtomicBoolean(false);
+      this.warned = new AtomicBoolean(false);
+    }
+  }
+}
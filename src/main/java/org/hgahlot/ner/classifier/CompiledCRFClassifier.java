@@ -0,0 +1,288 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.SequenceClassifier_ImplBase;
+import org.cleartk.classifier.encoder.features.FeaturesEncoder;
+import org.cleartk.classifier.encoder.features.NameNumber;
+import org.cleartk.classifier.encoder.outcome.OutcomeEncoder;
+
+import com.cbsi.ner.feature.HashedFeatureSequence;
+
+/**
+ * A Viterbi decoder over the {@link CRFTables} of a Mallet CRF, producing the same labels as the
+ * Mallet CRF classifier it was compiled from.
+ * 
+ * All the working memory of the decoder is kept in per-thread scratch buffers that only grow when a
+ * longer sequence than any seen before arrives. When classifying hashed features, the only
+ * allocation per sequence is the returned list. {@link Feature} lists still go through the features
+ * encoder, which allocates the encoded names of every token, so only the scoring and the Viterbi
+ * search of that path are free of allocation. The classifier itself is immutable and may be shared
+ * between threads.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class CompiledCRFClassifier extends SequenceClassifier_ImplBase<List<NameNumber>, String, String>
+    implements HashedSequenceClassifier {
+
+  private CRFTables tables;
+
+  private CRFFeatureWeights featureWeights;
+
+  private String[] transitionOutcomes;
+
+  private ThreadLocal<Scratch> scratch;
+
+  public CompiledCRFClassifier(
+      FeaturesEncoder<List<NameNumber>> featuresEncoder,
+      OutcomeEncoder<String, String> outcomeEncoder,
+      CRFTables tables) throws CleartkProcessingException {
+    this(featuresEncoder, outcomeEncoder, tables, tables.createFeatureWeights());
+  }
+
+  /**
+   * @param tables
+   *          the states and transitions of the CRF; its feature arrays are not used
+   * @param featureWeights
+   *          the feature dictionary and feature weights of the CRF
+   */
+  public CompiledCRFClassifier(
+      FeaturesEncoder<List<NameNumber>> featuresEncoder,
+      OutcomeEncoder<String, String> outcomeEncoder,
+      CRFTables tables,
+      CRFFeatureWeights featureWeights) throws CleartkProcessingException {
+    super(featuresEncoder, outcomeEncoder);
+    this.tables = tables;
+    this.featureWeights = featureWeights;
+    this.transitionOutcomes = new String[tables.numTransitions()];
+    for (int t = 0; t < this.transitionOutcomes.length; ++t) {
+      this.transitionOutcomes[t] = outcomeEncoder.decode(tables.transitionLabels[t]);
+    }
+    this.scratch = new ThreadLocal<Scratch>() {
+      @Override
+      protected Scratch initialValue() {
+        return new Scratch(
+            CompiledCRFClassifier.this.tables,
+            CompiledCRFClassifier.this.featureWeights);
+      }
+    };
+  }
+
+  public CRFTables getTables() {
+    return this.tables;
+  }
+
+  public int getHashBits() {
+    return this.tables.hashBits;
+  }
+
+  public List<String> classify(List<List<Feature>> features) throws CleartkProcessingException {
+    Scratch scratch = this.scratch.get();
+    scratch.start(features.size());
+    for (int i = 0; i < features.size(); ++i) {
+      scratch.startToken();
+      for (NameNumber nameNumber : this.featuresEncoder.encodeAll(features.get(i))) {
+        int index = this.featureWeights.getFeatureIndex(nameNumber.name);
+        if (index >= 0) {
+          scratch.addFeature(index);
+        }
+      }
+      scratch.endToken(i);
+    }
+    return this.decode(scratch, features.size());
+  }
+
+  public List<String> classify(HashedFeatureSequence features) throws CleartkProcessingException {
+    if (!this.featureWeights.hasHashedFeatures()) {
+      throw new CleartkProcessingException(new IllegalStateException(
+          "model was not trained on hashed features"));
+    }
+    Scratch scratch = this.scratch.get();
+    scratch.start(features.size());
+    for (int i = 0; i < features.size(); ++i) {
+      scratch.startToken();
+      for (int k = features.begin(i); k < features.end(i); ++k) {
+        int index = this.featureWeights.getHashedFeatureIndex(features.id(k));
+        if (index >= 0) {
+          scratch.addFeature(index);
+        }
+      }
+      scratch.endToken(i);
+    }
+    return this.decode(scratch, features.size());
+  }
+
+  private List<String> decode(Scratch scratch, int length) {
+    List<String> outcomes = new ArrayList<String>(length);
+    if (length == 0) {
+      return outcomes;
+    }
+    int[] transitions = scratch.viterbi(length);
+    for (int i = 0; i < length; ++i) {
+      outcomes.add(this.transitionOutcomes[transitions[i]]);
+    }
+    return outcomes;
+  }
+
+  /**
+   * The working memory of the decoder for one thread.
+   */
+  private static class Scratch {
+
+    private CRFTables tables;
+
+    private CRFFeatureWeights featureWeights;
+
+    private int numStates;
+
+    // the summed feature weights of the current token, per weight set
+    private double[] weightSetScores;
+
+    // the token at which each feature was last added, so that repeated features count once
+    private int[] featureStamps;
+
+    private int stamp;
+
+    // the weight of each transition, per token: token * numTransitions + transition
+    private double[] transitionScores;
+
+    // the best path weight into each state, per token: token * numStates + state
+    private double[] pathScores;
+
+    // the transition on the best path into each state, per token: token * numStates + state
+    private int[] backPointers;
+
+    // the transitions of the best path, per token
+    private int[] path;
+
+    public Scratch(CRFTables tables, CRFFeatureWeights featureWeights) {
+      this.tables = tables;
+      this.featureWeights = featureWeights;
+      this.numStates = tables.numStates();
+      this.weightSetScores = new double[tables.numWeightSets];
+      this.featureStamps = new int[featureWeights.numFeatures()];
+      this.stamp = 0;
+      this.ensureCapacity(32);
+    }
+
+    private void ensureCapacity(int length) {
+      if (this.path != null && this.path.length >= length) {
+        return;
+      }
+      int capacity = Math.max(length, this.path == null ? 0 : this.path.length * 2);
+      this.transitionScores = new double[capacity * this.tables.numTransitions()];
+      this.pathScores = new double[(capacity + 1) * this.numStates];
+      this.backPointers = new int[(capacity + 1) * this.numStates];
+      this.path = new int[capacity];
+    }
+
+    public void start(int length) {
+      this.ensureCapacity(length);
+    }
+
+    public void startToken() {
+      Arrays.fill(this.weightSetScores, 0.0);
+      ++this.stamp;
+      if (this.stamp == 0) {
+        // the stamp wrapped around, so old stamps could be mistaken for the current one
+        Arrays.fill(this.featureStamps, 0);
+        this.stamp = 1;
+      }
+    }
+
+    public void addFeature(int feature) {
+      if (this.featureStamps[feature] == this.stamp) {
+        return;
+      }
+      this.featureStamps[feature] = this.stamp;
+      this.featureWeights.addWeights(feature, this.weightSetScores);
+    }
+
+    public void endToken(int token) {
+      int numTransitions = this.tables.numTransitions();
+      int offset = token * numTransitions;
+      for (int t = 0; t < numTransitions; ++t) {
+        double score = this.tables.transitionDefaults[t];
+        for (int k = this.tables.transitionWeightOffsets[t]; k < this.tables.transitionWeightOffsets[t + 1]; ++k) {
+          score += this.weightSetScores[this.tables.transitionWeightSets[k]];
+        }
+        this.transitionScores[offset + t] = score;
+      }
+    }
+
+    /**
+     * @return the transition taken at each token on the highest weight path
+     */
+    public int[] viterbi(int length) {
+      int numStates = this.numStates;
+      int numTransitions = this.tables.numTransitions();
+      System.arraycopy(this.tables.initialWeights, 0, this.pathScores, 0, numStates);
+      for (int i = 0; i < length; ++i) {
+        int from = i * numStates;
+        int to = from + numStates;
+        Arrays.fill(this.pathScores, to, to + numStates, Double.NEGATIVE_INFINITY);
+        for (int s = 0; s < numStates; ++s) {
+          double sourceScore = this.pathScores[from + s];
+          if (sourceScore == Double.NEGATIVE_INFINITY) {
+            continue;
+          }
+          for (int t = this.tables.transitionOffsets[s]; t < this.tables.transitionOffsets[s + 1]; ++t) {
+            double score = sourceScore + this.transitionScores[i * numTransitions + t];
+            int d = to + this.tables.transitionDestinations[t];
+            if (score > this.pathScores[d]) {
+              this.pathScores[d] = score;
+              this.backPointers[d] = t;
+            }
+          }
+        }
+      }
+
+      // pick the best final state, and follow the back pointers from there
+      int last = length * numStates;
+      int state = 0;
+      double best = Double.NEGATIVE_INFINITY;
+      for (int s = 0; s < numStates; ++s) {
+        double score = this.pathScores[last + s] + this.tables.finalWeights[s];
+        if (score > best) {
+          best = score;
+          state = s;
+        }
+      }
+      for (int i = length - 1; i >= 0; --i) {
+        int t = this.backPointers[(i + 1) * numStates + state];
+        this.path[i] = t;
+        state = this.tables.transitionSources[t];
+      }
+      return this.path;
+    }
+  }
+}
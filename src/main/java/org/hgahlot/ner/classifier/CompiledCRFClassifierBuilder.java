@@ -0,0 +1,79 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.jar.JarInputStream;
+
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.encoder.features.NameNumber;
+import org.cleartk.classifier.jar.JarStreams;
+import org.cleartk.classifier.jar.SequenceClassifierBuilder_ImplBase;
+
+/**
+ * Loads a {@link CompiledCRFClassifier} from a model.jar written by
+ * {@link com.cbsi.ner.CompileCRFModel}.
+ * 
+ * Compiled models can only be created from a trained Mallet CRF, so
+ * {@link #trainClassifier(File, String...)} is not supported.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class CompiledCRFClassifierBuilder extends
+    SequenceClassifierBuilder_ImplBase<CompiledCRFClassifier, List<NameNumber>, String, String> {
+
+  /**
+   * The name of the jar entry holding the {@link CRFTables}.
+   */
+  public static final String TABLES_FILE_NAME = "model.crftables";
+
+  private CRFTables tables;
+
+  @Override
+  public void trainClassifier(File dir, String... args) throws Exception {
+    throw new UnsupportedOperationException("compiled CRF models are created by CompileCRFModel");
+  }
+
+  @Override
+  protected void unpackageClassifier(JarInputStream modelStream) throws IOException {
+    super.unpackageClassifier(modelStream);
+    JarStreams.getNextJarEntry(modelStream, TABLES_FILE_NAME);
+    this.tables = CRFTables.read(new DataInputStream(new BufferedInputStream(modelStream)));
+  }
+
+  @Override
+  protected CompiledCRFClassifier newClassifier() {
+    try {
+      return new CompiledCRFClassifier(this.featuresEncoder, this.outcomeEncoder, this.tables);
+    } catch (CleartkProcessingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,416 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.encoder.features.FeaturesEncoder;
+import org.cleartk.classifier.encoder.features.NameNumber;
+import org.cleartk.classifier.encoder.outcome.OutcomeEncoder;
+
+/**
+ * A compiled CRF model in a single binary file that is memory-mapped rather than read, so that a
+ * {@link CompiledCRFClassifier} can start decoding as soon as the file is opened. Only the
+ * encoders, the states and the transitions are read onto the heap; the feature dictionary and the
+ * feature weights, which make up nearly all of the model, stay in the mapped file and are paged in
+ * by the operating system as they are used (and shared between processes mapping the same file).
+ * 
+ * The file is written by {@link com.cbsi.ner.CompileCRFModel}, and holds, in big-endian order:
+ * 
+ * <ol>
+ * <li>the magic number <code>0x43524d50</code> ("CRMP") and the format version, as ints
+ * <li>the length of the serialized ClearTK encoders as an int, followed by the encoders (the
+ * features encoder, then the outcome encoder, as written by an {@link java.io.ObjectOutputStream})
+ * <li>the states and transitions, as written by {@link CRFTables#writeTransitions}
+ * <li>the number of features <code>n</code> and the total length <code>b</code> of their names in
+ * bytes, as ints
+ * <li><code>n + 1</code> int offsets into the names, followed by the <code>b</code> bytes of the
+ * names in UTF-8; feature <code>f</code> is named by the bytes from offset <code>f</code> up to
+ * offset <code>f + 1</code>, and features are numbered in {@link String#compareTo(String)} order of
+ * their names, so that a name is looked up by binary search
+ * <li>the number of feature weights <code>w</code> as an int, then the <code>n + 1</code> int
+ * feature offsets, the <code>w</code> int weight sets and the <code>w</code> double weights, laid
+ * out as in {@link CRFTables}
+ * <li>the number of hash ids <code>h</code> as an int (0 for models not trained on hashed
+ * features), then the <code>h</code> int feature indexes of the hash ids
+ * </ol>
+ * 
+ * A mapped model file can be at most 2GB.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class MappedCRFModel {
+
+  /**
+   * The name of the mapped model file, written next to the model.jar it was compiled from.
+   */
+  public static final String FILE_NAME = "model.crfmap";
+
+  private static final int MAGIC = 0x43524d50; // "CRMP"
+
+  private static final int VERSION = 1;
+
+  private FeaturesEncoder<List<NameNumber>> featuresEncoder;
+
+  private OutcomeEncoder<String, String> outcomeEncoder;
+
+  private CRFTables tables;
+
+  private MappedFeatureWeights featureWeights;
+
+  /**
+   * Write a mapped model file.
+   * 
+   * @param encodersBytes
+   *          the serialized ClearTK encoders, as found in the model.jar of the CRF
+   * @param tables
+   *          the compiled CRF, including its hashed features if it was trained on them
+   */
+  public static void write(File file, byte[] encodersBytes, CRFTables tables) throws IOException {
+    // number the features in order of their names
+    final String[] names = tables.featureNames;
+    int numFeatures = names.length;
+    Integer[] order = new Integer[numFeatures];
+    for (int f = 0; f < numFeatures; ++f) {
+      order[f] = f;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer f1, Integer f2) {
+        return names[f1].compareTo(names[f2]);
+      }
+    });
+    int[] newIndexes = new int[numFeatures];
+    for (int f = 0; f < numFeatures; ++f) {
+      newIndexes[order[f]] = f;
+    }
+
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+        file)));
+    try {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(encodersBytes.length);
+      output.write(encodersBytes);
+      tables.writeTransitions(output);
+
+      // the feature dictionary
+      byte[][] nameBytes = new byte[numFeatures][];
+      int totalNameBytes = 0;
+      for (int f = 0; f < numFeatures; ++f) {
+        nameBytes[f] = names[order[f]].getBytes("UTF-8");
+        totalNameBytes += nameBytes[f].length;
+      }
+      output.writeInt(numFeatures);
+      output.writeInt(totalNameBytes);
+      int offset = 0;
+      output.writeInt(offset);
+      for (int f = 0; f < numFeatures; ++f) {
+        offset += nameBytes[f].length;
+        output.writeInt(offset);
+      }
+      for (int f = 0; f < numFeatures; ++f) {
+        output.write(nameBytes[f]);
+      }
+
+      // the feature weights, in the new feature order
+      output.writeInt(tables.featureWeights.length);
+      offset = 0;
+      output.writeInt(offset);
+      for (int f = 0; f < numFeatures; ++f) {
+        int oldIndex = order[f];
+        offset += tables.featureOffsets[oldIndex + 1] - tables.featureOffsets[oldIndex];
+        output.writeInt(offset);
+      }
+      for (int f = 0; f < numFeatures; ++f) {
+        int oldIndex = order[f];
+        for (int k = tables.featureOffsets[oldIndex]; k < tables.featureOffsets[oldIndex + 1]; ++k) {
+          output.writeInt(tables.featureWeightSets[k]);
+        }
+      }
+      for (int f = 0; f < numFeatures; ++f) {
+        int oldIndex = order[f];
+        for (int k = tables.featureOffsets[oldIndex]; k < tables.featureOffsets[oldIndex + 1]; ++k) {
+          output.writeDouble(tables.featureWeights[k]);
+        }
+      }
+
+      // the hashed features, in the new feature order
+      int[] hashedFeatures = tables.hashedFeatures == null ? new int[0] : tables.hashedFeatures;
+      output.writeInt(hashedFeatures.length);
+      for (int index : hashedFeatures) {
+        output.writeInt(index < 0 ? -1 : newIndexes[index]);
+      }
+    } finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Map a model file written by {@link #write(File, byte[], CRFTables)}.
+   */
+  @SuppressWarnings("unchecked")
+  public static MappedCRFModel open(File file) throws IOException {
+    MappedByteBuffer buffer;
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      // the mapping stays valid after the channel is closed
+      FileChannel channel = randomAccessFile.getChannel();
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      randomAccessFile.close();
+    }
+
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("not a mapped CRF model file: " + file);
+    }
+    int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException(String.format(
+          "expected mapped CRF model version %d, found %d",
+          VERSION,
+          version));
+    }
+    MappedCRFModel model = new MappedCRFModel();
+
+    // the encoders
+    byte[] encodersBytes = new byte[buffer.getInt()];
+    buffer.get(encodersBytes);
+    ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(encodersBytes));
+    try {
+      model.featuresEncoder = (FeaturesEncoder<List<NameNumber>>) objectInput.readObject();
+      model.outcomeEncoder = (OutcomeEncoder<String, String>) objectInput.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    } finally {
+      objectInput.close();
+    }
+
+    // the states and transitions, which are small enough to read
+    model.tables = new CRFTables();
+    CRFTables.readTransitions(new DataInputStream(new BufferInputStream(buffer)), model.tables);
+
+    // everything else is only mapped
+    model.featureWeights = new MappedFeatureWeights(buffer);
+    return model;
+  }
+
+  public FeaturesEncoder<List<NameNumber>> getFeaturesEncoder() {
+    return this.featuresEncoder;
+  }
+
+  public OutcomeEncoder<String, String> getOutcomeEncoder() {
+    return this.outcomeEncoder;
+  }
+
+  /**
+   * @return the states and transitions of the CRF; the feature arrays of these tables are not set
+   */
+  public CRFTables getTables() {
+    return this.tables;
+  }
+
+  public CRFFeatureWeights getFeatureWeights() {
+    return this.featureWeights;
+  }
+
+  public CompiledCRFClassifier createClassifier() throws CleartkProcessingException {
+    return new CompiledCRFClassifier(
+        this.featuresEncoder,
+        this.outcomeEncoder,
+        this.tables,
+        this.featureWeights);
+  }
+
+  /**
+   * Feature names and weights read straight from the mapped file. All reads use absolute
+   * positions, so the buffers are never modified and may be shared between threads.
+   */
+  private static class MappedFeatureWeights implements CRFFeatureWeights {
+
+    private int numFeatures;
+
+    private IntBuffer nameOffsets;
+
+    private ByteBuffer names;
+
+    private IntBuffer featureOffsets;
+
+    private IntBuffer featureWeightSets;
+
+    private DoubleBuffer featureWeights;
+
+    private IntBuffer hashedFeatures;
+
+    public MappedFeatureWeights(ByteBuffer buffer) {
+      this.numFeatures = buffer.getInt();
+      int numNameBytes = buffer.getInt();
+      this.nameOffsets = slice(buffer, (this.numFeatures + 1) * 4).asIntBuffer();
+      this.names = slice(buffer, numNameBytes);
+      int numWeights = buffer.getInt();
+      this.featureOffsets = slice(buffer, (this.numFeatures + 1) * 4).asIntBuffer();
+      this.featureWeightSets = slice(buffer, numWeights * 4).asIntBuffer();
+      this.featureWeights = slice(buffer, numWeights * 8).asDoubleBuffer();
+      int numHashIds = buffer.getInt();
+      this.hashedFeatures = numHashIds == 0 ? null : slice(buffer, numHashIds * 4).asIntBuffer();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+      ByteBuffer slice = buffer.slice();
+      slice.limit(length);
+      buffer.position(buffer.position() + length);
+      return slice;
+    }
+
+    public int numFeatures() {
+      return this.numFeatures;
+    }
+
+    public int getFeatureIndex(String name) {
+      int low = 0;
+      int high = this.numFeatures - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        int comparison = this.compare(middle, name);
+        if (comparison < 0) {
+          low = middle + 1;
+        } else if (comparison > 0) {
+          high = middle - 1;
+        } else {
+          return middle;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Compare the UTF-8 name of a feature with a String, as {@link String#compareTo(String)} would
+     * compare the two Strings, but without decoding the name into a String.
+     */
+    private int compare(int feature, String name) {
+      int position = this.nameOffsets.get(feature);
+      int end = this.nameOffsets.get(feature + 1);
+      int length = name.length();
+      int i = 0;
+      while (position < end && i < length) {
+        int b = this.names.get(position) & 0xff;
+        int c;
+        if (b < 0x80) {
+          c = b;
+          position += 1;
+        } else if (b < 0xe0) {
+          c = ((b & 0x1f) << 6) | (this.names.get(position + 1) & 0x3f);
+          position += 2;
+        } else if (b < 0xf0) {
+          c = ((b & 0x0f) << 12) | ((this.names.get(position + 1) & 0x3f) << 6)
+              | (this.names.get(position + 2) & 0x3f);
+          position += 3;
+        } else {
+          // a supplementary character, compared as its two UTF-16 surrogates
+          int codePoint = ((b & 0x07) << 18) | ((this.names.get(position + 1) & 0x3f) << 12)
+              | ((this.names.get(position + 2) & 0x3f) << 6) | (this.names.get(position + 3) & 0x3f);
+          position += 4;
+          char[] surrogates = Character.toChars(codePoint);
+          if (surrogates[0] != name.charAt(i)) {
+            return surrogates[0] - name.charAt(i);
+          }
+          ++i;
+          if (i == length) {
+            return 1;
+          }
+          c = surrogates[1];
+        }
+        if (c != name.charAt(i)) {
+          return c - name.charAt(i);
+        }
+        ++i;
+      }
+      if (position < end) {
+        return 1;
+      }
+      return i < length ? -1 : 0;
+    }
+
+    public boolean hasHashedFeatures() {
+      return this.hashedFeatures != null;
+    }
+
+    public int getHashedFeatureIndex(int id) {
+      return this.hashedFeatures.get(id);
+    }
+
+    public void addWeights(int feature, double[] weightSetScores) {
+      int end = this.featureOffsets.get(feature + 1);
+      for (int k = this.featureOffsets.get(feature); k < end; ++k) {
+        weightSetScores[this.featureWeightSets.get(k)] += this.featureWeights.get(k);
+      }
+    }
+  }
+
+  /**
+   * Reads a buffer from its current position, advancing the position as it goes.
+   */
+  private static class BufferInputStream extends InputStream {
+
+    private ByteBuffer buffer;
+
+    public BufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (!this.buffer.hasRemaining()) {
+        return -1;
+      }
+      length = Math.min(length, this.buffer.remaining());
+      this.buffer.get(bytes, offset, length);
+      return length;
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.SequenceClassifier_ImplBase;
+import org.cleartk.classifier.encoder.features.FeaturesEncoder;
+import org.cleartk.classifier.encoder.features.NameNumber;
+import org.cleartk.classifier.encoder.outcome.OutcomeEncoder;
+
+/**
+ * Labels sequences with the weights of a structured averaged perceptron, trained by a
+ * {@link PerceptronClassifierBuilder}. Features are looked up by their encoded names, as the
+ * {@link PerceptronDataWriter} wrote them; features the model has no weights for are ignored.
+ * 
+ * Like the {@link CompiledCRFClassifier}, the classifier keeps its working memory in per-thread
+ * buffers, so it allocates little per sequence and may be shared between threads.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class PerceptronClassifier extends SequenceClassifier_ImplBase<List<NameNumber>, String, String> {
+
+  private PerceptronModel model;
+
+  private ThreadLocal<Scratch> scratch;
+
+  public PerceptronClassifier(
+      FeaturesEncoder<List<NameNumber>> featuresEncoder,
+      OutcomeEncoder<String, String> outcomeEncoder,
+      PerceptronModel model) {
+    super(featuresEncoder, outcomeEncoder);
+    this.model = model;
+    this.scratch = new ThreadLocal<Scratch>() {
+      @Override
+      protected Scratch initialValue() {
+        return new Scratch(PerceptronClassifier.this.model.numLabels());
+      }
+    };
+  }
+
+  public PerceptronModel getModel() {
+    return this.model;
+  }
+
+  public List<String> classify(List<List<Feature>> features) throws CleartkProcessingException {
+    Scratch scratch = this.scratch.get();
+    scratch.clear();
+    for (List<Feature> tokenFeatures : features) {
+      for (NameNumber nameNumber : this.featuresEncoder.encodeAll(tokenFeatures)) {
+        int index = this.model.getFeatureIndex(nameNumber.name);
+        if (index >= 0) {
+          scratch.add(index);
+        }
+      }
+      scratch.endToken();
+    }
+    int[] labels = scratch.decoder.decode(
+        this.model.featureWeights,
+        this.model.transitionWeights,
+        this.model.greedy,
+        scratch.ids,
+        scratch.offsets,
+        scratch.length);
+    List<String> outcomes = new ArrayList<String>(scratch.length);
+    for (int i = 0; i < scratch.length; ++i) {
+      outcomes.add(this.outcomeEncoder.decode(this.model.getLabel(labels[i])));
+    }
+    return outcomes;
+  }
+
+  /**
+   * The feature indexes of the sequence being classified, and the decoder, for one thread.
+   */
+  private static class Scratch {
+
+    public PerceptronDecoder decoder;
+
+    public int[] ids = new int[1024];
+
+    public int numIds;
+
+    public int[] offsets = new int[64];
+
+    public int length;
+
+    public Scratch(int numLabels) {
+      this.decoder = new PerceptronDecoder(numLabels);
+    }
+
+    public void clear() {
+      this.numIds = 0;
+      this.length = 0;
+      this.offsets[0] = 0;
+    }
+
+    public void add(int id) {
+      if (this.numIds == this.ids.length) {
+        int[] newIds = new int[this.ids.length * 2];
+        System.arraycopy(this.ids, 0, newIds, 0, this.numIds);
+        this.ids = newIds;
+      }
+      this.ids[this.numIds] = id;
+      ++this.numIds;
+    }
+
+    public void endToken() {
+      if (this.length + 1 == this.offsets.length) {
+        int[] newOffsets = new int[this.offsets.length * 2];
+        System.arraycopy(this.offsets, 0, newOffsets, 0, this.length + 1);
+        this.offsets = newOffsets;
+      }
+      ++this.length;
+      this.offsets[this.length] = this.numIds;
+    }
+  }
+}
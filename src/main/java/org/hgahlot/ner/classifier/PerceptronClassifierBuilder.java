@@ -0,0 +1,185 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.cleartk.classifier.encoder.features.NameNumber;
+import org.cleartk.classifier.jar.JarStreams;
+import org.cleartk.classifier.jar.SequenceClassifierBuilder_ImplBase;
+
+/**
+ * Trains and loads a {@link PerceptronClassifier} from the training data written by a
+ * {@link PerceptronDataWriter} or, streaming it from disk, by a {@link BinaryPerceptronDataWriter}.
+ * 
+ * Training is done by a {@link PerceptronTrainer}. The training arguments are:
+ * <ul>
+ * <li><code>--iterations N</code>: the number of epochs (default {@value #DEFAULT_ITERATIONS})
+ * <li><code>--greedy</code>: decode greedily from left to right instead of with the Viterbi
+ * algorithm, both in training and in classification
+ * <li><code>--seed N</code>: the seed of the order the sequences are visited in
+ * <li><code>--buffer-mb N</code>: the megabytes of binary training data held in memory at once
+ * (default {@value #DEFAULT_BUFFER_MB}); larger batches are shuffled more thoroughly
+ * </ul>
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class PerceptronClassifierBuilder extends
+    SequenceClassifierBuilder_ImplBase<PerceptronClassifier, List<NameNumber>, String, String> {
+
+  /**
+   * The name of the file (and jar entry) holding the {@link PerceptronModel}.
+   */
+  public static final String MODEL_FILE_NAME = "model.perceptron";
+
+  public static final int DEFAULT_ITERATIONS = 10;
+
+  public static final int DEFAULT_BUFFER_MB = 64;
+
+  private PerceptronModel model;
+
+  @Override
+  public void trainClassifier(File dir, String... args) throws Exception {
+    int iterations = DEFAULT_ITERATIONS;
+    boolean greedy = false;
+    long seed = 42;
+    int bufferMegabytes = DEFAULT_BUFFER_MB;
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("--iterations") && i + 1 < args.length) {
+        iterations = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--greedy")) {
+        greedy = true;
+      } else if (args[i].equals("--seed") && i + 1 < args.length) {
+        seed = Long.parseLong(args[++i]);
+      } else if (args[i].equals("--buffer-mb") && i + 1 < args.length) {
+        bufferMegabytes = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("unrecognized perceptron training argument: " + args[i]);
+      }
+    }
+
+    PerceptronTrainer trainer = new PerceptronTrainer(greedy, seed);
+    PerceptronModel model;
+    File binaryFile = BinarySequenceDataWriter_ImplBase.getTrainingDataFile(dir);
+    if (binaryFile.exists()) {
+      model = trainer.train(binaryFile, iterations, bufferMegabytes << 20);
+    } else {
+      trainer.addTrainingData(this.getTrainingDataFile(dir));
+      model = trainer.train(iterations);
+    }
+    writeModel(model, new File(dir, MODEL_FILE_NAME));
+  }
+
+  /**
+   * @return the model packaged in a model.jar
+   */
+  public static PerceptronModel readModel(File modelJar) throws IOException {
+    JarInputStream input = new JarInputStream(new BufferedInputStream(new FileInputStream(modelJar)));
+    try {
+      JarEntry entry;
+      while ((entry = input.getNextJarEntry()) != null) {
+        if (entry.getName().equals(MODEL_FILE_NAME)) {
+          return PerceptronModel.read(new DataInputStream(input));
+        }
+      }
+    } finally {
+      input.close();
+    }
+    throw new IOException("expected a perceptron model, found " + modelJar);
+  }
+
+  public static void writeModel(PerceptronModel model, File file) throws IOException {
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+        file)));
+    try {
+      model.write(output);
+    } finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Write a copy of a model.jar with its model replaced, keeping the encoders and every other entry
+   * as they are.
+   */
+  public static void repackage(File modelJar, PerceptronModel model, File newModelJar)
+      throws IOException {
+    JarInputStream input = new JarInputStream(new BufferedInputStream(new FileInputStream(modelJar)));
+    try {
+      JarOutputStream output = new JarOutputStream(
+          new BufferedOutputStream(new FileOutputStream(newModelJar)),
+          input.getManifest());
+      try {
+        JarEntry entry;
+        while ((entry = input.getNextJarEntry()) != null) {
+          output.putNextEntry(new JarEntry(entry.getName()));
+          if (entry.getName().equals(MODEL_FILE_NAME)) {
+            DataOutputStream modelOutput = new DataOutputStream(output);
+            model.write(modelOutput);
+            modelOutput.flush();
+          } else {
+            IOUtils.copy(input, output);
+          }
+          output.closeEntry();
+        }
+      } finally {
+        output.close();
+      }
+    } finally {
+      input.close();
+    }
+  }
+
+  @Override
+  protected void packageClassifier(File dir, JarOutputStream modelStream) throws IOException {
+    super.packageClassifier(dir, modelStream);
+    JarStreams.putNextJarEntry(modelStream, MODEL_FILE_NAME, new File(dir, MODEL_FILE_NAME));
+  }
+
+  @Override
+  protected void unpackageClassifier(JarInputStream modelStream) throws IOException {
+    super.unpackageClassifier(modelStream);
+    JarStreams.getNextJarEntry(modelStream, MODEL_FILE_NAME);
+    this.model = PerceptronModel.read(new DataInputStream(new BufferedInputStream(modelStream)));
+  }
+
+  @Override
+  protected PerceptronClassifier newClassifier() {
+    return new PerceptronClassifier(this.featuresEncoder, this.outcomeEncoder, this.model);
+  }
+}
@@ -0,0 +1,72 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.List;
+
+import org.cleartk.classifier.encoder.features.NameNumber;
+import org.cleartk.classifier.encoder.features.NameNumberFeaturesEncoder;
+import org.cleartk.classifier.encoder.outcome.StringToStringOutcomeEncoder;
+import org.cleartk.classifier.jar.SequenceDataWriter_ImplBase;
+
+/**
+ * Writes training data for a {@link PerceptronClassifierBuilder}, in the same format as the
+ * {@link org.cleartk.classifier.mallet.MalletCRFStringOutcomeDataWriter}: one line per token with
+ * its feature names and then its outcome, separated by spaces, and an empty line after each
+ * sequence. It can therefore be used in place of the Mallet data writer with the same features.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class PerceptronDataWriter extends
+    SequenceDataWriter_ImplBase<PerceptronClassifierBuilder, List<NameNumber>, String, String> {
+
+  public PerceptronDataWriter(File outputDirectory) throws FileNotFoundException {
+    super(outputDirectory);
+    this.setFeaturesEncoder(new NameNumberFeaturesEncoder(false, false));
+    this.setOutcomeEncoder(new StringToStringOutcomeEncoder());
+  }
+
+  @Override
+  public void writeEncoded(List<NameNumber> features, String outcome) {
+    for (NameNumber nameNumber : features) {
+      this.trainingDataWriter.print(nameNumber.name);
+      this.trainingDataWriter.print(' ');
+    }
+    this.trainingDataWriter.println(outcome);
+  }
+
+  @Override
+  public void writeEndSequence() {
+    this.trainingDataWriter.println();
+  }
+
+  @Override
+  protected PerceptronClassifierBuilder newClassifierBuilder() {
+    return new PerceptronClassifierBuilder();
+  }
+}
@@ -0,0 +1,161 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.util.Arrays;
+
+/**
+ * Finds the highest scoring labels of a sequence under perceptron weights laid out as in
+ * {@link PerceptronModel}, either exactly with the Viterbi algorithm or greedily from left to right.
+ * 
+ * The features of the sequence are given as in a
+ * {@link com.cbsi.ner.feature.HashedFeatureSequence}: the feature indexes of token <code>i</code>
+ * are <code>ids[offsets[i]]</code> up to <code>ids[offsets[i + 1]]</code>. The decoder keeps its
+ * working memory between calls, so it is not thread-safe; each thread needs its own.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+class PerceptronDecoder {
+
+  private int numLabels;
+
+  // the summed feature weights of each label, per token: token * numLabels + label
+  private double[] scores;
+
+  // the best path score into each label, per token: token * numLabels + label
+  private double[] pathScores;
+
+  // the previous label on the best path into each label, per token: token * numLabels + label
+  private int[] backPointers;
+
+  private int[] labels;
+
+  public PerceptronDecoder(int numLabels) {
+    this.numLabels = numLabels;
+    this.ensureCapacity(32);
+  }
+
+  private void ensureCapacity(int length) {
+    if (this.labels != null && this.labels.length >= length) {
+      return;
+    }
+    int capacity = Math.max(length, this.labels == null ? 0 : this.labels.length * 2);
+    this.scores = new double[capacity * this.numLabels];
+    this.pathScores = new double[capacity * this.numLabels];
+    this.backPointers = new int[capacity * this.numLabels];
+    this.labels = new int[capacity];
+  }
+
+  /**
+   * @return the label of each token; the array is reused by the next call
+   */
+  public int[] decode(
+      double[] featureWeights,
+      double[] transitionWeights,
+      boolean greedy,
+      int[] ids,
+      int[] offsets,
+      int length) {
+    int numLabels = this.numLabels;
+    this.ensureCapacity(length);
+    Arrays.fill(this.scores, 0, length * numLabels, 0.0);
+    for (int i = 0; i < length; ++i) {
+      int token = i * numLabels;
+      for (int k = offsets[i]; k < offsets[i + 1]; ++k) {
+        int feature = ids[k] * numLabels;
+        for (int y = 0; y < numLabels; ++y) {
+          this.scores[token + y] += featureWeights[feature + y];
+        }
+      }
+    }
+    if (greedy) {
+      this.decodeGreedily(transitionWeights, length);
+    } else {
+      this.viterbi(transitionWeights, length);
+    }
+    return this.labels;
+  }
+
+  private void decodeGreedily(double[] transitionWeights, int length) {
+    int numLabels = this.numLabels;
+    int previous = -1;
+    for (int i = 0; i < length; ++i) {
+      int token = i * numLabels;
+      int transitions = (previous + 1) * numLabels;
+      int best = 0;
+      double bestScore = Double.NEGATIVE_INFINITY;
+      for (int y = 0; y < numLabels; ++y) {
+        double score = this.scores[token + y] + transitionWeights[transitions + y];
+        if (score > bestScore) {
+          bestScore = score;
+          best = y;
+        }
+      }
+      this.labels[i] = best;
+      previous = best;
+    }
+  }
+
+  private void viterbi(double[] transitionWeights, int length) {
+    int numLabels = this.numLabels;
+    if (length == 0) {
+      return;
+    }
+    for (int y = 0; y < numLabels; ++y) {
+      this.pathScores[y] = this.scores[y] + transitionWeights[y];
+    }
+    for (int i = 1; i < length; ++i) {
+      int from = (i - 1) * numLabels;
+      int to = i * numLabels;
+      for (int y = 0; y < numLabels; ++y) {
+        int best = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int p = 0; p < numLabels; ++p) {
+          double score = this.pathScores[from + p] + transitionWeights[(p + 1) * numLabels + y];
+          if (score > bestScore) {
+            bestScore = score;
+            best = p;
+          }
+        }
+        this.pathScores[to + y] = bestScore + this.scores[to + y];
+        this.backPointers[to + y] = best;
+      }
+    }
+
+    // pick the best final label, and follow the back pointers from there
+    int last = (length - 1) * numLabels;
+    int label = 0;
+    for (int y = 1; y < numLabels; ++y) {
+      if (this.pathScores[last + y] > this.pathScores[last + label]) {
+        label = y;
+      }
+    }
+    for (int i = length - 1; i >= 0; --i) {
+      this.labels[i] = label;
+      label = this.backPointers[i * numLabels + label];
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The weights of a structured averaged perceptron over label bigrams: one weight per feature and
+ * label, and one per pair of consecutive labels (including the start of the sequence as the
+ * previous label of the first token).
+ * 
+ * Features are numbered from 0 and labels from 0; feature weights are at
+ * <code>feature * numLabels + label</code>, and transition weights at
+ * <code>(previous + 1) * numLabels + label</code>, where the previous label of the first token is
+ * -1.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class PerceptronModel {
+
+  private static final int MAGIC = 0x50455243; // "PERC"
+
+  private static final int VERSION = 1;
+
+  String[] labels;
+
+  String[] featureNames;
+
+  double[] featureWeights;
+
+  double[] transitionWeights;
+
+  boolean greedy;
+
+  private Map<String, Integer> featureIndexes;
+
+  /**
+   * @param greedy
+   *          if true, each token is labeled in turn given the previous label, instead of finding
+   *          the best sequence of labels with the Viterbi algorithm
+   */
+  public PerceptronModel(
+      String[] labels,
+      String[] featureNames,
+      double[] featureWeights,
+      double[] transitionWeights,
+      boolean greedy) {
+    int numLabels = labels.length;
+    if (featureWeights.length != featureNames.length * numLabels
+        || transitionWeights.length != (numLabels + 1) * numLabels) {
+      throw new IllegalArgumentException(String.format(
+          "expected %d feature and %d transition weights, found %d and %d",
+          featureNames.length * numLabels,
+          (numLabels + 1) * numLabels,
+          featureWeights.length,
+          transitionWeights.length));
+    }
+    this.labels = labels;
+    this.featureNames = featureNames;
+    this.featureWeights = featureWeights;
+    this.transitionWeights = transitionWeights;
+    this.greedy = greedy;
+    this.featureIndexes = new HashMap<String, Integer>(featureNames.length * 2);
+    for (int i = 0; i < featureNames.length; ++i) {
+      this.featureIndexes.put(featureNames[i], i);
+    }
+  }
+
+  public int numLabels() {
+    return this.labels.length;
+  }
+
+  public int numFeatures() {
+    return this.featureNames.length;
+  }
+
+  public String getLabel(int label) {
+    return this.labels[label];
+  }
+
+  public boolean isGreedy() {
+    return this.greedy;
+  }
+
+  /**
+   * @return the index of the feature, or -1 if the model has no weights for it
+   */
+  public int getFeatureIndex(String name) {
+    Integer index = this.featureIndexes.get(name);
+    return index == null ? -1 : index;
+  }
+
+  public void write(DataOutput output) throws IOException {
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeBoolean(this.greedy);
+    output.writeInt(this.labels.length);
+    for (String label : this.labels) {
+      output.writeUTF(label);
+    }
+    output.writeInt(this.featureNames.length);
+    for (String name : this.featureNames) {
+      output.writeUTF(name);
+    }
+    for (double weight : this.featureWeights) {
+      output.writeDouble(weight);
+    }
+    for (double weight : this.transitionWeights) {
+      output.writeDouble(weight);
+    }
+  }
+
+  public static PerceptronModel read(DataInput input) throws IOException {
+    if (input.readInt() != MAGIC) {
+      throw new IOException("not a perceptron model");
+    }
+    int version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException(String.format(
+          "expected perceptron model version %d, found %d",
+          VERSION,
+          version));
+    }
+    boolean greedy = input.readBoolean();
+    String[] labels = new String[input.readInt()];
+    for (int i = 0; i < labels.length; ++i) {
+      labels[i] = input.readUTF();
+    }
+    String[] featureNames = new String[input.readInt()];
+    for (int i = 0; i < featureNames.length; ++i) {
+      featureNames[i] = input.readUTF();
+    }
+    double[] featureWeights = new double[featureNames.length * labels.length];
+    for (int i = 0; i < featureWeights.length; ++i) {
+      featureWeights[i] = input.readDouble();
+    }
+    double[] transitionWeights = new double[(labels.length + 1) * labels.length];
+    for (int i = 0; i < transitionWeights.length; ++i) {
+      transitionWeights[i] = input.readDouble();
+    }
+    return new PerceptronModel(labels, featureNames, featureWeights, transitionWeights, greedy);
+  }
+}
@@ -0,0 +1,489 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Trains a {@link PerceptronModel} as a structured averaged perceptron: each epoch decodes every
+ * training sequence with the current weights (in a shuffled but reproducible order), and for every
+ * token labeled wrongly, rewards the weights of the correct label and transition and penalizes those
+ * of the predicted ones. The resulting weights are the average of the weights after every sequence,
+ * which generalizes much better than the last weights. Features whose averaged weights are all zero
+ * are dropped.
+ * 
+ * Training can start from an existing model, to update it with new sequences only: its weights are
+ * the starting weights, and its features and labels are extended with any new ones found in the
+ * training data.
+ * 
+ * The training data is either in the format of the {@link PerceptronDataWriter}, and then held in
+ * memory, or a {@link BinarySequenceFile}, which is streamed from disk once per epoch so that only
+ * the weights and a bounded batch of sequences are in memory.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class PerceptronTrainer {
+
+  private static final Logger LOGGER = Logger.getLogger(PerceptronTrainer.class.getName());
+
+  private static final int READ_BUFFER_SIZE = 1 << 16;
+
+  // the approximate number of bytes taken by the three arrays of a sequence beyond their contents
+  private static final int SEQUENCE_OVERHEAD = 3 * 16;
+
+  private boolean greedy;
+
+  private Random random;
+
+  private List<String> labels;
+
+  private Map<String, Integer> labelIndexes;
+
+  private List<String> featureNames;
+
+  private Map<String, Integer> featureIndexes;
+
+  private PerceptronModel initialModel;
+
+  // the training sequences, with features and labels replaced by their indexes
+  private List<int[]> sequenceIds;
+
+  private List<int[]> sequenceOffsets;
+
+  private List<int[]> sequenceLabels;
+
+  private long numTokens;
+
+  // the weights being trained, and the sums of every update weighted by the number of sequences
+  // seen before it, from which the average weights are computed at the end
+  private double[] featureWeights;
+
+  private double[] featureUpdates;
+
+  private double[] transitionWeights;
+
+  private double[] transitionUpdates;
+
+  private long count;
+
+  private PerceptronDecoder decoder;
+
+  /**
+   * @param greedy
+   *          if true, decode greedily from left to right instead of with the Viterbi algorithm
+   * @param seed
+   *          the seed of the order the sequences are visited in
+   */
+  public PerceptronTrainer(boolean greedy, long seed) {
+    this.greedy = greedy;
+    this.random = new Random(seed);
+    this.labels = new ArrayList<String>();
+    this.labelIndexes = new HashMap<String, Integer>();
+    this.featureNames = new ArrayList<String>();
+    this.featureIndexes = new HashMap<String, Integer>();
+    this.sequenceIds = new ArrayList<int[]>();
+    this.sequenceOffsets = new ArrayList<int[]>();
+    this.sequenceLabels = new ArrayList<int[]>();
+  }
+
+  /**
+   * Create a trainer that updates an existing model, decoding as it does.
+   */
+  public PerceptronTrainer(PerceptronModel initialModel, long seed) {
+    this(initialModel.greedy, seed);
+    this.initialModel = initialModel;
+    for (String label : initialModel.labels) {
+      this.labelIndex(label);
+    }
+    for (String name : initialModel.featureNames) {
+      this.featureIndex(name);
+    }
+  }
+
+  /**
+   * @return the number of features and labels that were not in the initial model, if any
+   */
+  public int getNumNewFeatures() {
+    return this.featureNames.size()
+        - (this.initialModel == null ? 0 : this.initialModel.numFeatures());
+  }
+
+  public int getNumNewLabels() {
+    return this.labels.size() - (this.initialModel == null ? 0 : this.initialModel.numLabels());
+  }
+
+  public long getNumTokens() {
+    return this.numTokens;
+  }
+
+  /**
+   * Read training sequences from a file written by a {@link PerceptronDataWriter}.
+   */
+  public void addTrainingData(File file) throws IOException {
+    // the sequence being read
+    int[] ids = new int[1024];
+    int numIds = 0;
+    int[] offsets = new int[64];
+    int[] labels = new int[64];
+    int length = 0;
+
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.length() == 0) {
+          if (length > 0) {
+            this.addSequence(ids, numIds, offsets, labels, length);
+          }
+          numIds = 0;
+          length = 0;
+          continue;
+        }
+        if (length + 1 >= offsets.length) {
+          offsets = grow(offsets);
+          labels = grow(labels);
+        }
+        offsets[length] = numIds;
+        String[] parts = line.split(" ");
+        for (int i = 0; i < parts.length - 1; ++i) {
+          if (numIds == ids.length) {
+            ids = grow(ids);
+          }
+          ids[numIds] = this.featureIndex(parts[i]);
+          ++numIds;
+        }
+        labels[length] = this.labelIndex(parts[parts.length - 1]);
+        ++length;
+        offsets[length] = numIds;
+      }
+      if (length > 0) {
+        this.addSequence(ids, numIds, offsets, labels, length);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Run the given number of epochs over the training sequences.
+   */
+  public PerceptronModel train(int iterations) {
+    this.startTraining();
+    int numSequences = this.sequenceIds.size();
+    int[] order = new int[numSequences];
+    for (int s = 0; s < numSequences; ++s) {
+      order[s] = s;
+    }
+    for (int iteration = 0; iteration < iterations; ++iteration) {
+      this.shuffle(order, numSequences);
+      int errors = 0;
+      for (int s : order) {
+        int[] gold = this.sequenceLabels.get(s);
+        errors += this.trainSequence(
+            this.sequenceIds.get(s),
+            this.sequenceOffsets.get(s),
+            gold,
+            gold.length);
+      }
+      this.logIteration(iteration, errors);
+    }
+    return this.finishTraining();
+  }
+
+  /**
+   * Run the given number of epochs over the sequences of a {@link BinarySequenceFile}, without
+   * loading them all in memory: each epoch streams the file again, a batch of sequences at a time,
+   * and visits the sequences of each batch in a shuffled order. Sequences added with
+   * {@link #addTrainingData(File)} are ignored.
+   * 
+   * @param bufferSize
+   *          the approximate number of bytes of sequences held in memory at once
+   */
+  public PerceptronModel train(File file, int iterations, int bufferSize) throws IOException {
+    // give the features and labels of the file indexes here, before sizing the weights
+    BinarySequenceFile.Reader reader = new BinarySequenceFile.Reader(file, READ_BUFFER_SIZE);
+    int[] featureMap = new int[reader.getFeatureNames().length];
+    for (int i = 0; i < featureMap.length; ++i) {
+      featureMap[i] = this.featureIndex(reader.getFeatureNames()[i]);
+    }
+    int[] labelMap = new int[reader.getLabels().length];
+    for (int i = 0; i < labelMap.length; ++i) {
+      labelMap[i] = this.labelIndex(reader.getLabels()[i]);
+    }
+    reader.close();
+
+    this.startTraining();
+    this.numTokens = 0;
+    List<int[]> batchIds = new ArrayList<int[]>();
+    List<int[]> batchOffsets = new ArrayList<int[]>();
+    List<int[]> batchLabels = new ArrayList<int[]>();
+    int[] order = new int[64];
+    for (int iteration = 0; iteration < iterations; ++iteration) {
+      reader = new BinarySequenceFile.Reader(file, READ_BUFFER_SIZE);
+      try {
+        int errors = 0;
+        boolean more = true;
+        while (more) {
+          // fill the batch, copying the sequences since the reader reuses its arrays
+          long batchBytes = 0;
+          batchIds.clear();
+          batchOffsets.clear();
+          batchLabels.clear();
+          while (batchBytes < bufferSize && (more = reader.next())) {
+            int length = reader.length;
+            int numIds = reader.offsets[length];
+            int[] ids = new int[numIds];
+            for (int k = 0; k < numIds; ++k) {
+              ids[k] = featureMap[reader.ids[k]];
+            }
+            int[] offsets = new int[length + 1];
+            System.arraycopy(reader.offsets, 0, offsets, 0, length + 1);
+            int[] labels = new int[length];
+            for (int i = 0; i < length; ++i) {
+              labels[i] = labelMap[reader.sequenceLabels[i]];
+            }
+            batchIds.add(ids);
+            batchOffsets.add(offsets);
+            batchLabels.add(labels);
+            batchBytes += 4L * (numIds + 2 * length + 1) + SEQUENCE_OVERHEAD;
+            if (iteration == 0) {
+              this.numTokens += length;
+            }
+          }
+
+          int numSequences = batchIds.size();
+          if (order.length < numSequences) {
+            order = new int[Math.max(numSequences, order.length * 2)];
+          }
+          for (int s = 0; s < numSequences; ++s) {
+            order[s] = s;
+          }
+          this.shuffle(order, numSequences);
+          for (int o = 0; o < numSequences; ++o) {
+            int s = order[o];
+            int[] gold = batchLabels.get(s);
+            errors += this.trainSequence(batchIds.get(s), batchOffsets.get(s), gold, gold.length);
+          }
+        }
+        this.logIteration(iteration, errors);
+      } finally {
+        reader.close();
+      }
+    }
+    return this.finishTraining();
+  }
+
+  /**
+   * Allocate the weights for the current features and labels, starting from those of the initial
+   * model if there is one.
+   */
+  private void startTraining() {
+    int numLabels = this.labels.size();
+    int numFeatures = this.featureNames.size();
+    this.featureWeights = new double[numFeatures * numLabels];
+    this.featureUpdates = new double[numFeatures * numLabels];
+    this.transitionWeights = new double[(numLabels + 1) * numLabels];
+    this.transitionUpdates = new double[(numLabels + 1) * numLabels];
+    this.count = 1;
+    if (this.initialModel != null) {
+      this.copyInitialWeights(this.featureWeights, this.transitionWeights);
+    }
+    this.decoder = new PerceptronDecoder(numLabels);
+  }
+
+  /**
+   * Decode one sequence and update the weights where it was labeled wrongly.
+   * 
+   * @return the number of mislabeled tokens
+   */
+  private int trainSequence(int[] ids, int[] offsets, int[] gold, int length) {
+    int numLabels = this.labels.size();
+    int[] predicted = this.decoder.decode(
+        this.featureWeights,
+        this.transitionWeights,
+        this.greedy,
+        ids,
+        offsets,
+        length);
+    int errors = 0;
+    for (int i = 0; i < length; ++i) {
+      int goldPrevious = i == 0 ? -1 : gold[i - 1];
+      int predictedPrevious = i == 0 ? -1 : predicted[i - 1];
+      if (gold[i] != predicted[i]) {
+        ++errors;
+        for (int k = offsets[i]; k < offsets[i + 1]; ++k) {
+          int feature = ids[k] * numLabels;
+          this.featureWeights[feature + gold[i]] += 1.0;
+          this.featureUpdates[feature + gold[i]] += this.count;
+          this.featureWeights[feature + predicted[i]] -= 1.0;
+          this.featureUpdates[feature + predicted[i]] -= this.count;
+        }
+      }
+      if (gold[i] != predicted[i] || goldPrevious != predictedPrevious) {
+        int goldTransition = (goldPrevious + 1) * numLabels + gold[i];
+        int predictedTransition = (predictedPrevious + 1) * numLabels + predicted[i];
+        this.transitionWeights[goldTransition] += 1.0;
+        this.transitionUpdates[goldTransition] += this.count;
+        this.transitionWeights[predictedTransition] -= 1.0;
+        this.transitionUpdates[predictedTransition] -= this.count;
+      }
+    }
+    ++this.count;
+    return errors;
+  }
+
+  /**
+   * Average the weights, keeping only the features with some non-zero weight.
+   */
+  private PerceptronModel finishTraining() {
+    int numLabels = this.labels.size();
+    int numFeatures = this.featureNames.size();
+    double[] featureWeights = this.featureWeights;
+    double[] transitionWeights = this.transitionWeights;
+    for (int i = 0; i < transitionWeights.length; ++i) {
+      transitionWeights[i] -= this.transitionUpdates[i] / this.count;
+    }
+    List<String> keptNames = new ArrayList<String>();
+    for (int f = 0; f < numFeatures; ++f) {
+      boolean nonZero = false;
+      int from = f * numLabels;
+      int to = keptNames.size() * numLabels;
+      for (int y = 0; y < numLabels; ++y) {
+        double weight = featureWeights[from + y] - this.featureUpdates[from + y] / this.count;
+        // kept features are compacted in place, never overtaking the ones still to be read
+        featureWeights[to + y] = weight;
+        nonZero |= weight != 0.0;
+      }
+      if (nonZero) {
+        keptNames.add(this.featureNames.get(f));
+      }
+    }
+    double[] averagedWeights = new double[keptNames.size() * numLabels];
+    System.arraycopy(featureWeights, 0, averagedWeights, 0, averagedWeights.length);
+    this.featureWeights = null;
+    this.featureUpdates = null;
+    this.transitionWeights = null;
+    this.transitionUpdates = null;
+
+    return new PerceptronModel(
+        this.labels.toArray(new String[numLabels]),
+        keptNames.toArray(new String[keptNames.size()]),
+        averagedWeights,
+        transitionWeights,
+        this.greedy);
+  }
+
+  private void shuffle(int[] order, int length) {
+    for (int s = length - 1; s > 0; --s) {
+      int other = this.random.nextInt(s + 1);
+      int swap = order[s];
+      order[s] = order[other];
+      order[other] = swap;
+    }
+  }
+
+  private void logIteration(int iteration, int errors) {
+    LOGGER.info(String.format(
+        "perceptron iteration %d: %d of %d tokens mislabeled",
+        iteration + 1,
+        errors,
+        this.numTokens));
+  }
+
+  /**
+   * Copy the weights of the initial model, whose features and labels have the same indexes here,
+   * into the (possibly larger) weight arrays.
+   */
+  private void copyInitialWeights(double[] featureWeights, double[] transitionWeights) {
+    PerceptronModel model = this.initialModel;
+    int numLabels = this.labels.size();
+    int oldNumLabels = model.numLabels();
+    for (int f = 0; f < model.numFeatures(); ++f) {
+      System.arraycopy(
+          model.featureWeights,
+          f * oldNumLabels,
+          featureWeights,
+          f * numLabels,
+          oldNumLabels);
+    }
+    for (int previous = -1; previous < oldNumLabels; ++previous) {
+      System.arraycopy(
+          model.transitionWeights,
+          (previous + 1) * oldNumLabels,
+          transitionWeights,
+          (previous + 1) * numLabels,
+          oldNumLabels);
+    }
+  }
+
+  private int featureIndex(String name) {
+    Integer index = this.featureIndexes.get(name);
+    if (index == null) {
+      index = this.featureNames.size();
+      this.featureIndexes.put(name, index);
+      this.featureNames.add(name);
+    }
+    return index;
+  }
+
+  private int labelIndex(String label) {
+    Integer index = this.labelIndexes.get(label);
+    if (index == null) {
+      index = this.labels.size();
+      this.labelIndexes.put(label, index);
+      this.labels.add(label);
+    }
+    return index;
+  }
+
+  private void addSequence(int[] ids, int numIds, int[] offsets, int[] labels, int length) {
+    int[] sequenceIds = new int[numIds];
+    System.arraycopy(ids, 0, sequenceIds, 0, numIds);
+    int[] sequenceOffsets = new int[length + 1];
+    System.arraycopy(offsets, 0, sequenceOffsets, 0, length + 1);
+    int[] sequenceLabels = new int[length];
+    System.arraycopy(labels, 0, sequenceLabels, 0, length);
+    this.sequenceIds.add(sequenceIds);
+    this.sequenceOffsets.add(sequenceOffsets);
+    this.sequenceLabels.add(sequenceLabels);
+    this.numTokens += length;
+  }
+
+  private static int[] grow(int[] array) {
+    int[] grown = new int[array.length * 2];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+}
@@ -0,0 +1,262 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.SequenceClassifier;
+
+/**
+ * Holds the current classifier of a model directory, and replaces it whenever a new model.jar is
+ * written there, without restarting the JVM. The new model is loaded and warmed up on a background
+ * thread while the old one keeps classifying, and is then swapped in atomically. Annotators that
+ * take the {@link #getClassifier() current classifier} at the start of each document therefore
+ * finish every document on the model they started it with.
+ * 
+ * A model.jar is only loaded once it has not changed for a quiet period, so that a jar still being
+ * written is not picked up. This applies to a jar moved into the directory too, since its creation
+ * cannot be told apart from the start of a write. A jar that fails to load is logged and counted,
+ * and the old model stays in place.
+ * 
+ * There is one registry per model directory in the process, and each is registered as an MBean
+ * named <code>com.cbsi.ner:type=ReloadingModelRegistry,directory=...</code> so that swaps and load
+ * times can be monitored over JMX.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class ReloadingModelRegistry implements ReloadingModelRegistryMBean {
+
+  public static final String MODEL_FILE_NAME = "model.jar";
+
+  /**
+   * How long a model.jar must go unchanged before it is loaded.
+   */
+  public static final long QUIET_MILLIS = 2000;
+
+  private static final Logger LOGGER = Logger.getLogger(ReloadingModelRegistry.class.getName());
+
+  private static final Map<String, ReloadingModelRegistry> REGISTRIES = new HashMap<String, ReloadingModelRegistry>();
+
+  private File directory;
+
+  private File modelFile;
+
+  private AtomicReference<SequenceClassifier<String>> classifier;
+
+  private AtomicLong swapCount;
+
+  private AtomicLong failedLoadCount;
+
+  private volatile long lastLoadMillis;
+
+  private volatile long lastSwapTime;
+
+  private WatchService watchService;
+
+  private Thread watcher;
+
+  private ObjectName objectName;
+
+  /**
+   * @return the registry of the given model directory, creating it (and loading its model.jar) if
+   *         this is the first request for it
+   */
+  public static synchronized ReloadingModelRegistry get(File directory) throws IOException {
+    String key = directory.getCanonicalPath();
+    ReloadingModelRegistry registry = REGISTRIES.get(key);
+    if (registry == null) {
+      registry = new ReloadingModelRegistry(new File(key));
+      REGISTRIES.put(key, registry);
+    }
+    return registry;
+  }
+
+  private ReloadingModelRegistry(File directory) throws IOException {
+    this.directory = directory;
+    this.modelFile = new File(directory, MODEL_FILE_NAME);
+    this.classifier = new AtomicReference<SequenceClassifier<String>>();
+    this.swapCount = new AtomicLong();
+    this.failedLoadCount = new AtomicLong();
+
+    // the first model is loaded before anyone can ask for it
+    long start = System.nanoTime();
+    this.classifier.set(ClassifierRegistry.loadClassifier(this.modelFile));
+    this.lastLoadMillis = (System.nanoTime() - start) / 1000000;
+    this.lastSwapTime = System.currentTimeMillis();
+
+    // watch for new models in the background
+    this.watchService = FileSystems.getDefault().newWatchService();
+    directory.toPath().register(
+        this.watchService,
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY);
+    this.watcher = new Thread(new Runnable() {
+      public void run() {
+        ReloadingModelRegistry.this.watch();
+      }
+    }, "model-watcher-" + directory.getName());
+    this.watcher.setDaemon(true);
+    this.watcher.start();
+
+    try {
+      this.objectName = new ObjectName("com.cbsi.ner:type=ReloadingModelRegistry,directory="
+          + ObjectName.quote(directory.getPath()));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.objectName);
+    } catch (JMException e) {
+      LOGGER.log(Level.WARNING, "could not register model registry metrics", e);
+      this.objectName = null;
+    }
+  }
+
+  /**
+   * @return the classifier of the most recently loaded model
+   */
+  public SequenceClassifier<String> getClassifier() {
+    return this.classifier.get();
+  }
+
+  public String getModelDirectory() {
+    return this.directory.getPath();
+  }
+
+  public long getSwapCount() {
+    return this.swapCount.get();
+  }
+
+  public long getFailedLoadCount() {
+    return this.failedLoadCount.get();
+  }
+
+  public long getLastLoadMillis() {
+    return this.lastLoadMillis;
+  }
+
+  public long getLastSwapTime() {
+    return this.lastSwapTime;
+  }
+
+  public synchronized void reload() {
+    long start = System.nanoTime();
+    SequenceClassifier<String> newClassifier;
+    try {
+      newClassifier = ClassifierRegistry.loadClassifier(this.modelFile);
+      warmUp(newClassifier);
+    } catch (Exception e) {
+      this.failedLoadCount.incrementAndGet();
+      LOGGER.log(Level.WARNING, "could not load " + this.modelFile + ", keeping the old model", e);
+      return;
+    }
+    this.classifier.set(newClassifier);
+    this.lastLoadMillis = (System.nanoTime() - start) / 1000000;
+    this.lastSwapTime = System.currentTimeMillis();
+    this.swapCount.incrementAndGet();
+    LOGGER.info(String.format(
+        "swapped in %s after loading it in %d ms",
+        this.modelFile,
+        this.lastLoadMillis));
+  }
+
+  /**
+   * Stop watching the directory. Annotators that hold the registry keep the current model.
+   */
+  public void close() throws IOException {
+    synchronized (ReloadingModelRegistry.class) {
+      REGISTRIES.remove(this.directory.getPath());
+    }
+    this.watchService.close();
+    this.watcher.interrupt();
+    if (this.objectName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+      } catch (JMException e) {
+        LOGGER.log(Level.WARNING, "could not unregister model registry metrics", e);
+      }
+    }
+  }
+
+  private void watch() {
+    boolean changed = false;
+    long lastChange = 0;
+    try {
+      while (true) {
+        WatchKey key = this.watchService.poll(QUIET_MILLIS / 4, TimeUnit.MILLISECONDS);
+        if (key != null) {
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (MODEL_FILE_NAME.equals(String.valueOf(event.context()))) {
+              changed = true;
+              lastChange = System.currentTimeMillis();
+            }
+          }
+          key.reset();
+        }
+        if (changed && System.currentTimeMillis() - lastChange >= QUIET_MILLIS) {
+          changed = false;
+          this.reload();
+        }
+      }
+    } catch (InterruptedException e) {
+      // closed
+    } catch (ClosedWatchServiceException e) {
+      // closed
+    }
+  }
+
+  /**
+   * Run a few sentences through a new classifier, so that the first documents it sees are not
+   * slowed down by its lazy initialization.
+   */
+  private static void warmUp(SequenceClassifier<String> classifier) throws Exception {
+    List<List<Feature>> sentence = new ArrayList<List<Feature>>();
+    for (int i = 0; i < 20; ++i) {
+      sentence.add(Arrays.asList(new Feature("CoveredText", "warmup" + i)));
+    }
+    for (int i = 0; i < 100; ++i) {
+      classifier.classify(sentence);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.classifier.SequenceClassifier;
+import org.cleartk.classifier.SequenceClassifierFactory;
+import org.uimafit.component.initialize.ConfigurationParameterInitializer;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.ConfigurationParameterFactory;
+import org.uimafit.factory.initializable.Initializable;
+
+/**
+ * A classifier factory that hands out the current classifier of the {@link ReloadingModelRegistry}
+ * of a model directory. This only covers the classifier an annotator starts with; to pick up later
+ * models, the annotator must also ask the registry for its classifier at the start of each
+ * document, as {@link com.cbsi.ner.NamedEntityChunker} does when {@link #PARAM_MODEL_DIRECTORY} is
+ * set.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class ReloadingSequenceClassifierFactory implements SequenceClassifierFactory<String>,
+    Initializable {
+
+  public static final String PARAM_MODEL_DIRECTORY = ConfigurationParameterFactory.createConfigurationParameterName(
+      ReloadingSequenceClassifierFactory.class,
+      "modelDirectory");
+
+  @ConfigurationParameter(
+      mandatory = true,
+      description = "provides the directory that is watched for new model.jar files.")
+  private String modelDirectory;
+
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    ConfigurationParameterInitializer.initialize(this, context);
+  }
+
+  public void setModelDirectory(String modelDirectory) {
+    this.modelDirectory = modelDirectory;
+  }
+
+  public SequenceClassifier<String> createClassifier() throws IOException {
+    return ReloadingModelRegistry.get(new File(this.modelDirectory)).getClassifier();
+  }
+}
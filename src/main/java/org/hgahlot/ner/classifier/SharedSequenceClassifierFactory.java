@@ -0,0 +1,70 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.classifier.SequenceClassifier;
+import org.cleartk.classifier.SequenceClassifierFactory;
+import org.cleartk.classifier.jar.GenericJarClassifierFactory;
+import org.uimafit.component.initialize.ConfigurationParameterInitializer;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.initializable.Initializable;
+
+/**
+ * A classifier factory that hands out the shared classifier of the {@link ClassifierRegistry}
+ * rather than loading a new one. It reads the same
+ * {@link GenericJarClassifierFactory#PARAM_CLASSIFIER_JAR_PATH} parameter as the default factory, so
+ * an annotator is switched to shared models by only setting its classifier factory class name to
+ * this class. Classifiers that are not safe to call concurrently are not shared; each annotator
+ * gets its own copy, as with the default factory.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class SharedSequenceClassifierFactory implements SequenceClassifierFactory<String>,
+    Initializable {
+
+  @ConfigurationParameter(
+      name = GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH,
+      mandatory = true,
+      description = "provides the path to the jar file that should be used to instantiate the classifier.")
+  private String classifierJarPath;
+
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    ConfigurationParameterInitializer.initialize(this, context);
+  }
+
+  public void setClassifierJarPath(String classifierJarPath) {
+    this.classifierJarPath = classifierJarPath;
+  }
+
+  public SequenceClassifier<String> createClassifier() throws IOException {
+    return ClassifierRegistry.getClassifier(new File(this.classifierJarPath));
+  }
+}
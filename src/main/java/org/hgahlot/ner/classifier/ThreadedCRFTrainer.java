@@ -0,0 +1,315 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.cleartk.classifier.jar.JarClassifierBuilder;
+import org.cleartk.classifier.mallet.MalletCRFStringOutcomeClassifierBuilder;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.fst.CRFCacheStaleIndicator;
+import cc.mallet.fst.CRFOptimizableByBatchLabelLikelihood;
+import cc.mallet.fst.SimpleTagger.SimpleTaggerSentence2FeatureVectorSequence;
+import cc.mallet.fst.ThreadedOptimizable;
+import cc.mallet.fst.Transducer;
+import cc.mallet.optimize.LimitedMemoryBFGS;
+import cc.mallet.optimize.OptimizationException;
+import cc.mallet.pipe.Pipe;
+import cc.mallet.pipe.iterator.LineGroupIterator;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.FeatureVectorSequence;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.LabelAlphabet;
+import cc.mallet.types.LabelSequence;
+
+/**
+ * Trains the Mallet CRF of a training directory written by a
+ * {@link org.cleartk.classifier.mallet.MalletCRFStringOutcomeDataWriter} or a
+ * {@link BinaryMalletCRFDataWriter}, in place of
+ * {@link org.cleartk.classifier.jar.Train}, but computing the label likelihood and its gradient on
+ * several threads: the training instances are split into one batch per thread, and the batch
+ * gradients are summed before each L-BFGS step.
+ * 
+ * The CRF is set up the way Mallet's SimpleTagger (which {@link org.cleartk.classifier.jar.Train}
+ * runs) sets it up by default: first-order states, "O" as the default label, and no transitions
+ * through labels containing whitespace. The trained CRF is packaged into the directory's model.jar
+ * as usual, so the model is used exactly like one trained by
+ * {@link org.cleartk.classifier.jar.Train}.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class ThreadedCRFTrainer {
+
+  /**
+   * The name of the file that {@link MalletCRFStringOutcomeClassifierBuilder} packages the trained
+   * CRF from.
+   */
+  public static final String MODEL_FILE_NAME = "model.malletcrf";
+
+  public static final int DEFAULT_ITERATIONS = 500;
+
+  public static final double DEFAULT_TOLERANCE = 0.0001;
+
+  public static final double DEFAULT_GAUSSIAN_VARIANCE = 10.0;
+
+  private static final String DEFAULT_LABEL = "O";
+
+  private int threads;
+
+  private int iterations;
+
+  private double tolerance;
+
+  private double gaussianVariance;
+
+  public ThreadedCRFTrainer(int threads) {
+    this(threads, DEFAULT_ITERATIONS, DEFAULT_TOLERANCE, DEFAULT_GAUSSIAN_VARIANCE);
+  }
+
+  /**
+   * @param threads
+   *          the number of threads (and batches of instances) for the likelihood computation
+   * @param iterations
+   *          the maximum number of L-BFGS iterations
+   * @param tolerance
+   *          the relative change in likelihood under which L-BFGS has converged
+   * @param gaussianVariance
+   *          the variance of the Gaussian prior on the weights
+   */
+  public ThreadedCRFTrainer(int threads, int iterations, double tolerance, double gaussianVariance) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("expected at least one thread, found " + threads);
+    }
+    this.threads = threads;
+    this.iterations = iterations;
+    this.tolerance = tolerance;
+    this.gaussianVariance = gaussianVariance;
+  }
+
+  /**
+   * Create a trainer configured by the SimpleTagger arguments that would otherwise be passed to
+   * {@link org.cleartk.classifier.jar.Train}, so that both train the same CRF. Only the arguments
+   * this trainer understands are accepted: <code>--iterations</code> and
+   * <code>--gaussian-variance</code>, and <code>--threads</code>, which is overridden.
+   * 
+   * @throws IllegalArgumentException
+   *           if any other argument is given, since the CRF would then differ from the one
+   *           SimpleTagger trains
+   */
+  public static ThreadedCRFTrainer fromTrainingArguments(int threads, List<String> arguments) {
+    int iterations = DEFAULT_ITERATIONS;
+    double gaussianVariance = DEFAULT_GAUSSIAN_VARIANCE;
+    for (int i = 0; i < arguments.size(); ++i) {
+      String name = arguments.get(i);
+      if (i + 1 == arguments.size()) {
+        throw new IllegalArgumentException("expected a value after training argument " + name);
+      }
+      String value = arguments.get(++i);
+      if (name.equals("--iterations")) {
+        iterations = Integer.parseInt(value);
+      } else if (name.equals("--gaussian-variance")) {
+        gaussianVariance = Double.parseDouble(value);
+      } else if (!name.equals("--threads")) {
+        throw new IllegalArgumentException(String.format(
+            "unsupported training argument for %s: %s %s",
+            ThreadedCRFTrainer.class.getSimpleName(),
+            name,
+            value));
+      }
+    }
+    return new ThreadedCRFTrainer(threads, iterations, DEFAULT_TOLERANCE, gaussianVariance);
+  }
+
+  public int getThreads() {
+    return this.threads;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d threads, %d iterations, tolerance %g, Gaussian variance %g",
+        this.threads,
+        this.iterations,
+        this.tolerance,
+        this.gaussianVariance);
+  }
+
+  /**
+   * Train the CRF on the directory's training data and package it into the directory's model.jar.
+   * 
+   * @return true if L-BFGS converged before the maximum number of iterations
+   */
+  public boolean train(File directory) throws Exception {
+    JarClassifierBuilder<?> builder = JarClassifierBuilder.fromTrainingDirectory(directory);
+    if (!(builder instanceof MalletCRFStringOutcomeClassifierBuilder)) {
+      throw new IllegalArgumentException(String.format(
+          "expected Mallet CRF training data in %s, found data for %s",
+          directory,
+          builder.getClass().getName()));
+    }
+
+    File modelFile = new File(directory, MODEL_FILE_NAME);
+    boolean converged = this.train(readTrainingData(directory, builder), modelFile);
+    builder.packageClassifier(directory);
+    return converged;
+  }
+
+  /**
+   * Read the training data of a directory as SimpleTagger would: from the directory's
+   * {@link BinarySequenceFile} if it has one, and otherwise from the builder's text training data.
+   */
+  public static InstanceList readTrainingData(File directory, JarClassifierBuilder<?> builder)
+      throws IOException {
+    Pipe pipe = new SimpleTaggerSentence2FeatureVectorSequence();
+    pipe.getTargetAlphabet().lookupIndex(DEFAULT_LABEL);
+    pipe.setTargetProcessing(true);
+    InstanceList instances = new InstanceList(pipe);
+    File binaryFile = BinarySequenceDataWriter_ImplBase.getTrainingDataFile(directory);
+    if (binaryFile.exists()) {
+      readBinaryTrainingData(binaryFile, instances);
+    } else {
+      FileReader reader = new FileReader(builder.getTrainingDataFile(directory));
+      try {
+        instances.addThruPipe(new LineGroupIterator(reader, Pattern.compile("^\\s*$"), true));
+      } finally {
+        reader.close();
+      }
+    }
+    return instances;
+  }
+
+  /**
+   * Add the sequences of a {@link BinarySequenceFile} to the instances, building the feature
+   * vectors directly from the ids instead of parsing text, but with the same alphabets as the
+   * instances' SimpleTagger pipe would have built.
+   */
+  private static void readBinaryTrainingData(File file, InstanceList instances) throws IOException {
+    Pipe pipe = instances.getPipe();
+    Alphabet features = pipe.getDataAlphabet();
+    LabelAlphabet labels = (LabelAlphabet) pipe.getTargetAlphabet();
+    BinarySequenceFile.Reader reader = new BinarySequenceFile.Reader(file, 1 << 16);
+    try {
+      int[] featureMap = new int[reader.getFeatureNames().length];
+      for (int i = 0; i < featureMap.length; ++i) {
+        featureMap[i] = features.lookupIndex(reader.getFeatureNames()[i]);
+      }
+      int[] labelMap = new int[reader.getLabels().length];
+      for (int i = 0; i < labelMap.length; ++i) {
+        labelMap[i] = labels.lookupIndex(reader.getLabels()[i]);
+      }
+      while (reader.next()) {
+        FeatureVector[] vectors = new FeatureVector[reader.length];
+        int[] sequenceLabels = new int[reader.length];
+        for (int i = 0; i < reader.length; ++i) {
+          int begin = reader.offsets[i];
+          int[] ids = new int[reader.offsets[i + 1] - begin];
+          for (int k = 0; k < ids.length; ++k) {
+            ids[k] = featureMap[reader.ids[begin + k]];
+          }
+          vectors[i] = new FeatureVector(features, ids);
+          sequenceLabels[i] = labelMap[reader.sequenceLabels[i]];
+        }
+        instances.add(new Instance(
+            new FeatureVectorSequence(vectors),
+            new LabelSequence(labels, sequenceLabels),
+            null,
+            null));
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Train a CRF on the instances and save it to the given file.
+   * 
+   * @return true if L-BFGS converged before the maximum number of iterations
+   */
+  public boolean train(InstanceList instances, File modelFile) throws IOException {
+    // set up the CRF states as SimpleTagger would
+    CRF crf = new CRF(instances.getPipe(), (Pipe) null);
+    String startName = crf.addOrderNStates(
+        instances,
+        new int[] { 1 },
+        null,
+        DEFAULT_LABEL,
+        Pattern.compile("\\s"),
+        Pattern.compile(".*"),
+        true);
+    for (int i = 0; i < crf.numStates(); ++i) {
+      crf.getState(i).setInitialWeight(Transducer.IMPOSSIBLE_WEIGHT);
+    }
+    crf.getState(startName).setInitialWeight(0.0);
+    crf.setWeightsDimensionAsIn(instances, false);
+
+    // optimize the likelihood, one batch of instances per thread
+    CRFOptimizableByBatchLabelLikelihood likelihood = new CRFOptimizableByBatchLabelLikelihood(
+        crf,
+        instances,
+        this.threads);
+    likelihood.setGaussianPriorVariance(this.gaussianVariance);
+    ThreadedOptimizable optimizable = new ThreadedOptimizable(
+        likelihood,
+        instances,
+        crf.getParameters().getNumFactors(),
+        new CRFCacheStaleIndicator(crf));
+    boolean converged;
+    try {
+      LimitedMemoryBFGS optimizer = new LimitedMemoryBFGS(optimizable);
+      optimizer.setTolerance(this.tolerance);
+      try {
+        converged = optimizer.optimize(this.iterations);
+      } catch (IllegalArgumentException e) {
+        // L-BFGS gives up when its line search cannot make progress, which is convergence
+        converged = true;
+      } catch (OptimizationException e) {
+        converged = true;
+      }
+    } finally {
+      optimizable.shutdown();
+    }
+
+    // save the CRF where the builder expects it
+    ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(
+        new FileOutputStream(modelFile)));
+    try {
+      output.writeObject(crf);
+    } finally {
+      output.close();
+    }
+    return converged;
+  }
+}
@@ -0,0 +1,122 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.classifier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.cleartk.classifier.jar.JarClassifierBuilder;
+
+/**
+ * Merges the training directories written by several data writers of the same type, each over a
+ * consecutive run of the documents, into the training directory a single data writer would have
+ * written for all the documents in order.
+ * 
+ * The text training data files are concatenated, and {@link BinarySequenceFile}s are merged with
+ * their dictionaries; every other file (the classifier builder, the encoders) must not depend on
+ * the data, and is copied from the first shard.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class TrainingDataShards {
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  /**
+   * @param shardDirectories
+   *          the training directories of the shards, in document order
+   * @param directory
+   *          the training directory to write
+   */
+  public static void merge(List<File> shardDirectories, File directory) throws Exception {
+    if (shardDirectories.isEmpty()) {
+      throw new IllegalArgumentException("expected at least one shard to merge");
+    }
+    File firstShard = shardDirectories.get(0);
+    JarClassifierBuilder<?> builder = JarClassifierBuilder.fromTrainingDirectory(firstShard);
+    String textFileName = builder.getTrainingDataFile(firstShard).getName();
+    String binaryFileName = BinarySequenceDataWriter_ImplBase.TRAINING_DATA_FILE_NAME;
+    String dictionaryFileName = binaryFileName + BinarySequenceFile.DICTIONARY_EXTENSION;
+
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("could not create " + directory);
+    }
+    File[] files = firstShard.listFiles();
+    Arrays.sort(files);
+    for (File file : files) {
+      String name = file.getName();
+      if (name.equals(textFileName)) {
+        concatenate(shardFiles(shardDirectories, name), new File(directory, name));
+      } else if (name.equals(binaryFileName)) {
+        BinarySequenceFile.merge(
+            shardFiles(shardDirectories, name),
+            new File(directory, name),
+            BUFFER_SIZE);
+      } else if (name.equals(dictionaryFileName)) {
+        // written by the merge of the binary file
+      } else if (file.isDirectory()) {
+        FileUtils.copyDirectory(file, new File(directory, name));
+      } else {
+        FileUtils.copyFile(file, new File(directory, name));
+      }
+    }
+  }
+
+  private static List<File> shardFiles(List<File> shardDirectories, String name) {
+    List<File> files = new ArrayList<File>();
+    for (File shardDirectory : shardDirectories) {
+      files.add(new File(shardDirectory, name));
+    }
+    return files;
+  }
+
+  private static void concatenate(List<File> files, File file) throws IOException {
+    OutputStream output = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+    try {
+      for (File part : files) {
+        InputStream input = new BufferedInputStream(new FileInputStream(part), BUFFER_SIZE);
+        try {
+          IOUtils.copy(input, output);
+        } finally {
+          input.close();
+        }
+      }
+    } finally {
+      output.close();
+    }
+  }
+}
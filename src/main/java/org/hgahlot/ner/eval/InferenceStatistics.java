@@ -0,0 +1,293 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.cleartk.eval.AnnotationStatistics;
+
+/**
+ * What a model costs at inference, measured while it tags the documents of an evaluation: the
+ * number of tokens per second, the percentiles of the time taken per document, the time spent in
+ * each annotator, the peak heap, and the time taken to load the model. The time of a document is
+ * the sum of the times of the annotators that ran on it, as measured by a {@link TimedPipeline}.
+ * Annotators whose results were replayed from a cache did not run, so they are not counted.
+ * 
+ * Statistics gathered separately (e.g. by several threads, each with its own instance) can be
+ * merged with {@link #addAll(InferenceStatistics)}. The report is available as text, from
+ * {@link #toString()}, and as JSON, from {@link #toJson(AnnotationStatistics)}.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class InferenceStatistics {
+
+  private long[] documentTimes;
+
+  private int numDocuments;
+
+  private long numTokens;
+
+  private long totalTime;
+
+  private Map<String, Long> annotatorTimes;
+
+  private long modelLoadTime;
+
+  private long peakHeap;
+
+  public InferenceStatistics() {
+    this.documentTimes = new long[256];
+    this.annotatorTimes = new LinkedHashMap<String, Long>();
+  }
+
+  /**
+   * Forget the peak heap usage so far, so that {@link #updatePeakHeap()} measures the peak from now
+   * on. This resets the peaks of the whole JVM.
+   */
+  public static void resetPeakHeap() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  /**
+   * Record the peak heap usage since the last {@link #resetPeakHeap()}, as the sum of the peaks of
+   * the heap memory pools (an upper bound, since the pools need not peak at the same time).
+   */
+  public void updatePeakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    this.peakHeap = Math.max(this.peakHeap, peak);
+  }
+
+  /**
+   * Record the tagging of one document.
+   * 
+   * @param time
+   *          the time taken to tag the document, in nanoseconds
+   */
+  public void addDocument(int tokens, long time) {
+    if (this.numDocuments == this.documentTimes.length) {
+      this.documentTimes = Arrays.copyOf(this.documentTimes, this.numDocuments * 2);
+    }
+    this.documentTimes[this.numDocuments] = time;
+    ++this.numDocuments;
+    this.numTokens += tokens;
+    this.totalTime += time;
+  }
+
+  /**
+   * @param time
+   *          the time spent in the annotator, in nanoseconds
+   */
+  public void addAnnotatorTime(String annotator, long time) {
+    Long total = this.annotatorTimes.get(annotator);
+    this.annotatorTimes.put(annotator, total == null ? time : total + time);
+  }
+
+  /**
+   * @param time
+   *          the time taken to load the model, in nanoseconds
+   */
+  public void addModelLoadTime(long time) {
+    this.modelLoadTime += time;
+  }
+
+  /**
+   * Add the documents, times and peak heap of other statistics to these ones. The model load times
+   * are added too, so after merging the statistics of workers that each loaded the model, it is
+   * the total time spent loading.
+   */
+  public void addAll(InferenceStatistics other) {
+    for (int i = 0; i < other.numDocuments; ++i) {
+      if (this.numDocuments == this.documentTimes.length) {
+        this.documentTimes = Arrays.copyOf(this.documentTimes, this.numDocuments * 2);
+      }
+      this.documentTimes[this.numDocuments] = other.documentTimes[i];
+      ++this.numDocuments;
+    }
+    this.numTokens += other.numTokens;
+    this.totalTime += other.totalTime;
+    for (Map.Entry<String, Long> entry : other.annotatorTimes.entrySet()) {
+      this.addAnnotatorTime(entry.getKey(), entry.getValue());
+    }
+    this.modelLoadTime += other.modelLoadTime;
+    this.peakHeap = Math.max(this.peakHeap, other.peakHeap);
+  }
+
+  public int getNumDocuments() {
+    return this.numDocuments;
+  }
+
+  public long getNumTokens() {
+    return this.numTokens;
+  }
+
+  /**
+   * @return the number of tokens tagged per second of tagging time
+   */
+  public double getTokensPerSecond() {
+    return this.totalTime == 0 ? 0.0 : this.numTokens / (this.totalTime / 1e9);
+  }
+
+  /**
+   * @param percentile
+   *          between 0 and 100
+   * @return the time per document, in milliseconds, that the given percentage of documents took at
+   *         most (by the nearest rank)
+   */
+  public double getLatencyPercentile(double percentile) {
+    if (this.numDocuments == 0) {
+      return 0.0;
+    }
+    long[] sorted = Arrays.copyOf(this.documentTimes, this.numDocuments);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+    return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)] / 1e6;
+  }
+
+  /**
+   * @return the peak heap usage, in bytes
+   */
+  public long getPeakHeap() {
+    return this.peakHeap;
+  }
+
+  /**
+   * @return the time taken to load the model, in milliseconds
+   */
+  public double getModelLoadMillis() {
+    return this.modelLoadTime / 1e6;
+  }
+
+  /**
+   * @return the time spent in each annotator, in milliseconds, in the order they were first seen
+   */
+  public Map<String, Double> getAnnotatorMillis() {
+    Map<String, Double> millis = new LinkedHashMap<String, Double>();
+    for (Map.Entry<String, Long> entry : this.annotatorTimes.entrySet()) {
+      millis.put(entry.getKey(), entry.getValue() / 1e6);
+    }
+    return millis;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder report = new StringBuilder();
+    report.append(String.format(
+        Locale.US,
+        "%d documents, %d tokens, %.1f tokens/sec\n",
+        this.numDocuments,
+        this.numTokens,
+        this.getTokensPerSecond()));
+    report.append(String.format(
+        Locale.US,
+        "latency per document: p50 %.2f ms, p95 %.2f ms, p99 %.2f ms\n",
+        this.getLatencyPercentile(50),
+        this.getLatencyPercentile(95),
+        this.getLatencyPercentile(99)));
+    for (Map.Entry<String, Double> entry : this.getAnnotatorMillis().entrySet()) {
+      report.append(String.format(Locale.US, "%s: %.1f ms\n", entry.getKey(), entry.getValue()));
+    }
+    report.append(String.format(
+        Locale.US,
+        "model load time: %.1f ms, peak heap: %.1f MB\n",
+        this.getModelLoadMillis(),
+        this.peakHeap / 1048576.0));
+    return report.toString();
+  }
+
+  /**
+   * @param stats
+   *          the accuracy of the same evaluation, reported with the costs, or null
+   * @return the statistics as a JSON object
+   */
+  public String toJson(AnnotationStatistics<String> stats) {
+    StringBuilder json = new StringBuilder();
+    json.append("{\n");
+    if (stats != null) {
+      json.append(String.format(Locale.US, "  \"precision\": %.6f,\n", stats.precision()));
+      json.append(String.format(Locale.US, "  \"recall\": %.6f,\n", stats.recall()));
+      json.append(String.format(Locale.US, "  \"f1\": %.6f,\n", stats.f1()));
+    }
+    json.append(String.format("  \"documents\": %d,\n", this.numDocuments));
+    json.append(String.format("  \"tokens\": %d,\n", this.numTokens));
+    json.append(String.format(Locale.US, "  \"tokensPerSecond\": %.3f,\n", this.getTokensPerSecond()));
+    json.append("  \"latencyMillis\": {");
+    json.append(String.format(Locale.US, "\"p50\": %.3f, ", this.getLatencyPercentile(50)));
+    json.append(String.format(Locale.US, "\"p95\": %.3f, ", this.getLatencyPercentile(95)));
+    json.append(String.format(Locale.US, "\"p99\": %.3f},\n", this.getLatencyPercentile(99)));
+    json.append("  \"annotatorMillis\": {");
+    boolean first = true;
+    for (Map.Entry<String, Double> entry : this.getAnnotatorMillis().entrySet()) {
+      if (!first) {
+        json.append(", ");
+      }
+      json.append(quote(entry.getKey()));
+      json.append(String.format(Locale.US, ": %.3f", entry.getValue()));
+      first = false;
+    }
+    json.append("},\n");
+    json.append(String.format(Locale.US, "  \"modelLoadMillis\": %.3f,\n", this.getModelLoadMillis()));
+    json.append(String.format("  \"peakHeapBytes\": %d\n", this.peakHeap));
+    json.append("}\n");
+    return json.toString();
+  }
+
+  public void writeJson(File file, AnnotationStatistics<String> stats) throws IOException {
+    FileUtils.writeStringToFile(file, this.toJson(stats), "UTF-8");
+  }
+
+  private static String quote(String string) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (int i = 0; i < string.length(); ++i) {
+      char c = string.charAt(i);
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
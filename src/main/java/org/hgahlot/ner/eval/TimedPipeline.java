@@ -0,0 +1,91 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+/**
+ * A sequence of annotators run one after the other, each timed with {@link System#nanoTime()}, so
+ * that the time of every annotator is known to the nanosecond even for documents that take well
+ * under a millisecond, and the times of the annotators add up to the time of the pipeline.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class TimedPipeline {
+
+  private List<AnalysisEngine> engines;
+
+  private List<String> names;
+
+  public TimedPipeline(List<AnalysisEngineDescription> descriptions)
+      throws ResourceInitializationException {
+    this.engines = new ArrayList<AnalysisEngine>();
+    this.names = new ArrayList<String>();
+    for (AnalysisEngineDescription description : descriptions) {
+      this.engines.add(AnalysisEngineFactory.createPrimitive(description));
+      String className = description.getAnnotatorImplementationName();
+      this.names.add(className.substring(className.lastIndexOf('.') + 1));
+    }
+  }
+
+  /**
+   * Run the annotators over the CAS, adding the time of each to the statistics.
+   * 
+   * @return the time taken by all the annotators, in nanoseconds
+   */
+  public long process(JCas jCas, InferenceStatistics inferenceStats)
+      throws AnalysisEngineProcessException {
+    long total = 0;
+    for (int i = 0; i < this.engines.size(); ++i) {
+      long start = System.nanoTime();
+      this.engines.get(i).process(jCas);
+      long time = System.nanoTime() - start;
+      inferenceStats.addAnnotatorTime(this.names.get(i), time);
+      total += time;
+    }
+    return total;
+  }
+
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    for (AnalysisEngine engine : this.engines) {
+      engine.collectionProcessComplete();
+    }
+  }
+
+  public void destroy() {
+    for (AnalysisEngine engine : this.engines) {
+      engine.destroy();
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.feature;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cleartk.classifier.Feature;
+
+/**
+ * Hashes features into a space of 2^bits integer ids, using the 32-bit MurmurHash3 mixing
+ * functions directly over the characters of the feature name and value, so that no intermediate
+ * Strings are built.
+ *
+ * Context features are not hashed from their names (e.g. "Preceding_1_CoveredText_Samsung") but
+ * by mixing the full hash of the neighbour's feature with its position relative to the focus token.
+ *
+ * The hasher also keeps one {@link Feature} per id it has handed out, to be given to classifiers
+ * that can only consume {@link Feature} objects. The pool is filled as ids are requested, so it only
+ * grows with the ids actually used, not with 2^bits. It is not thread-safe, so each annotator should
+ * have its own hasher.
+ *
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class FeatureHasher {
+
+  /**
+   * The name of the {@link Feature}s created for hashed ids.
+   */
+  public static final String FEATURE_NAME = "Hash";
+
+  public static final int MIN_BITS = 10;
+
+  public static final int MAX_BITS = 24;
+
+  private static final int C1 = 0xcc9e2d51;
+
+  private static final int C2 = 0x1b873593;
+
+  private static final int FEATURE_SEED = 0x5bd1e995;
+
+  private static final int CONTEXT_SEED = 0x27d4eb2f;
+
+  private static final int OUT_OF_BOUNDS = 0x7f4a7c15;
+
+  private int bits;
+
+  private int mask;
+
+  private Map<Integer, Feature> features;
+
+  public FeatureHasher(int bits) {
+    if (bits < MIN_BITS || bits > MAX_BITS) {
+      throw new IllegalArgumentException(String.format(
+          "expected between %d and %d hash bits, found %d",
+          MIN_BITS,
+          MAX_BITS,
+          bits));
+    }
+    this.bits = bits;
+    this.mask = (1 << bits) - 1;
+    this.features = new HashMap<Integer, Feature>();
+  }
+
+  public int getBits() {
+    return this.bits;
+  }
+
+  /**
+   * @return the number of distinct ids, 2^bits
+   */
+  public int getSize() {
+    return this.mask + 1;
+  }
+
+  /**
+   * @return the full 32-bit hash of the feature's name and value
+   */
+  public int hash(Feature feature) {
+    int h = FEATURE_SEED;
+    int length = 0;
+    String name = feature.getName();
+    if (name != null) {
+      h = mixString(h, name);
+      length += name.length();
+    }
+    h = mix(h, '=');
+    Object value = feature.getValue();
+    if (value != null) {
+      String valueString = value.toString();
+      h = mixString(h, valueString);
+      length += valueString.length();
+    }
+    return finish(h, length);
+  }
+
+  /**
+   * @param hash
+   *          the full 32-bit hash of a feature of a neighbouring token, as returned by
+   *          {@link #hash(Feature)}
+   * @param position
+   *          the position of the neighbour relative to the focus token, e.g. -1 for the preceding
+   *          token
+   * @return the full 32-bit hash of the feature in that context position
+   */
+  public int hashContext(int hash, int position) {
+    int h = mix(CONTEXT_SEED, position);
+    h = mix(h, hash);
+    return finish(h, 8);
+  }
+
+  /**
+   * @return the full 32-bit hash of the feature marking that there is no token at the given
+   *         context position
+   */
+  public int hashOutOfBounds(int position) {
+    return this.hashContext(OUT_OF_BOUNDS, position);
+  }
+
+  /**
+   * @return the id in [0, 2^bits) of a full 32-bit hash
+   */
+  public int index(int hash) {
+    return hash & this.mask;
+  }
+
+  /**
+   * @return the (shared) {@link Feature} representing the given id
+   */
+  public Feature feature(int id) {
+    Feature feature = this.features.get(id);
+    if (feature == null) {
+      feature = new Feature(FEATURE_NAME, Integer.toString(id));
+      this.features.put(id, feature);
+    }
+    return feature;
+  }
+
+  private static int mixString(int h, String string) {
+    int length = string.length();
+    int i = 0;
+    for (; i + 1 < length; i += 2) {
+      h = mix(h, string.charAt(i) | (string.charAt(i + 1) << 16));
+    }
+    if (i < length) {
+      int k = string.charAt(i);
+      k *= C1;
+      k = Integer.rotateLeft(k, 15);
+      k *= C2;
+      h ^= k;
+    }
+    return h;
+  }
+
+  private static int mix(int h, int k) {
+    k *= C1;
+    k = Integer.rotateLeft(k, 15);
+    k *= C2;
+    h ^= k;
+    h = Integer.rotateLeft(h, 13);
+    return h * 5 + 0xe6546b64;
+  }
+
+  private static int finish(int h, int length) {
+    h ^= length;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
@@ -0,0 +1,165 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.feature;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.jcas.JCas;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.feature.extractor.CleartkExtractorException;
+import org.cleartk.classifier.feature.extractor.simple.SimpleFeatureExtractor;
+import org.cleartk.token.type.Token;
+import org.uimafit.util.JCasUtil;
+
+/**
+ * Extracts the same information as a token feature extractor plus a window of preceding and
+ * following tokens, but as hashed feature ids in a {@link HashedFeatureSequence} instead of as
+ * {@link Feature} lists. Each token's features are hashed once per CAS, and the context features
+ * are derived from those hashes without building their names.
+ *
+ * Like the {@link org.cleartk.classifier.feature.extractor.CleartkExtractor} it replaces, the
+ * context window is by default not bounded by the sentence, and positions past the start or end of
+ * the document (or of the sentence, if bounded) produce an out-of-bounds feature.
+ *
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class HashedFeatureExtractor {
+
+  private SimpleFeatureExtractor extractor;
+
+  private FeatureHasher hasher;
+
+  private int windowSize;
+
+  private boolean boundedBySentence;
+
+  private List<Token> tokens;
+
+  private Map<Integer, Integer> tokenIndexes;
+
+  private int[][] tokenHashes;
+
+  public HashedFeatureExtractor(
+      SimpleFeatureExtractor extractor,
+      FeatureHasher hasher,
+      int windowSize) {
+    this(extractor, hasher, windowSize, false);
+  }
+
+  public HashedFeatureExtractor(
+      SimpleFeatureExtractor extractor,
+      FeatureHasher hasher,
+      int windowSize,
+      boolean boundedBySentence) {
+    this.extractor = extractor;
+    this.hasher = hasher;
+    this.windowSize = windowSize;
+    this.boundedBySentence = boundedBySentence;
+    this.tokens = new ArrayList<Token>();
+    this.tokenIndexes = new HashMap<Integer, Integer>();
+  }
+
+  public FeatureHasher getHasher() {
+    return this.hasher;
+  }
+
+  /**
+   * Prepare for extracting features from a new CAS, forgetting everything about the previous one.
+   */
+  public void reset(JCas jCas) {
+    this.tokens.clear();
+    this.tokenIndexes.clear();
+    for (Token token : JCasUtil.select(jCas, Token.class)) {
+      this.tokenIndexes.put(token.getAddress(), this.tokens.size());
+      this.tokens.add(token);
+    }
+    this.tokenHashes = new int[this.tokens.size()][];
+  }
+
+  /**
+   * Forget the tokens of the current CAS.
+   */
+  public void clear() {
+    this.tokens.clear();
+    this.tokenIndexes.clear();
+    this.tokenHashes = null;
+  }
+
+  /**
+   * Fill the sequence with the hashed features of the given tokens, which must be consecutive
+   * tokens of the CAS most recently passed to {@link #reset(JCas)}.
+   */
+  public void extract(JCas jCas, List<Token> sentenceTokens, HashedFeatureSequence sequence)
+      throws CleartkExtractorException {
+    sequence.clear();
+    if (sentenceTokens.isEmpty()) {
+      return;
+    }
+    int first = this.tokenIndexes.get(sentenceTokens.get(0).getAddress());
+    int lowerBound = this.boundedBySentence ? first : 0;
+    int upperBound = this.boundedBySentence ? first + sentenceTokens.size() : this.tokens.size();
+    for (int i = 0; i < sentenceTokens.size(); ++i) {
+      int index = first + i;
+
+      // the features of the token itself
+      for (int hash : this.getTokenHashes(jCas, index)) {
+        sequence.add(this.hasher.index(hash));
+      }
+
+      // the features of the tokens in the window around it
+      for (int position = -this.windowSize; position <= this.windowSize; ++position) {
+        if (position == 0) {
+          continue;
+        }
+        int contextIndex = index + position;
+        if (contextIndex < lowerBound || contextIndex >= upperBound) {
+          sequence.add(this.hasher.index(this.hasher.hashOutOfBounds(position)));
+        } else {
+          for (int hash : this.getTokenHashes(jCas, contextIndex)) {
+            sequence.add(this.hasher.index(this.hasher.hashContext(hash, position)));
+          }
+        }
+      }
+      sequence.endToken();
+    }
+  }
+
+  private int[] getTokenHashes(JCas jCas, int index) throws CleartkExtractorException {
+    int[] hashes = this.tokenHashes[index];
+    if (hashes == null) {
+      List<Feature> features = this.extractor.extract(jCas, this.tokens.get(index));
+      hashes = new int[features.size()];
+      for (int i = 0; i < hashes.length; ++i) {
+        hashes[i] = this.hasher.hash(features.get(i));
+      }
+      this.tokenHashes[index] = hashes;
+    }
+    return hashes;
+  }
+}
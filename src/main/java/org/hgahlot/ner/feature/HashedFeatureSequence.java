@@ -0,0 +1,128 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.feature;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cleartk.classifier.Feature;
+
+/**
+ * The hashed feature ids of a sequence of tokens, stored in primitive arrays: the ids of token
+ * <code>i</code> are <code>ids[begin(i)]</code> up to (but not including) <code>ids[end(i)]</code>.
+ * All hashed features are binary, so there are no values to store.
+ *
+ * The arrays are reused when the sequence is {@link #clear() cleared}, so a single instance can be
+ * used for every sentence without further allocation once it has grown to the longest one.
+ *
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class HashedFeatureSequence {
+
+  private int[] ids;
+
+  private int[] offsets;
+
+  private int size;
+
+  private int idCount;
+
+  public HashedFeatureSequence() {
+    this.ids = new int[1024];
+    this.offsets = new int[64];
+    this.clear();
+  }
+
+  public void clear() {
+    this.size = 0;
+    this.idCount = 0;
+    this.offsets[0] = 0;
+  }
+
+  /**
+   * Add a feature id to the current (last) token.
+   */
+  public void add(int id) {
+    if (this.idCount == this.ids.length) {
+      int[] newIds = new int[this.ids.length * 2];
+      System.arraycopy(this.ids, 0, newIds, 0, this.idCount);
+      this.ids = newIds;
+    }
+    this.ids[this.idCount] = id;
+    ++this.idCount;
+  }
+
+  /**
+   * Finish the current token; ids added afterwards belong to the next token.
+   */
+  public void endToken() {
+    if (this.size + 1 == this.offsets.length) {
+      int[] newOffsets = new int[this.offsets.length * 2];
+      System.arraycopy(this.offsets, 0, newOffsets, 0, this.size + 1);
+      this.offsets = newOffsets;
+    }
+    ++this.size;
+    this.offsets[this.size] = this.idCount;
+  }
+
+  /**
+   * @return the number of tokens in the sequence
+   */
+  public int size() {
+    return this.size;
+  }
+
+  public int begin(int token) {
+    return this.offsets[token];
+  }
+
+  public int end(int token) {
+    return this.offsets[token + 1];
+  }
+
+  public int id(int index) {
+    return this.ids[index];
+  }
+
+  /**
+   * Convert the ids into {@link Feature} lists, for classifiers and data writers that only accept
+   * {@link Feature}s. The {@link Feature} objects themselves are shared, see
+   * {@link FeatureHasher#feature(int)}.
+   */
+  public List<List<Feature>> toFeatureLists(FeatureHasher hasher) {
+    List<List<Feature>> featureLists = new ArrayList<List<Feature>>(this.size);
+    for (int token = 0; token < this.size; ++token) {
+      int begin = this.begin(token);
+      int end = this.end(token);
+      List<Feature> features = new ArrayList<Feature>(end - begin);
+      for (int i = begin; i < end; ++i) {
+        features.add(hasher.feature(this.ids[i]));
+      }
+      featureLists.add(features);
+    }
+    return featureLists;
+  }
+}
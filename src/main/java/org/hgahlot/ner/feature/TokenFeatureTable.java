@@ -0,0 +1,85 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.feature;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.feature.extractor.CleartkExtractorException;
+import org.cleartk.classifier.feature.extractor.simple.SimpleFeatureExtractor;
+
+/**
+ * A feature extractor that remembers the features its delegate produced for each annotation, so
+ * that a token's base features are computed only once even though they are requested again by
+ * every context window the token falls into.
+ *
+ * The table is keyed by the address of the annotation in the CAS, so it must be {@link #clear()
+ * cleared} whenever the CAS changes. The lists handed out are unmodifiable, since the same list is
+ * returned for every request of the same token.
+ *
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class TokenFeatureTable implements SimpleFeatureExtractor {
+
+  private SimpleFeatureExtractor extractor;
+
+  private Map<Integer, List<Feature>> table;
+
+  public TokenFeatureTable(SimpleFeatureExtractor extractor) {
+    this.extractor = extractor;
+    this.table = new HashMap<Integer, List<Feature>>();
+  }
+
+  public List<Feature> extract(JCas view, Annotation focusAnnotation)
+      throws CleartkExtractorException {
+    Integer key = focusAnnotation.getAddress();
+    List<Feature> features = this.table.get(key);
+    if (features == null) {
+      features = Collections.unmodifiableList(this.extractor.extract(view, focusAnnotation));
+      this.table.put(key, features);
+    }
+    return features;
+  }
+
+  /**
+   * Forget all the features computed so far. Must be called before moving on to a new CAS.
+   */
+  public void clear() {
+    this.table.clear();
+  }
+
+  /**
+   * @return the number of annotations whose features are currently in the table
+   */
+  public int size() {
+    return this.table.size();
+  }
+}
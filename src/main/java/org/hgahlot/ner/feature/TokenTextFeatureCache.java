@@ -0,0 +1,183 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.feature;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cleartk.classifier.Feature;
+
+/**
+ * A bounded, least-recently-used cache from the covered text of a token to the features that depend
+ * only on that text (the text itself, its character ngrams and its character pattern). Product
+ * titles repeat a small vocabulary ("GB", "Samsung", "with", "inch") over and over, so most tokens
+ * find their features here instead of recomputing them.
+ * 
+ * The cache is split into segments, each an LRU map under its own lock, so that annotators on many
+ * threads can share one cache without contending on a single lock. Eviction is least-recently-used
+ * within each segment. The cached lists are handed out to every caller, so they must not be
+ * modified.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class TokenTextFeatureCache {
+
+  private static final int SEGMENTS = 16;
+
+  private static final Map<String, TokenTextFeatureCache> SHARED_CACHES = new HashMap<String, TokenTextFeatureCache>();
+
+  private int capacity;
+
+  private Segment[] segments;
+
+  private AtomicLong hits;
+
+  private AtomicLong misses;
+
+  /**
+   * @return the process-wide cache for the given kind of features, creating it with the given
+   *         capacity if this is the first request for it
+   */
+  public static synchronized TokenTextFeatureCache getShared(String key, int capacity) {
+    TokenTextFeatureCache cache = SHARED_CACHES.get(key);
+    if (cache == null) {
+      cache = new TokenTextFeatureCache(capacity);
+      SHARED_CACHES.put(key, cache);
+    }
+    return cache;
+  }
+
+  public TokenTextFeatureCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("expected a positive capacity, found " + capacity);
+    }
+    this.capacity = capacity;
+    int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+    this.segments = new Segment[SEGMENTS];
+    for (int i = 0; i < SEGMENTS; ++i) {
+      this.segments[i] = new Segment(segmentCapacity);
+    }
+    this.hits = new AtomicLong();
+    this.misses = new AtomicLong();
+  }
+
+  /**
+   * @return the cached features of the text, or null if they are not in the cache
+   */
+  public List<Feature> get(String text) {
+    Segment segment = this.getSegment(text);
+    List<Feature> features;
+    synchronized (segment) {
+      features = segment.get(text);
+    }
+    if (features == null) {
+      this.misses.incrementAndGet();
+    } else {
+      this.hits.incrementAndGet();
+    }
+    return features;
+  }
+
+  public void put(String text, List<Feature> features) {
+    Segment segment = this.getSegment(text);
+    synchronized (segment) {
+      segment.put(text, features);
+    }
+  }
+
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  /**
+   * @return the number of texts currently in the cache
+   */
+  public int size() {
+    int size = 0;
+    for (Segment segment : this.segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  public long getHitCount() {
+    return this.hits.get();
+  }
+
+  public long getMissCount() {
+    return this.misses.get();
+  }
+
+  /**
+   * @return the fraction of lookups that found their features in the cache
+   */
+  public double getHitRate() {
+    long hits = this.hits.get();
+    long total = hits + this.misses.get();
+    return total == 0 ? 0.0 : (double) hits / total;
+  }
+
+  /**
+   * Empty the cache and reset its counters.
+   */
+  public void clear() {
+    for (Segment segment : this.segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+    this.hits.set(0);
+    this.misses.set(0);
+  }
+
+  private Segment getSegment(String text) {
+    int hash = text.hashCode();
+    hash ^= hash >>> 16;
+    return this.segments[hash & (SEGMENTS - 1)];
+  }
+
+  private static class Segment extends LinkedHashMap<String, List<Feature>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private int capacity;
+
+    public Segment(int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, List<Feature>> eldest) {
+      return this.size() > this.capacity;
+    }
+  }
+}
@@ -25,13 +25,19 @@ package com.cbsi.ner.reader;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.uima.UimaContext;
+import org.apache.uima.cas.CASException;
 import org.apache.uima.collection.CollectionException;
 import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.collection.CollectionReaderDescription;
@@ -85,12 +91,97 @@ public class Conll2003GoldReader extends JCasCollectionReader_ImplBase {
       defaultValue = "true")
   private boolean loadNamedEntities;
 
+  public static final String PARAM_MEMORY_MAPPED = ConfigurationParameterFactory.createConfigurationParameterName(
+      Conll2003GoldReader.class,
+      "memoryMapped");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "If true, the data file is memory-mapped and parsed byte by byte instead of being read "
+          + "line by line. The annotations and their offsets are the same either way. The file must be "
+          + "in an ASCII-compatible encoding (e.g. UTF-8 or ISO-8859-1) and is decoded with the platform "
+          + "default charset, as the line reader does.",
+      defaultValue = "false")
+  private boolean memoryMapped;
+
+  public static final String PARAM_SHARD_INDEX = ConfigurationParameterFactory.createConfigurationParameterName(
+      Conll2003GoldReader.class,
+      "shardIndex");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "The shard of the documents to read, from 0 up to shardCount. Shards are "
+          + "consecutive runs of documents of (nearly) equal size.",
+      defaultValue = "0")
+  private int shardIndex;
+
+  public static final String PARAM_SHARD_COUNT = ConfigurationParameterFactory.createConfigurationParameterName(
+      Conll2003GoldReader.class,
+      "shardCount");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "The number of shards the documents are split into.",
+      defaultValue = "1")
+  private int shardCount;
+
+  public static final String PARAM_BEGIN_DOCUMENT = ConfigurationParameterFactory.createConfigurationParameterName(
+      Conll2003GoldReader.class,
+      "beginDocument");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "If not negative, the index of the first document to read, overriding the shard "
+          + "parameters.",
+      defaultValue = "-1")
+  private int beginDocument;
+
+  public static final String PARAM_END_DOCUMENT = ConfigurationParameterFactory.createConfigurationParameterName(
+      Conll2003GoldReader.class,
+      "endDocument");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "If not negative, the index after the last document to read, overriding the shard "
+          + "parameters.",
+      defaultValue = "-1")
+  private int endDocument;
+
+  public static final String PARAM_GOLD_VIEW_NAME = ConfigurationParameterFactory.createConfigurationParameterName(
+      Conll2003GoldReader.class,
+      "goldViewName");
+
+  @ConfigurationParameter(
+      mandatory = false,
+      description = "If set, the named entity mentions are created in a view of this name (with the same "
+          + "document text) instead of in the default view with the tokens, so that a tagger can add its "
+          + "own mentions to the default view and the two can be compared without removing any.")
+  private String goldViewName;
+
   public static final String DOCSTART = "-DOCSTART-";
 
+  private static final byte[] DOCSTART_BYTES = DOCSTART.getBytes();
+
   BufferedReader reader;
 
+  MappedFile mappedFile; // the data file, in memory-mapped mode
+
+  long position; // the start of the next line of the mapped file
+
+  CharsetDecoder decoder; // decodes non-ASCII bytes of the mapped file
+
+  TagTable tags; // one String per distinct tag, so that tags are not allocated per line
+
+  StringBuilder tokenText; // the decoded text of the current token of the mapped file
+
   boolean hasNext = true;
 
+  ConllDocumentIndex documentIndexes; // the offset of every document in the file
+
+  int firstDocumentIndex; // the index of the first document to read
+
+  int endDocumentIndex; // the index after the last document to read
+
   int documentIndex = 0;
 
   int entityIdIndex = 0;
@@ -109,21 +200,113 @@ public class Conll2003GoldReader extends JCasCollectionReader_ImplBase {
     return CollectionReaderFactory.createCollectionReader(getDescription(dir));
   }
 
+  /**
+   * @return a description of a reader for one of several disjoint shards of the file's documents
+   */
+  public static CollectionReaderDescription getShardDescription(
+      String file,
+      boolean memoryMapped,
+      int shardIndex,
+      int shardCount) throws ResourceInitializationException {
+    return CollectionReaderFactory.createDescription(
+        Conll2003GoldReader.class,
+        PARAM_DATA_FILE_NAME,
+        file,
+        PARAM_MEMORY_MAPPED,
+        memoryMapped,
+        PARAM_SHARD_INDEX,
+        shardIndex,
+        PARAM_SHARD_COUNT,
+        shardCount);
+  }
+
+  /**
+   * @return a description of a reader for one of several disjoint shards of the file's documents,
+   *         with the named entity mentions in the given view
+   */
+  public static CollectionReaderDescription getShardDescription(
+      String file,
+      boolean memoryMapped,
+      int shardIndex,
+      int shardCount,
+      String goldViewName) throws ResourceInitializationException {
+    return CollectionReaderFactory.createDescription(
+        Conll2003GoldReader.class,
+        PARAM_DATA_FILE_NAME,
+        file,
+        PARAM_MEMORY_MAPPED,
+        memoryMapped,
+        PARAM_SHARD_INDEX,
+        shardIndex,
+        PARAM_SHARD_COUNT,
+        shardCount,
+        PARAM_GOLD_VIEW_NAME,
+        goldViewName);
+  }
+
+  /**
+   * @return a description of a reader for the file, with the named entity mentions in the given
+   *         view
+   */
+  public static CollectionReaderDescription getGoldViewDescription(String file, String goldViewName)
+      throws ResourceInitializationException {
+    return CollectionReaderFactory.createDescription(
+        Conll2003GoldReader.class,
+        PARAM_DATA_FILE_NAME,
+        file,
+        PARAM_GOLD_VIEW_NAME,
+        goldViewName);
+  }
+
+  public static CollectionReaderDescription getDescription(String file, boolean memoryMapped)
+      throws ResourceInitializationException {
+    return CollectionReaderFactory.createDescription(
+        Conll2003GoldReader.class,
+        PARAM_DATA_FILE_NAME,
+        file,
+        PARAM_MEMORY_MAPPED,
+        memoryMapped);
+  }
+
   // done ajeesh
 
   public void initialize(UimaContext context) throws ResourceInitializationException {
 
     try {
       File conllFile = new File(dataFileName);
-      reader = new BufferedReader(new FileReader(conllFile));
-      // advance the reader past the first occurrence of a document start and
-      // blank line.
-      String line;
-      while ((line = reader.readLine()) != null) {
-        if (line.trim().startsWith(DOCSTART)) {
-          reader.readLine(); // read the blank line
-          break;
-        }
+
+      // find the documents to read
+      documentIndexes = ConllDocumentIndex.load(conllFile);
+      int numDocuments = documentIndexes.size();
+      if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+        throw new ResourceInitializationException(new IllegalArgumentException(String.format(
+            "expected a shard from 0 to %d, found %d",
+            shardCount - 1,
+            shardIndex)));
+      }
+      firstDocumentIndex = (int) ((long) numDocuments * shardIndex / shardCount);
+      endDocumentIndex = (int) ((long) numDocuments * (shardIndex + 1) / shardCount);
+      if (beginDocument >= 0) {
+        firstDocumentIndex = Math.min(beginDocument, numDocuments);
+      }
+      if (endDocument >= 0) {
+        endDocumentIndex = Math.min(endDocument, numDocuments);
+      }
+      endDocumentIndex = Math.max(firstDocumentIndex, endDocumentIndex);
+      documentIndex = firstDocumentIndex;
+      long offset = documentIndexes.getOffset(firstDocumentIndex < numDocuments
+          ? firstDocumentIndex
+          : numDocuments - 1);
+
+      // advance the reader past the document start and the blank line that follows it
+      if (memoryMapped) {
+        initializeMapped(conllFile, offset);
+      } else {
+        FileInputStream stream = new FileInputStream(conllFile);
+        stream.getChannel().position(offset);
+        reader = new BufferedReader(new InputStreamReader(stream));
+        reader.readLine(); // read the document start
+        reader.readLine(); // read the blank line
       }
 
       sentenceTokens = new ArrayList<Token>();
@@ -139,8 +322,8 @@ public class Conll2003GoldReader extends JCasCollectionReader_ImplBase {
 
   List<String> documentData; // contains every line from for the current document
 
-  StringBuffer documentText; // collects the text of the tokens and then we set the document text
-                             // with contents
+  StringBuilder documentText; // collects the text of the tokens and then we set the document text
+                              // with contents
 
   int sentenceStart; // the start (character offset) of the current sentence
 
@@ -163,7 +346,43 @@ public class Conll2003GoldReader extends JCasCollectionReader_ImplBase {
 
   List<Token> namedEntityTokens; // the tokens for the current named entity
 
+  JCas namedEntityView; // the view the named entity mentions are created in
+
   public void getNext(JCas jCas) throws IOException, CollectionException {
+    documentText = new StringBuilder();
+    try {
+      namedEntityView = goldViewName != null ? jCas.createView(goldViewName) : jCas;
+    } catch (CASException e) {
+      throw new CollectionException(e);
+    }
+
+    initSentence();
+    tokenPosition = 0;
+    chunkStart = 0;
+    currentChunkType = "";
+    chunkTokens.clear();
+    namedEntityStart = 0;
+    currentNamedEntityType = "";
+    namedEntityTokens.clear();
+
+    if (memoryMapped) {
+      readMappedDocument(jCas);
+    } else {
+      readDocument(jCas);
+    }
+
+    jCas.setDocumentText(documentText.toString());
+    if (namedEntityView != jCas) {
+      namedEntityView.setDocumentText(jCas.getDocumentText());
+    }
+
+    String identifier = String.format("%s#%s", dataFileName, documentIndex);
+    ViewURIUtil.setURI(jCas, new File(identifier).toURI());
+    ++documentIndex;
+
+  }
+
+  private void readDocument(JCas jCas) throws IOException {
     // read in the data for the next document from the reader
     documentData = new ArrayList<String>();
     String line;
@@ -174,72 +393,175 @@ public class Conll2003GoldReader extends JCasCollectionReader_ImplBase {
     if (line == null)
       hasNext = false;
     else
-      line = reader.readLine().trim(); // advance past the blank line that follows
-                                       // "-DOCSTART- -X- O O"
+      reader.readLine(); // advance past the blank line that follows "-DOCSTART- -X- O O"
     // (we don't want an empty sentence on the front end!)
-    documentText = new StringBuffer();
 
-    initSentence();
-    tokenPosition = 0;
-    chunkStart = 0;
+    for (String dataLine : documentData) {
+      if (dataLine.length() == 0) {
+        endSentence(jCas);
+      } else {
+        String[] dataPieces = dataLine.split(" ");
+        String tok = dataPieces[0];
+        addToken(jCas, tok.length(), dataPieces[1], dataPieces[2], dataPieces[3]);
+        documentText.append(tok).append(' ');
+      }
+    }
+  }
+
+  /**
+   * Handles a blank line: closes the current chunk, named entity and sentence.
+   */
+  private void endSentence(JCas jCas) {
+    createChunk(jCas);
     currentChunkType = "";
-    chunkTokens.clear();
-    namedEntityStart = 0;
+    createNamedEntity(jCas);
     currentNamedEntityType = "";
-    namedEntityTokens.clear();
 
-    for (String dataLine : documentData) {
-      if (dataLine.trim().equals("")) {
-        createChunk(jCas);
-        currentChunkType = "";
-        createNamedEntity(jCas);
-        currentNamedEntityType = "";
+    Sentence sentence = new Sentence(jCas, sentenceStart, documentText.length());
+    sentence.addToIndexes();
 
-        Sentence sentence = new Sentence(jCas, sentenceStart, documentText.length());
-        sentence.addToIndexes();
+    initSentence();
+  }
 
-        initSentence();
-      } else {
-        String[] dataPieces = dataLine.split(" ");
-        String tok = dataPieces[0];
-        String pos = dataPieces[1];
-        String chunkType = dataPieces[2];
-        if (currentChunkType.equals(""))
-          initChunk(chunkType);
-        String namedEntityType = dataPieces[3];
-        if (currentNamedEntityType.equals(""))
-          initNamedEntity(namedEntityType);
-
-        Token token = new Token(jCas, documentText.length(), documentText.length() + tok.length());
-        token.setPos(pos);
-        token.addToIndexes();
-
-        boolean chunkStartsWithB = startsWithB(currentChunkType, chunkType);
-        if (!chunkType.equals(currentChunkType) && !chunkStartsWithB) {
-          createChunk(jCas);
-          initChunk(chunkType);
-        }
+  /**
+   * Handles a token line, creating the token and any chunk or named entity that ends before it. The
+   * token's text must be appended to the document text, followed by a space, afterwards.
+   */
+  private void addToken(
+      JCas jCas,
+      int tokenLength,
+      String pos,
+      String chunkType,
+      String namedEntityType) {
+    if (currentChunkType.equals(""))
+      initChunk(chunkType);
+    if (currentNamedEntityType.equals(""))
+      initNamedEntity(namedEntityType);
+
+    Token token = new Token(jCas, documentText.length(), documentText.length() + tokenLength);
+    token.setPos(pos);
+    token.addToIndexes();
+
+    boolean chunkStartsWithB = startsWithB(currentChunkType, chunkType);
+    if (!chunkType.equals(currentChunkType) && !chunkStartsWithB) {
+      createChunk(jCas);
+      initChunk(chunkType);
+    }
+
+    boolean namedEntityStartsWithB = startsWithB(currentNamedEntityType, namedEntityType);
 
-        boolean namedEntityStartsWithB = startsWithB(currentNamedEntityType, namedEntityType);
+    if (!namedEntityType.equals(currentNamedEntityType) && !namedEntityStartsWithB) {
+      createNamedEntity(jCas);
+      initNamedEntity(namedEntityType);
+    }
 
-        if (!namedEntityType.equals(currentNamedEntityType) && !namedEntityStartsWithB) {
-          createNamedEntity(jCas);
-          initNamedEntity(namedEntityType);
+    sentenceTokens.add(token);
+    chunkTokens.add(token);
+    namedEntityTokens.add(token);
+  }
+
+  /**
+   * Maps the data file and advances past the document start at the given offset and the line after
+   * it, as the line reader does.
+   */
+  private void initializeMapped(File conllFile, long offset) throws IOException {
+    mappedFile = new MappedFile(conllFile);
+    decoder = Charset.defaultCharset().newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(
+        CodingErrorAction.REPLACE);
+    tags = new TagTable();
+    tokenText = new StringBuilder();
+    position = mappedFile.nextLine(mappedFile.lineEnd(offset)); // skip the document start
+    position = mappedFile.nextLine(mappedFile.lineEnd(position)); // skip the blank line
+  }
+
+  /**
+   * Reads the lines of the next document straight from the mapped bytes. Only the tokens are
+   * decoded (into the document text), and tags are looked up in a table of the tags seen so far.
+   */
+  private void readMappedDocument(JCas jCas) throws IOException {
+    long length = mappedFile.length();
+    while (position < length) {
+      long lineStart = position;
+      long lineEnd = mappedFile.lineEnd(lineStart);
+      position = mappedFile.nextLine(lineEnd);
+      if (mappedFile.startsWith(lineStart, lineEnd, DOCSTART_BYTES)) {
+        if (position < length) {
+          position = mappedFile.nextLine(mappedFile.lineEnd(position)); // skip the blank line
         }
+        return;
+      }
+
+      // trim the line, as the line reader does
+      long start = mappedFile.trimStart(lineStart, lineEnd);
+      long end = lineEnd;
+      while (end > start && (mappedFile.get(end - 1) & 0xff) <= ' ') {
+        --end;
+      }
+      if (start == end) {
+        endSentence(jCas);
+        continue;
+      }
 
-        sentenceTokens.add(token);
-        chunkTokens.add(token);
-        namedEntityTokens.add(token);
-        documentText.append(tok + " ");
+      // find the first four space-separated columns: token, part of speech, chunk and entity
+      long tokenEnd = findSpace(start, end);
+      long posEnd = findSpace(tokenEnd + 1, end);
+      long chunkEnd = findSpace(posEnd + 1, end);
+      long entityEnd = findSpace(chunkEnd + 1, end);
+      if (chunkEnd >= end) {
+        throw new IOException(String.format(
+            "expected 4 columns in the line at byte %d of %s",
+            lineStart,
+            dataFileName));
       }
+      String pos = getTag(tokenEnd + 1, posEnd);
+      String chunkType = getTag(posEnd + 1, chunkEnd);
+      String namedEntityType = getTag(chunkEnd + 1, entityEnd);
+
+      tokenText.setLength(0);
+      appendDecoded(tokenText, start, tokenEnd);
+      addToken(jCas, tokenText.length(), pos, chunkType, namedEntityType);
+      documentText.append(tokenText).append(' ');
     }
+    hasNext = false;
+  }
 
-    jCas.setDocumentText(documentText.toString());
+  private long findSpace(long start, long end) {
+    while (start < end && mappedFile.get(start) != ' ') {
+      ++start;
+    }
+    return start;
+  }
 
-    String identifier = String.format("%s#%s", dataFileName, documentIndex);
-    ViewURIUtil.setURI(jCas, new File(identifier).toURI());
-    ++documentIndex;
+  /**
+   * @return the (shared) String for the tag in the given bytes
+   */
+  private String getTag(long start, long end) throws IOException {
+    String tag = tags.get(mappedFile, start, end);
+    if (tag == null) {
+      StringBuilder builder = new StringBuilder();
+      appendDecoded(builder, start, end);
+      tag = builder.toString();
+      tags.put(mappedFile, start, end, tag);
+    }
+    return tag;
+  }
 
+  private void appendDecoded(StringBuilder builder, long start, long end) throws IOException {
+    // ASCII needs no decoder
+    long position = start;
+    while (position < end) {
+      byte b = mappedFile.get(position);
+      if (b < 0) {
+        break;
+      }
+      builder.append((char) b);
+      ++position;
+    }
+    if (position < end) {
+      byte[] bytes = new byte[(int) (end - position)];
+      mappedFile.get(position, bytes, 0, bytes.length);
+      builder.append(decoder.decode(ByteBuffer.wrap(bytes)));
+    }
   }
 
   private void initSentence() {
@@ -295,11 +617,11 @@ public class Conll2003GoldReader extends JCasCollectionReader_ImplBase {
   private void createNamedEntity(JCas jCas) {
     if (!currentNamedEntityType.equals("O") && loadNamedEntities) {
       NamedEntityMention nem = new NamedEntityMention(
-          jCas,
+          namedEntityView,
           namedEntityStart,
           documentText.length() - 1);
       nem.setMentionType(currentNamedEntityType);
-      Annotation annotation = new Annotation(jCas, namedEntityStart, documentText.length() - 1);
+      Annotation annotation = new Annotation(namedEntityView, namedEntityStart, documentText.length() - 1);
       annotation.addToIndexes();
       nem.setAnnotation(annotation);
       nem.setHead(annotation);
@@ -332,16 +654,100 @@ public class Conll2003GoldReader extends JCasCollectionReader_ImplBase {
     return false;
   }
 
+  /**
+   * An open-addressing hash table from the raw bytes of a tag to its String.
+   */
+  private static class TagTable {
+
+    private byte[][] keys = new byte[64][];
+
+    private String[] values = new String[64];
+
+    private int size = 0;
+
+    public String get(MappedFile file, long start, long end) {
+      int mask = keys.length - 1;
+      for (int i = hash(file, start, end) & mask; keys[i] != null; i = (i + 1) & mask) {
+        if (matches(keys[i], file, start, end)) {
+          return values[i];
+        }
+      }
+      return null;
+    }
+
+    public void put(MappedFile file, long start, long end, String value) {
+      byte[] key = new byte[(int) (end - start)];
+      file.get(start, key, 0, key.length);
+      if (2 * (size + 1) > keys.length) {
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        values = new String[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; ++i) {
+          if (oldKeys[i] != null) {
+            insert(oldKeys[i], oldValues[i]);
+          }
+        }
+      }
+      insert(key, value);
+      ++size;
+    }
+
+    private void insert(byte[] key, String value) {
+      int mask = keys.length - 1;
+      int i = hash(key) & mask;
+      while (keys[i] != null) {
+        i = (i + 1) & mask;
+      }
+      keys[i] = key;
+      values[i] = value;
+    }
+
+    private static int hash(MappedFile file, long start, long end) {
+      int hash = 1;
+      for (long position = start; position < end; ++position) {
+        hash = 31 * hash + file.get(position);
+      }
+      return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(byte[] key) {
+      int hash = 1;
+      for (byte b : key) {
+        hash = 31 * hash + b;
+      }
+      return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(byte[] key, MappedFile file, long start, long end) {
+      if (key.length != end - start) {
+        return false;
+      }
+      for (int i = 0; i < key.length; ++i) {
+        if (key[i] != file.get(start + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
   public void close() throws IOException {
-    reader.close();
+    if (reader != null) {
+      reader.close();
+    }
+    mappedFile = null;
   }
 
   public Progress[] getProgress() {
-    return new Progress[] { new ProgressImpl(documentIndex, 5000, Progress.ENTITIES) };
+    return new Progress[] { new ProgressImpl(
+        documentIndex - firstDocumentIndex,
+        endDocumentIndex - firstDocumentIndex,
+        Progress.ENTITIES) };
   }
 
   public boolean hasNext() throws IOException, CollectionException {
-    return hasNext;
+    return hasNext && documentIndex < endDocumentIndex;
   }
 
   public void setDataFileName(String dataFileName) {
@@ -352,4 +758,28 @@ public class Conll2003GoldReader extends JCasCollectionReader_ImplBase {
     this.loadNamedEntities = loadNamedEntities;
   }
 
+  public void setMemoryMapped(boolean memoryMapped) {
+    this.memoryMapped = memoryMapped;
+  }
+
+  public void setShardIndex(int shardIndex) {
+    this.shardIndex = shardIndex;
+  }
+
+  public void setShardCount(int shardCount) {
+    this.shardCount = shardCount;
+  }
+
+  public void setBeginDocument(int beginDocument) {
+    this.beginDocument = beginDocument;
+  }
+
+  public void setEndDocument(int endDocument) {
+    this.endDocument = endDocument;
+  }
+
+  public void setGoldViewName(String goldViewName) {
+    this.goldViewName = goldViewName;
+  }
+
 }
@@ -0,0 +1,203 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.reader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * The byte offsets of the "-DOCSTART-" lines of a CoNLL 2003 file, so that a
+ * {@link Conll2003GoldReader} can start reading at any document and knows how many documents there
+ * are. The lines are found by the same rules the reader uses: the first is the first line that
+ * starts with "-DOCSTART-" once trimmed, the line after each one is skipped, and the later ones are
+ * lines that start with "-DOCSTART-" as they are.
+ * 
+ * Building the index takes one pass over the file, so the index is saved next to the file (with
+ * the extension {@value #FILE_EXTENSION}) and reused for as long as the file's length and
+ * modification time are unchanged. The index is written to a temporary file and then renamed into
+ * place, so readers of the same file that build its index concurrently (e.g. the shards of a
+ * parallel extraction) never see a partly written index. If the index cannot be saved, it is simply
+ * rebuilt next time.
+ * 
+ * A file without any "-DOCSTART-" line is read by {@link Conll2003GoldReader} as one empty
+ * document, which the index represents by a single offset at the end of the file.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class ConllDocumentIndex {
+
+  public static final String FILE_EXTENSION = ".docindex";
+
+  private static final int MAGIC = 0x43444958; // "CDIX"
+
+  private static final int VERSION = 1;
+
+  private static final byte[] DOCSTART_BYTES = Conll2003GoldReader.DOCSTART.getBytes();
+
+  private long fileLength;
+
+  private long fileLastModified;
+
+  private long[] offsets;
+
+  /**
+   * @return the index of the data file, loaded from the saved index if it is up to date, or built
+   *         (and saved) otherwise
+   */
+  public static ConllDocumentIndex load(File dataFile) throws IOException {
+    File indexFile = new File(dataFile.getPath() + FILE_EXTENSION);
+    if (indexFile.exists()) {
+      ConllDocumentIndex index;
+      try {
+        index = read(indexFile);
+      } catch (IOException e) {
+        // e.g. a truncated index; build it again
+        index = null;
+      }
+      if (index != null && index.fileLength == dataFile.length()
+          && index.fileLastModified == dataFile.lastModified()) {
+        return index;
+      }
+    }
+    ConllDocumentIndex index = build(dataFile);
+    File tempFile = null;
+    try {
+      tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+      index.write(tempFile);
+      Files.move(
+          tempFile.toPath(),
+          indexFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // e.g. a read-only data directory; the index will be rebuilt next time
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Build the index of a data file in one pass over its bytes.
+   */
+  public static ConllDocumentIndex build(File dataFile) throws IOException {
+    ConllDocumentIndex index = new ConllDocumentIndex();
+    index.fileLength = dataFile.length();
+    index.fileLastModified = dataFile.lastModified();
+
+    MappedFile file = new MappedFile(dataFile);
+    long length = file.length();
+    long[] offsets = new long[1024];
+    int count = 0;
+    boolean first = true;
+    long position = 0;
+    while (position < length) {
+      long lineStart = position;
+      long lineEnd = file.lineEnd(lineStart);
+      position = file.nextLine(lineEnd);
+      long docStart = first ? file.trimStart(lineStart, lineEnd) : lineStart;
+      if (file.startsWith(docStart, lineEnd, DOCSTART_BYTES)) {
+        if (count == offsets.length) {
+          offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count] = lineStart;
+        ++count;
+        first = false;
+        position = file.nextLine(file.lineEnd(position)); // the reader skips the next line
+      }
+    }
+    if (count == 0) {
+      offsets[count] = length;
+      ++count;
+    }
+    index.offsets = Arrays.copyOf(offsets, count);
+    return index;
+  }
+
+  /**
+   * @return the number of documents in the file
+   */
+  public int size() {
+    return this.offsets.length;
+  }
+
+  /**
+   * @return the byte offset of the "-DOCSTART-" line that precedes the given document
+   */
+  public long getOffset(int document) {
+    return this.offsets[document];
+  }
+
+  public void write(File indexFile) throws IOException {
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+        indexFile)));
+    try {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(this.fileLength);
+      output.writeLong(this.fileLastModified);
+      output.writeInt(this.offsets.length);
+      for (long offset : this.offsets) {
+        output.writeLong(offset);
+      }
+    } finally {
+      output.close();
+    }
+  }
+
+  /**
+   * @return the index saved in the file, or null if the file is not an index of this version
+   */
+  private static ConllDocumentIndex read(File indexFile) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(
+        indexFile)));
+    try {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        return null;
+      }
+      ConllDocumentIndex index = new ConllDocumentIndex();
+      index.fileLength = input.readLong();
+      index.fileLastModified = input.readLong();
+      index.offsets = new long[input.readInt()];
+      for (int i = 0; i < index.offsets.length; ++i) {
+        index.offsets[i] = input.readLong();
+      }
+      return index;
+    } finally {
+      input.close();
+    }
+  }
+}
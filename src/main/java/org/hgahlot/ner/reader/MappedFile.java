@@ -0,0 +1,141 @@
+/* 
+ * Copyright (c) 2012, Regents of the University of Colorado 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer. 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ * Neither the name of the University of Colorado at Boulder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission. 
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package com.cbsi.ner.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only file mapped into memory in segments of 1GB, so that files larger than the 2GB a
+ * single {@link MappedByteBuffer} can hold are addressed by one long position. Bytes are read with
+ * absolute positions, so the mapped segments are never modified.
+ * 
+ * <br>
+ * Copyright (c) 2012, Regents of the University of Colorado <br>
+ * All rights reserved.
+ */
+public class MappedFile {
+
+  private static final int SEGMENT_BITS = 30;
+
+  private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+  private MappedByteBuffer[] segments;
+
+  private long length;
+
+  public MappedFile(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      // the mappings stay valid after the channel is closed
+      FileChannel channel = randomAccessFile.getChannel();
+      this.length = channel.size();
+      int numSegments = (int) ((this.length + SEGMENT_MASK) >>> SEGMENT_BITS);
+      this.segments = new MappedByteBuffer[numSegments];
+      for (int i = 0; i < numSegments; ++i) {
+        long start = (long) i << SEGMENT_BITS;
+        long size = Math.min(this.length - start, 1L << SEGMENT_BITS);
+        this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+      }
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  public long length() {
+    return this.length;
+  }
+
+  public byte get(long position) {
+    return this.segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+  }
+
+  /**
+   * @return the position of the terminator ('\n', '\r' or the end of the file) of the line
+   *         starting at the given position
+   */
+  public long lineEnd(long start) {
+    long end = start;
+    while (end < this.length) {
+      byte b = this.get(end);
+      if (b == '\n' || b == '\r') {
+        break;
+      }
+      ++end;
+    }
+    return end;
+  }
+
+  /**
+   * @return the start of the line after the line ending at the given terminator, treating "\r\n"
+   *         as a single terminator as {@link java.io.BufferedReader#readLine()} does
+   */
+  public long nextLine(long lineEnd) {
+    if (lineEnd >= this.length) {
+      return lineEnd;
+    }
+    if (this.get(lineEnd) == '\r' && lineEnd + 1 < this.length && this.get(lineEnd + 1) == '\n') {
+      return lineEnd + 2;
+    }
+    return lineEnd + 1;
+  }
+
+  /**
+   * @return the first position from the start that is not whitespace, as {@link String#trim()}
+   *         defines it, or the end
+   */
+  public long trimStart(long start, long end) {
+    while (start < end && (this.get(start) & 0xff) <= ' ') {
+      ++start;
+    }
+    return start;
+  }
+
+  /**
+   * @return true if the bytes from start up to end begin with the prefix
+   */
+  public boolean startsWith(long start, long end, byte[] prefix) {
+    if (end - start < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; ++i) {
+      if (this.get(start + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copy bytes into an array; the bytes may span segments.
+   */
+  public void get(long position, byte[] bytes, int offset, int length) {
+    for (int i = 0; i < length; ++i) {
+      bytes[offset + i] = this.get(position + i);
+    }
+  }
+}